@@ -0,0 +1,152 @@
+package com.freegang.androidutils.net;
+
+import androidx.annotation.NonNull;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Cache;
+import okhttp3.CacheControl;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * GCircuitBreaker 对本地 MockWebServer 的状态转换
+ */
+@RunWith(AndroidJUnit4.class)
+public class GCircuitBreakerTest {
+    private MockWebServer server;
+    private GCircuitBreaker breaker;
+    private OkHttpClient client;
+    private String host;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        host = server.getHostName();
+        breaker = new GCircuitBreaker(1, 100, TimeUnit.MILLISECONDS);
+        client = new OkHttpClient.Builder().addInterceptor(breaker).build();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void failureOpensAndProbeSuccessCloses() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(500));
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        execute().close();
+        assertEquals(GCircuitBreaker.State.OPEN, breaker.getState(host));
+        try {
+            execute();
+            fail();
+        } catch (GCircuitBreaker.OpenException expected) {
+            assertEquals(1, breaker.getRejectedCount());
+        }
+
+        Thread.sleep(150);
+        assertEquals(GCircuitBreaker.State.HALF_OPEN, breaker.getState(host));
+        execute().close();
+        assertEquals(GCircuitBreaker.State.CLOSED, breaker.getState(host));
+    }
+
+    @Test
+    public void canceledProbeKeepsHalfOpen() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(500));
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        server.enqueue(new MockResponse().setResponseCode(500));
+
+        execute().close();
+        server.takeRequest();
+        Thread.sleep(150);
+        assertEquals(GCircuitBreaker.State.HALF_OPEN, breaker.getState(host));
+
+        //探测请求到达服务端后取消
+        final CountDownLatch failed = new CountDownLatch(1);
+        Call probe = client.newCall(request());
+        probe.enqueue(new Callback() {
+            @Override
+            public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                failed.countDown();
+            }
+
+            @Override
+            public void onResponse(@NonNull Call call, @NonNull Response response) {
+                response.close();
+            }
+        });
+        server.takeRequest();
+        probe.cancel();
+        assertTrue(failed.await(5, TimeUnit.SECONDS));
+
+        //取消不能关闭熔断, 探测名额已让出, 下一个请求仍作为探测放行
+        assertEquals(GCircuitBreaker.State.HALF_OPEN, breaker.getState(host));
+        execute().close();
+        assertEquals(GCircuitBreaker.State.OPEN, breaker.getState(host));
+    }
+
+    @Test
+    public void cachedRequestsBypassOpenCircuit() throws Exception {
+        File cacheDir = new File(System.getProperty("java.io.tmpdir"), "GCircuitBreakerTest-" + System.nanoTime());
+        Cache cache = new Cache(cacheDir, 1024 * 1024);
+        client = client.newBuilder().cache(cache).build();
+        try {
+            server.enqueue(new MockResponse().setHeader("Cache-Control", "max-age=0").setBody("cached"));
+            server.enqueue(new MockResponse().setResponseCode(500));
+            Response first = client.newCall(new Request.Builder().url(server.url("/cached")).build()).execute();
+            assertEquals("cached", first.body().string());
+            execute().close();
+            assertEquals(GCircuitBreaker.State.OPEN, breaker.getState(host));
+
+            //离线模式读取过期缓存, 不被熔断拦截
+            Request forceCache = new Request.Builder().url(server.url("/cached")).cacheControl(CacheControl.FORCE_CACHE).build();
+            try (Response cached = client.newCall(forceCache).execute()) {
+                assertEquals(200, cached.code());
+                assertEquals("cached", cached.body().string());
+            }
+            //没有缓存时是本地的 504, 不计入熔断
+            Request missing = new Request.Builder().url(server.url("/missing")).cacheControl(CacheControl.FORCE_CACHE).build();
+            try (Response response = client.newCall(missing).execute()) {
+                assertEquals(504, response.code());
+            }
+            assertEquals(0, breaker.getRejectedCount());
+            assertEquals(GCircuitBreaker.State.OPEN, breaker.getState(host));
+            assertEquals(2, server.getRequestCount());
+        } finally {
+            cache.delete();
+        }
+    }
+
+    private Response execute() throws IOException {
+        Response response = client.newCall(request()).execute();
+        assertNotNull(response);
+        return response;
+    }
+
+    private Request request() {
+        return new Request.Builder().url(server.url("/")).build();
+    }
+}
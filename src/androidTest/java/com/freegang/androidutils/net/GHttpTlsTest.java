@@ -0,0 +1,128 @@
+package com.freegang.androidutils.net;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import okhttp3.ConnectionSpec;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.TlsVersion;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.tls.HandshakeCertificates;
+import okhttp3.tls.HeldCertificate;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * GHttpTls 对本地 HTTPS MockWebServer 的握手统计
+ * <p>
+ * 固定 TLS 1.2, TLS 1.3 的会话恢复可能使用新的会话ID
+ */
+@RunWith(AndroidJUnit4.class)
+public class GHttpTlsTest {
+    private static final int SERVERS = 20;
+
+    private HandshakeCertificates clientCertificates;
+    private final List<MockWebServer> servers = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        HeldCertificate localhost = new HeldCertificate.Builder()
+                .addSubjectAlternativeName("localhost")
+                .build();
+        HandshakeCertificates serverCertificates = new HandshakeCertificates.Builder()
+                .heldCertificate(localhost)
+                .build();
+        clientCertificates = new HandshakeCertificates.Builder()
+                .addTrustedCertificate(localhost.certificate())
+                .build();
+        for (int i = 0; i < SERVERS; i++) {
+            MockWebServer server = new MockWebServer();
+            server.useHttps(serverCertificates.sslSocketFactory(), false);
+            server.start();
+            servers.add(server);
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (MockWebServer server : servers) {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void reconnectResumesSession() throws Exception {
+        GHttpTls tls = new GHttpTls.Builder().trustManager(clientCertificates.trustManager()).build();
+        OkHttpClient client = client(tls);
+        MockWebServer server = servers.get(0);
+
+        request(client, server);
+        request(client, server);
+        awaitHandshakes(tls, 2);
+        assertEquals(1, tls.getFullHandshakes());
+        assertEquals(1, tls.getResumedHandshakes());
+    }
+
+    @Test
+    public void unlimitedCacheTracksMoreThan16Sessions() throws Exception {
+        GHttpTls tls = new GHttpTls.Builder()
+                .trustManager(clientCertificates.trustManager())
+                .sessionCacheSize(0)
+                .build();
+        OkHttpClient client = client(tls);
+
+        for (MockWebServer server : servers) {
+            request(client, server);
+        }
+        for (MockWebServer server : servers) {
+            request(client, server);
+        }
+        awaitHandshakes(tls, SERVERS * 2);
+        assertEquals(SERVERS, tls.getFullHandshakes());
+        assertEquals(SERVERS, tls.getResumedHandshakes());
+    }
+
+    private OkHttpClient client(GHttpTls tls) {
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .protocols(Collections.singletonList(Protocol.HTTP_1_1))
+                .connectionSpecs(Collections.singletonList(new ConnectionSpec.Builder(ConnectionSpec.MODERN_TLS)
+                        .tlsVersions(TlsVersion.TLS_1_2)
+                        .build()));
+        tls.apply(builder);
+        return builder.build();
+    }
+
+    /**
+     * 每次请求后清空连接池, 下一次请求必须重新握手
+     */
+    private static void request(OkHttpClient client, MockWebServer server) throws IOException {
+        server.enqueue(new MockResponse().setBody("ok"));
+        Request request = new Request.Builder().url(server.url("/")).build();
+        try (Response response = client.newCall(request).execute()) {
+            assertEquals("ok", response.body().string());
+        }
+        client.connectionPool().evictAll();
+    }
+
+    /**
+     * 握手监听可能在其他线程中回调
+     */
+    private static void awaitHandshakes(GHttpTls tls, long count) throws InterruptedException {
+        for (int i = 0; i < 50 && tls.getFullHandshakes() + tls.getResumedHandshakes() < count; i++) {
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.freegang.androidutils.net;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * net 包基准测试, 需要在真机上以 release 方式运行:
+ * ./gradlew connectedAndroidTest -Pandroid.testInstrumentationRunnerArguments.class=com.freegang.androidutils.net.GOkHttpUtilsBenchmark
+ * <p>
+ * androidx.benchmark 输出每次迭代的耗时与内存分配次数, 网络请求另外用 GHttpHistogram 统计 p50/p95/p99 与吞吐量
+ */
+@RunWith(AndroidJUnit4.class)
+public class GOkHttpUtilsBenchmark {
+    private static final String TAG = "GOkHttpUtilsBenchmark";
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private MockWebServer server;
+    private GOkHttpUtils okHttpUtils;
+    private Map<String, String> params;
+    private String json;
+    private GHttpHistogram latency;
+    private long startNanos;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        final String body = "{\"code\":0,\"message\":\"ok\",\"data\":[1,2,3,4,5,6,7,8]}";
+        server.setDispatcher(new Dispatcher() {
+            @NonNull
+            @Override
+            public MockResponse dispatch(@NonNull RecordedRequest request) {
+                return new MockResponse().setBody(body);
+            }
+        });
+        server.start();
+        okHttpUtils = new GOkHttpUtils.Builder().build();
+
+        params = new LinkedHashMap<>();
+        for (int i = 0; i < 16; i++) {
+            params.put("key_" + i, "value " + i + " 中文&=?");
+        }
+        json = "{\"id\":1,\"name\":\"benchmark\",\"tags\":[\"a\",\"b\",\"c\"]}";
+        latency = new GHttpHistogram();
+        startNanos = System.nanoTime();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (latency.getCount() > 0) {
+            double seconds = (System.nanoTime() - startNanos) / 1e9;
+            Log.i(TAG, String.format(Locale.ROOT, "latency(us) %s, throughput %.1f req/s", latency.snapshot(), latency.getCount() / seconds));
+        }
+        server.shutdown();
+    }
+
+    @Test
+    public void buildFormBody() throws IOException {
+        BenchmarkState state = benchmarkRule.getState();
+        Buffer sink = new Buffer();
+        while (state.keepRunning()) {
+            RequestBody body = okHttpUtils.buildFormBody(params);
+            body.writeTo(sink);
+            sink.clear();
+        }
+    }
+
+    @Test
+    public void buildJsonBody() throws IOException {
+        BenchmarkState state = benchmarkRule.getState();
+        Buffer sink = new Buffer();
+        while (state.keepRunning()) {
+            RequestBody body = okHttpUtils.buildJsonBody(json);
+            body.writeTo(sink);
+            sink.clear();
+        }
+    }
+
+    @Test
+    public void urlSplicing() {
+        BenchmarkState state = benchmarkRule.getState();
+        String baseUrl = server.url("/api/list").toString();
+        while (state.keepRunning()) {
+            GURLPramsUtils.urlSplicing(baseUrl, params);
+        }
+    }
+
+    @Test
+    public void getDataSync() throws IOException {
+        BenchmarkState state = benchmarkRule.getState();
+        String url = server.url("/sync").toString();
+        while (state.keepRunning()) {
+            long start = System.nanoTime();
+            try (GOkHttpUtils.RespResult result = okHttpUtils.getDataResult(url)) {
+                result.bytes();
+                assertEquals(200, result.code());
+            }
+            latency.record((System.nanoTime() - start) / 1000);
+        }
+    }
+
+    @Test
+    public void executeAsync() throws InterruptedException {
+        BenchmarkState state = benchmarkRule.getState();
+        Request request = new Request.Builder().url(server.url("/async")).build();
+        while (state.keepRunning()) {
+            final CountDownLatch latch = new CountDownLatch(1);
+            final long start = System.nanoTime();
+            okHttpUtils.executeAsync(request, (statusCode, body) -> {
+                latency.record((System.nanoTime() - start) / 1000);
+                latch.countDown();
+            });
+            latch.await();
+        }
+    }
+
+    /**
+     * 16 个并发请求为一组, 测量连接池与调度器在并发下的表现
+     */
+    @Test
+    public void executeAsyncConcurrent() throws InterruptedException {
+        BenchmarkState state = benchmarkRule.getState();
+        Request request = new Request.Builder().url(server.url("/concurrent")).build();
+        while (state.keepRunning()) {
+            final CountDownLatch latch = new CountDownLatch(16);
+            for (int i = 0; i < 16; i++) {
+                final long start = System.nanoTime();
+                okHttpUtils.executeAsync(request, (statusCode, body) -> {
+                    latency.record((System.nanoTime() - start) / 1000);
+                    latch.countDown();
+                });
+            }
+            latch.await();
+        }
+    }
+}
@@ -0,0 +1,502 @@
+package com.freegang.androidutils.json;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 预编译的 JSONPath 查询, 如 $.data.items[*].price
+ * <p>
+ * 支持的语法:
+ * <ul>
+ *     <li>.name 或 ['name']: 对象成员, 开头的 $ 可以省略</li>
+ *     <li>[0]、[-1]: 数组下标, 负数从末尾计数</li>
+ *     <li>.* 或 [*]: 对象的所有值或数组的所有元素</li>
+ *     <li>[?(@.price &gt; 10)]: 过滤, 运算符 == != &lt; &lt;= &gt; &gt;=, 右侧为数字、'字符串'、true、false、null;
+ *     只写 [?(@.price)] 表示成员存在且不为 null</li>
+ * </ul>
+ * 不支持递归下降(..)、切片与多选
+ * <p>
+ * 既可以在 JSONObject/JSONArray 上求值, 也可以直接在 GJSONReader 上求值: 不匹配的分支只扫描跳过,
+ * 只有命中的值(以及过滤条件所在的数组元素)会被构建成 org.json 对象.
+ * 路径不存在或类型不符时结果为空, 不会抛出异常; 实例不可变, 可在多线程中共享
+ * <pre>
+ * private static final GJSONPath PRICES = GJSONPath.compile("$.data.items[?(@.stock > 0)].price");
+ * List&lt;Object&gt; prices = PRICES.find(jsonObject);
+ * try (GJSONReader reader = new GJSONReader(body.byteStream())) {
+ *     Object first = PRICES.findFirst(reader);
+ * }
+ * </pre>
+ */
+public final class GJSONPath {
+    private final String path;
+    private final Segment[] segments;
+    private final boolean definite;
+
+    private GJSONPath(String path, Segment[] segments) {
+        this.path = path;
+        this.segments = segments;
+        boolean definite = true;
+        for (Segment segment : segments) {
+            definite &= segment.kind == Segment.NAME || segment.kind == Segment.INDEX;
+        }
+        this.definite = definite;
+    }
+
+    /**
+     * 编译路径
+     *
+     * @throws IllegalArgumentException 路径格式错误
+     */
+    @NonNull
+    public static GJSONPath compile(@NonNull String path) {
+        Parser parser = new Parser(path);
+        List<Segment> segments = parser.parsePath();
+        return new GJSONPath(path, segments.toArray(new Segment[0]));
+    }
+
+    /**
+     * 路径只由成员名和下标组成, 最多匹配一个值
+     */
+    public boolean isDefinite() {
+        return definite;
+    }
+
+    //----------- JSONObject/JSONArray -----------//
+
+    /**
+     * 查找所有匹配的值, 按文档顺序
+     *
+     * @param json JSONObject 或 JSONArray
+     * @return 匹配的值: JSONObject、JSONArray、String、Number、Boolean 或 JSONObject.NULL
+     */
+    @NonNull
+    public List<Object> find(@Nullable Object json) {
+        List<Object> results = new ArrayList<>();
+        evaluate(json, 0, results, Integer.MAX_VALUE);
+        return results;
+    }
+
+    /**
+     * 第一个匹配的值, 没有时返回 null
+     */
+    @Nullable
+    public Object findFirst(@Nullable Object json) {
+        List<Object> results = new ArrayList<>(1);
+        evaluate(json, 0, results, 1);
+        return results.isEmpty() ? null : results.get(0);
+    }
+
+    private void evaluate(Object node, int index, List<Object> results, int limit) {
+        if (results.size() >= limit || node == null) return;
+        if (index == segments.length) {
+            results.add(node);
+            return;
+        }
+        Segment segment = segments[index];
+        switch (segment.kind) {
+            case Segment.NAME:
+                if (node instanceof JSONObject) {
+                    evaluate(((JSONObject) node).opt(segment.name), index + 1, results, limit);
+                }
+                break;
+            case Segment.INDEX:
+                if (node instanceof JSONArray) {
+                    JSONArray array = (JSONArray) node;
+                    int i = segment.index < 0 ? array.length() + segment.index : segment.index;
+                    if (i >= 0) evaluate(array.opt(i), index + 1, results, limit);
+                }
+                break;
+            default:
+                //WILDCARD, FILTER
+                if (node instanceof JSONObject) {
+                    JSONObject object = (JSONObject) node;
+                    Iterator<String> keys = object.keys();
+                    while (keys.hasNext() && results.size() < limit) {
+                        evaluateChild(object.opt(keys.next()), segment, index, results, limit);
+                    }
+                } else if (node instanceof JSONArray) {
+                    JSONArray array = (JSONArray) node;
+                    for (int i = 0; i < array.length() && results.size() < limit; i++) {
+                        evaluateChild(array.opt(i), segment, index, results, limit);
+                    }
+                }
+                break;
+        }
+    }
+
+    private void evaluateChild(Object child, Segment segment, int index, List<Object> results, int limit) {
+        if (segment.kind == Segment.WILDCARD || segment.filter.test(child)) {
+            evaluate(child, index + 1, results, limit);
+        }
+    }
+
+    //----------- GJSONReader -----------//
+
+    /**
+     * 从流中读取下一个值并查找所有匹配的值, 读取完毕后 reader 位于该值之后
+     *
+     * @throws IOException 读取失败或 JSON 格式错误
+     */
+    @NonNull
+    public List<Object> find(@NonNull GJSONReader reader) throws IOException {
+        List<Object> results = new ArrayList<>();
+        evaluate(reader, 0, results, Integer.MAX_VALUE);
+        return results;
+    }
+
+    /**
+     * 从流中查找第一个匹配的值, 找到后立即返回, 不再读取剩余内容; 此时 reader 停在文档中间, 只能关闭
+     *
+     * @throws IOException 读取失败或 JSON 格式错误
+     */
+    @Nullable
+    public Object findFirst(@NonNull GJSONReader reader) throws IOException {
+        List<Object> results = new ArrayList<>(1);
+        evaluate(reader, 0, results, 1);
+        return results.isEmpty() ? null : results.get(0);
+    }
+
+    /**
+     * 返回 false 表示已达到 limit, 调用方应立即停止读取
+     */
+    private boolean evaluate(GJSONReader reader, int index, List<Object> results, int limit) throws IOException {
+        if (index == segments.length) {
+            results.add(reader.readValue());
+            return results.size() < limit;
+        }
+        Segment segment = segments[index];
+        GJSONReader.Token token = reader.peek();
+        if (token == GJSONReader.Token.BEGIN_OBJECT && segment.kind != Segment.INDEX) {
+            reader.beginObject();
+            boolean matched = false;
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (segment.kind == Segment.NAME) {
+                    //成员名重复时只取第一个, 而 JSONObject 保留最后一个
+                    if (!matched && name.equals(segment.name)) {
+                        matched = true;
+                        if (!evaluate(reader, index + 1, results, limit)) return false;
+                    } else {
+                        reader.skipValue();
+                    }
+                } else if (!evaluateChild(reader, segment, index, results, limit)) {
+                    return false;
+                }
+            }
+            reader.endObject();
+        } else if (token == GJSONReader.Token.BEGIN_ARRAY && segment.kind != Segment.NAME) {
+            if (segment.kind == Segment.INDEX && segment.index < 0) {
+                //从末尾计数需要知道长度, 只能读出整个数组
+                List<Object> matches = new ArrayList<>();
+                evaluate(reader.readValue(), index, matches, limit - results.size());
+                results.addAll(matches);
+                return results.size() < limit;
+            }
+            reader.beginArray();
+            int i = 0;
+            while (reader.hasNext()) {
+                if (segment.kind == Segment.INDEX) {
+                    if (i == segment.index) {
+                        if (!evaluate(reader, index + 1, results, limit)) return false;
+                    } else {
+                        reader.skipValue();
+                    }
+                } else if (!evaluateChild(reader, segment, index, results, limit)) {
+                    return false;
+                }
+                i++;
+            }
+            reader.endArray();
+        } else {
+            reader.skipValue();
+        }
+        return true;
+    }
+
+    private boolean evaluateChild(GJSONReader reader, Segment segment, int index, List<Object> results, int limit) throws IOException {
+        if (segment.kind == Segment.WILDCARD) {
+            return evaluate(reader, index + 1, results, limit);
+        }
+        //过滤条件需要访问元素的成员, 先构建该元素, 其余部分在树上求值
+        Object child = reader.readValue();
+        if (segment.filter.test(child)) {
+            evaluate(child, index + 1, results, limit);
+        }
+        return results.size() < limit;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return path;
+    }
+
+    ////
+
+    private static final class Segment {
+        static final int NAME = 0;
+        static final int INDEX = 1;
+        static final int WILDCARD = 2;
+        static final int FILTER = 3;
+
+        final int kind;
+        final String name;
+        final int index;
+        final Filter filter;
+
+        Segment(int kind, String name, int index, Filter filter) {
+            this.kind = kind;
+            this.name = name;
+            this.index = index;
+            this.filter = filter;
+        }
+    }
+
+    /**
+     * [?(@.a.b op value)]
+     */
+    private static final class Filter {
+        static final int EXISTS = 0;
+        static final int EQ = 1;
+        static final int NE = 2;
+        static final int LT = 3;
+        static final int LE = 4;
+        static final int GT = 5;
+        static final int GE = 6;
+
+        final GJSONPath target;
+        final int op;
+        final Object value;
+
+        Filter(GJSONPath target, int op, Object value) {
+            this.target = target;
+            this.op = op;
+            this.value = value;
+        }
+
+        boolean test(Object node) {
+            Object actual = target.findFirst(node);
+            if (op == EXISTS) return actual != null && actual != JSONObject.NULL;
+            if (actual == null) return false;
+            if (actual instanceof Number && value instanceof Number) {
+                int c = Double.compare(((Number) actual).doubleValue(), ((Number) value).doubleValue());
+                return compare(c);
+            }
+            if (actual instanceof String && value instanceof String) {
+                return compare(((String) actual).compareTo((String) value));
+            }
+            //类型不同或不可比较, 只有 != 成立; Boolean 与 NULL 只支持相等比较
+            boolean equal = actual.equals(value);
+            if (op == EQ) return equal;
+            if (op == NE) return !equal;
+            return false;
+        }
+
+        private boolean compare(int c) {
+            switch (op) {
+                case EQ:
+                    return c == 0;
+                case NE:
+                    return c != 0;
+                case LT:
+                    return c < 0;
+                case LE:
+                    return c <= 0;
+                case GT:
+                    return c > 0;
+                default:
+                    return c >= 0;
+            }
+        }
+    }
+
+    private static final class Parser {
+        private final String path;
+        private int pos;
+
+        Parser(String path) {
+            this.path = path;
+        }
+
+        List<Segment> parsePath() {
+            List<Segment> segments = new ArrayList<>();
+            if (path.startsWith("$")) {
+                pos++;
+            } else if (!path.isEmpty() && path.charAt(0) != '.' && path.charAt(0) != '[') {
+                //省略 $ 时, 第一个成员名前也没有 '.'
+                segments.add(new Segment(Segment.NAME, readName(), 0, null));
+            }
+            while (pos < path.length()) {
+                char c = path.charAt(pos);
+                if (c == '.') {
+                    pos++;
+                    if (pos < path.length() && path.charAt(pos) == '.') throw error("recursive descent is not supported");
+                    if (pos < path.length() && path.charAt(pos) == '*') {
+                        pos++;
+                        segments.add(new Segment(Segment.WILDCARD, null, 0, null));
+                    } else {
+                        segments.add(new Segment(Segment.NAME, readName(), 0, null));
+                    }
+                } else if (c == '[') {
+                    pos++;
+                    segments.add(readBracket());
+                } else {
+                    throw error("unexpected '" + c + "'");
+                }
+            }
+            return segments;
+        }
+
+        /**
+         * 解析过滤条件中 @ 之后的相对路径, 在运算符或 ')' 处停止
+         */
+        List<Segment> parseRelative() {
+            List<Segment> segments = new ArrayList<>();
+            while (pos < path.length()) {
+                char c = path.charAt(pos);
+                if (c == '.') {
+                    pos++;
+                    if (pos < path.length() && path.charAt(pos) == '*') {
+                        throw error("only names and indices are allowed in a filter");
+                    }
+                    segments.add(new Segment(Segment.NAME, readName(), 0, null));
+                } else if (c == '[') {
+                    pos++;
+                    Segment segment = readBracket();
+                    if (segment.kind != Segment.NAME && segment.kind != Segment.INDEX) {
+                        throw error("only names and indices are allowed in a filter");
+                    }
+                    segments.add(segment);
+                } else {
+                    break;
+                }
+            }
+            return segments;
+        }
+
+        private String readName() {
+            int start = pos;
+            while (pos < path.length()) {
+                char c = path.charAt(pos);
+                if (c == '.' || c == '[' || c == ']' || c == ' ' || c == ')' || c == '=' || c == '!' || c == '<' || c == '>') break;
+                pos++;
+            }
+            if (start == pos) throw error("expected a name");
+            return path.substring(start, pos);
+        }
+
+        /**
+         * '[' 之后的内容, 包括 ']'
+         */
+        private Segment readBracket() {
+            Segment segment;
+            char c = peekChar();
+            if (c == '*') {
+                pos++;
+                segment = new Segment(Segment.WILDCARD, null, 0, null);
+            } else if (c == '\'' || c == '"') {
+                segment = new Segment(Segment.NAME, readQuoted(), 0, null);
+            } else if (c == '?') {
+                pos++;
+                expect('(');
+                segment = new Segment(Segment.FILTER, null, 0, readFilter());
+                expect(')');
+            } else {
+                int start = pos;
+                if (c == '-') pos++;
+                while (pos < path.length() && Character.isDigit(path.charAt(pos))) pos++;
+                try {
+                    segment = new Segment(Segment.INDEX, null, Integer.parseInt(path.substring(start, pos)), null);
+                } catch (NumberFormatException e) {
+                    throw error("expected an index, '*', a quoted name or a filter");
+                }
+            }
+            expect(']');
+            return segment;
+        }
+
+        private Filter readFilter() {
+            skipSpaces();
+            expect('@');
+            GJSONPath target = new GJSONPath(path, parseRelative().toArray(new Segment[0]));
+            skipSpaces();
+            int op;
+            if (path.startsWith("==", pos)) {
+                op = Filter.EQ;
+            } else if (path.startsWith("!=", pos)) {
+                op = Filter.NE;
+            } else if (path.startsWith("<=", pos)) {
+                op = Filter.LE;
+            } else if (path.startsWith(">=", pos)) {
+                op = Filter.GE;
+            } else if (path.startsWith("<", pos)) {
+                op = Filter.LT;
+            } else if (path.startsWith(">", pos)) {
+                op = Filter.GT;
+            } else {
+                return new Filter(target, Filter.EXISTS, null);
+            }
+            pos += op == Filter.LT || op == Filter.GT ? 1 : 2;
+            skipSpaces();
+            Object value = readLiteral();
+            skipSpaces();
+            return new Filter(target, op, value);
+        }
+
+        private Object readLiteral() {
+            char c = peekChar();
+            if (c == '\'' || c == '"') return readQuoted();
+            for (String word : new String[]{"true", "false", "null"}) {
+                if (path.startsWith(word, pos)) {
+                    pos += word.length();
+                    return word.equals("null") ? JSONObject.NULL : Boolean.valueOf(word);
+                }
+            }
+            int start = pos;
+            while (pos < path.length() && "+-.eE0123456789".indexOf(path.charAt(pos)) >= 0) pos++;
+            try {
+                return Double.valueOf(path.substring(start, pos));
+            } catch (NumberFormatException e) {
+                throw error("expected a number, a quoted string, true, false or null");
+            }
+        }
+
+        private String readQuoted() {
+            char quote = path.charAt(pos++);
+            StringBuilder builder = new StringBuilder();
+            while (pos < path.length()) {
+                char c = path.charAt(pos++);
+                if (c == quote) return builder.toString();
+                if (c == '\\' && pos < path.length()) c = path.charAt(pos++);
+                builder.append(c);
+            }
+            throw error("unterminated string");
+        }
+
+        private char peekChar() {
+            if (pos >= path.length()) throw error("unexpected end");
+            return path.charAt(pos);
+        }
+
+        private void expect(char c) {
+            if (peekChar() != c) throw error("expected '" + c + "'");
+            pos++;
+        }
+
+        private void skipSpaces() {
+            while (pos < path.length() && path.charAt(pos) == ' ') pos++;
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at " + pos + ": " + path);
+        }
+    }
+}
@@ -0,0 +1,759 @@
+package com.freegang.androidutils.json;
+
+import androidx.annotation.NonNull;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 拉取式(pull)的流式 JSON 读取器, 按 token 逐个读取, 只持有一个固定大小的字符缓冲区
+ * <p>
+ * 可以从 Reader、InputStream 读取, Okio 的 BufferedSource 可通过 source.inputStream() 传入;
+ * 严格按 RFC 8259 解析, 不接受注释、单引号、前导零、字符串中未转义的控制字符等宽松写法
+ * <pre>
+ * try (GJSONReader reader = new GJSONReader(in)) {
+ *     reader.beginObject();
+ *     while (reader.hasNext()) {
+ *         String name = reader.nextName();
+ *         if (name.equals("id")) id = reader.nextLong();
+ *         else reader.skipValue();
+ *     }
+ *     reader.endObject();
+ * }
+ * </pre>
+ */
+public class GJSONReader implements Closeable {
+    public enum Token {
+        BEGIN_ARRAY,
+        END_ARRAY,
+        BEGIN_OBJECT,
+        END_OBJECT,
+        NAME,
+        STRING,
+        NUMBER,
+        BOOLEAN,
+        NULL,
+        END_DOCUMENT,
+    }
+
+    /**
+     * JSON 格式错误
+     */
+    public static class SyntaxException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public SyntaxException(String message) {
+            super(message);
+        }
+    }
+
+    private static final int PEEKED_NONE = 0;
+    private static final int PEEKED_BEGIN_OBJECT = 1;
+    private static final int PEEKED_END_OBJECT = 2;
+    private static final int PEEKED_BEGIN_ARRAY = 3;
+    private static final int PEEKED_END_ARRAY = 4;
+    private static final int PEEKED_TRUE = 5;
+    private static final int PEEKED_FALSE = 6;
+    private static final int PEEKED_NULL = 7;
+    private static final int PEEKED_STRING = 8;
+    private static final int PEEKED_NAME = 9;
+    private static final int PEEKED_NUMBER = 10;
+    private static final int PEEKED_EOF = 11;
+    //字符串已读入 number, 按数字读取失败后仍可以按字符串读取
+    private static final int PEEKED_BUFFERED = 12;
+
+    private static final int EMPTY_ARRAY = 1;
+    private static final int NONEMPTY_ARRAY = 2;
+    private static final int EMPTY_OBJECT = 3;
+    private static final int DANGLING_NAME = 4;
+    private static final int NONEMPTY_OBJECT = 5;
+    private static final int EMPTY_DOCUMENT = 6;
+    private static final int NONEMPTY_DOCUMENT = 7;
+
+    private final Reader in;
+    private final char[] buffer;
+    private int pos;
+    private int limit;
+
+    private int peeked = PEEKED_NONE;
+    //peeked 为 NUMBER 或 BUFFERED 时的字面量, 复用同一个 StringBuilder
+    private final StringBuilder number = new StringBuilder(24);
+
+    private int[] stack = new int[32];
+    private int stackSize;
+    private String[] pathNames = new String[32];
+    private int[] pathIndices = new int[32];
+
+    public GJSONReader(@NonNull Reader in) {
+        this(in, 1024);
+    }
+
+    /**
+     * @param in         Reader, 不需要再包装 BufferedReader
+     * @param bufferSize 缓冲区大小(字符)
+     */
+    public GJSONReader(@NonNull Reader in, int bufferSize) {
+        this.in = in;
+        this.buffer = new char[Math.max(16, bufferSize)];
+        stack[stackSize++] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * 按 UTF-8 读取
+     */
+    public GJSONReader(@NonNull InputStream in) {
+        this(in, StandardCharsets.UTF_8);
+    }
+
+    public GJSONReader(@NonNull InputStream in, @NonNull Charset charset) {
+        this(new InputStreamReader(in, charset));
+    }
+
+    //----------- 结构 -----------//
+
+    public void beginArray() throws IOException {
+        expect(PEEKED_BEGIN_ARRAY, Token.BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+        pathIndices[stackSize - 1] = 0;
+        peeked = PEEKED_NONE;
+    }
+
+    public void endArray() throws IOException {
+        expect(PEEKED_END_ARRAY, Token.END_ARRAY);
+        stackSize--;
+        pathIndices[stackSize - 1]++;
+        peeked = PEEKED_NONE;
+    }
+
+    public void beginObject() throws IOException {
+        expect(PEEKED_BEGIN_OBJECT, Token.BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+        peeked = PEEKED_NONE;
+    }
+
+    public void endObject() throws IOException {
+        expect(PEEKED_END_OBJECT, Token.END_OBJECT);
+        stackSize--;
+        pathNames[stackSize] = null;
+        pathIndices[stackSize - 1]++;
+        peeked = PEEKED_NONE;
+    }
+
+    /**
+     * 当前数组或对象中是否还有元素
+     */
+    public boolean hasNext() throws IOException {
+        int p = doPeekIfNeeded();
+        return p != PEEKED_END_OBJECT && p != PEEKED_END_ARRAY && p != PEEKED_EOF;
+    }
+
+    @NonNull
+    public Token peek() throws IOException {
+        switch (doPeekIfNeeded()) {
+            case PEEKED_BEGIN_OBJECT:
+                return Token.BEGIN_OBJECT;
+            case PEEKED_END_OBJECT:
+                return Token.END_OBJECT;
+            case PEEKED_BEGIN_ARRAY:
+                return Token.BEGIN_ARRAY;
+            case PEEKED_END_ARRAY:
+                return Token.END_ARRAY;
+            case PEEKED_TRUE:
+            case PEEKED_FALSE:
+                return Token.BOOLEAN;
+            case PEEKED_NULL:
+                return Token.NULL;
+            case PEEKED_STRING:
+            case PEEKED_BUFFERED:
+                return Token.STRING;
+            case PEEKED_NAME:
+                return Token.NAME;
+            case PEEKED_NUMBER:
+                return Token.NUMBER;
+            default:
+                return Token.END_DOCUMENT;
+        }
+    }
+
+    //----------- 值 -----------//
+
+    @NonNull
+    public String nextName() throws IOException {
+        expect(PEEKED_NAME, Token.NAME);
+        String name = readString();
+        pathNames[stackSize - 1] = name;
+        peeked = PEEKED_NONE;
+        return name;
+    }
+
+    /**
+     * 读取字符串, 数字也会以字面量的形式返回
+     */
+    @NonNull
+    public String nextString() throws IOException {
+        int p = doPeekIfNeeded();
+        String result;
+        if (p == PEEKED_STRING) {
+            result = readString();
+        } else if (p == PEEKED_NUMBER || p == PEEKED_BUFFERED) {
+            result = number.toString();
+        } else {
+            throw unexpected(Token.STRING);
+        }
+        consumed();
+        return result;
+    }
+
+    public boolean nextBoolean() throws IOException {
+        int p = doPeekIfNeeded();
+        if (p != PEEKED_TRUE && p != PEEKED_FALSE) throw unexpected(Token.BOOLEAN);
+        consumed();
+        return p == PEEKED_TRUE;
+    }
+
+    public void nextNull() throws IOException {
+        expect(PEEKED_NULL, Token.NULL);
+        consumed();
+    }
+
+    /**
+     * 读取整数, 数字字面量为整数时不会生成字符串; 也接受内容为数字的字符串
+     *
+     * @throws NumberFormatException 不是整数或超出 long 范围, 此时没有消费这个值, 可以改用 nextString 或 skipValue
+     */
+    public long nextLong() throws IOException {
+        long result = peekLong();
+        consumed();
+        return result;
+    }
+
+    /**
+     * @throws NumberFormatException 不是整数或超出 int 范围, 此时没有消费这个值
+     */
+    public int nextInt() throws IOException {
+        long value = peekLong();
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("int overflow: " + value + " at " + getPath());
+        }
+        consumed();
+        return (int) value;
+    }
+
+    /**
+     * 解析下一个整数, 但不消费
+     */
+    private long peekLong() throws IOException {
+        int p = doPeekIfNeeded();
+        if (p == PEEKED_STRING) {
+            bufferString();
+        } else if (p != PEEKED_NUMBER && p != PEEKED_BUFFERED) {
+            throw unexpected(Token.NUMBER);
+        }
+        checkBufferedNumber();
+        return parseLong(number);
+    }
+
+    /**
+     * 也接受内容为数字的字符串
+     *
+     * @throws NumberFormatException 不是数字, 此时没有消费这个值
+     */
+    public double nextDouble() throws IOException {
+        int p = doPeekIfNeeded();
+        if (p == PEEKED_STRING) {
+            bufferString();
+        } else if (p != PEEKED_NUMBER && p != PEEKED_BUFFERED) {
+            throw unexpected(Token.NUMBER);
+        }
+        checkBufferedNumber();
+        double result = Double.parseDouble(number.toString());
+        consumed();
+        return result;
+    }
+
+    /**
+     * 跳过下一个值(包括整个数组或对象), 字符串只扫描不解码
+     */
+    public void skipValue() throws IOException {
+        int depth = 0;
+        do {
+            int p = doPeekIfNeeded();
+            switch (p) {
+                case PEEKED_BEGIN_ARRAY:
+                    push(EMPTY_ARRAY);
+                    depth++;
+                    break;
+                case PEEKED_BEGIN_OBJECT:
+                    push(EMPTY_OBJECT);
+                    depth++;
+                    break;
+                case PEEKED_END_ARRAY:
+                case PEEKED_END_OBJECT:
+                    if (depth == 0) throw unexpected(Token.STRING);
+                    stackSize--;
+                    depth--;
+                    break;
+                case PEEKED_STRING:
+                case PEEKED_NAME:
+                    skipString();
+                    break;
+                case PEEKED_EOF:
+                    throw new EOFException("End of input at " + getPath());
+                default:
+                    break;
+            }
+            peeked = PEEKED_NONE;
+        } while (depth > 0);
+        pathIndices[stackSize - 1]++;
+    }
+
+    /**
+     * 读取下一个值为 org.json 对象: JSONObject、JSONArray、String、Integer/Long/Double、Boolean 或 JSONObject.NULL
+     */
+    public Object readValue() throws IOException {
+        switch (peek()) {
+            case BEGIN_OBJECT: {
+                JSONObject object = new JSONObject();
+                beginObject();
+                try {
+                    while (hasNext()) {
+                        object.put(nextName(), readValue());
+                    }
+                } catch (JSONException e) {
+                    throw new SyntaxException(e.getMessage() + " at " + getPath());
+                }
+                endObject();
+                return object;
+            }
+            case BEGIN_ARRAY: {
+                JSONArray array = new JSONArray();
+                beginArray();
+                while (hasNext()) {
+                    array.put(readValue());
+                }
+                endArray();
+                return array;
+            }
+            case STRING:
+                return nextString();
+            case NUMBER:
+                return readNumber();
+            case BOOLEAN:
+                return nextBoolean();
+            case NULL:
+                nextNull();
+                return JSONObject.NULL;
+            default:
+                throw unexpected(Token.BEGIN_OBJECT);
+        }
+    }
+
+    /**
+     * 当前位置, 如 $.data.items[3].price
+     */
+    @NonNull
+    public String getPath() {
+        StringBuilder result = new StringBuilder().append('$');
+        for (int i = 1; i < stackSize; i++) {
+            switch (stack[i]) {
+                case EMPTY_ARRAY:
+                case NONEMPTY_ARRAY:
+                    result.append('[').append(pathIndices[i]).append(']');
+                    break;
+                case EMPTY_OBJECT:
+                case DANGLING_NAME:
+                case NONEMPTY_OBJECT:
+                    if (pathNames[i] != null) result.append('.').append(pathNames[i]);
+                    break;
+                default:
+                    break;
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * 当前嵌套深度, 顶层为 0
+     */
+    public int getDepth() {
+        return stackSize - 1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        peeked = PEEKED_NONE;
+        stack[0] = NONEMPTY_DOCUMENT;
+        stackSize = 1;
+        in.close();
+    }
+
+    ////
+
+    private void expect(int expected, Token token) throws IOException {
+        if (doPeekIfNeeded() != expected) throw unexpected(token);
+    }
+
+    /**
+     * 一个值读取完毕
+     */
+    private void consumed() {
+        peeked = PEEKED_NONE;
+        pathIndices[stackSize - 1]++;
+    }
+
+    /**
+     * 把 STRING 读入 number, 之后解析失败也不会丢失这个值
+     */
+    private void bufferString() throws IOException {
+        String s = readString();
+        number.setLength(0);
+        number.append(s);
+        peeked = PEEKED_BUFFERED;
+    }
+
+    /**
+     * 字符串内容也必须符合 JSON 数字的语法, 不接受 Java 特有的写法, 如 1d, 0x10, NaN
+     */
+    private void checkBufferedNumber() {
+        if (peeked == PEEKED_BUFFERED && !isNumber(number)) {
+            throw new NumberFormatException("'" + number + "' is not a number at " + getPath());
+        }
+    }
+
+    private SyntaxException unexpected(Token expected) throws IOException {
+        return new SyntaxException("Expected " + expected + " but was " + peek() + " at " + getPath());
+    }
+
+    private SyntaxException syntaxError(String message) {
+        return new SyntaxException(message + " at " + getPath());
+    }
+
+    private void push(int scope) {
+        if (stackSize == stack.length) {
+            int size = stackSize * 2;
+            stack = Arrays.copyOf(stack, size);
+            pathIndices = Arrays.copyOf(pathIndices, size);
+            pathNames = Arrays.copyOf(pathNames, size);
+        }
+        stack[stackSize++] = scope;
+    }
+
+    private int doPeekIfNeeded() throws IOException {
+        return peeked != PEEKED_NONE ? peeked : doPeek();
+    }
+
+    private int doPeek() throws IOException {
+        int scope = stack[stackSize - 1];
+        if (scope == EMPTY_ARRAY) {
+            stack[stackSize - 1] = NONEMPTY_ARRAY;
+        } else if (scope == NONEMPTY_ARRAY) {
+            int c = nextNonWhitespace(true);
+            if (c == ']') return peeked = PEEKED_END_ARRAY;
+            if (c != ',') throw syntaxError("Unterminated array");
+        } else if (scope == EMPTY_OBJECT || scope == NONEMPTY_OBJECT) {
+            stack[stackSize - 1] = DANGLING_NAME;
+            if (scope == NONEMPTY_OBJECT) {
+                int c = nextNonWhitespace(true);
+                if (c == '}') return peeked = PEEKED_END_OBJECT;
+                if (c != ',') throw syntaxError("Unterminated object");
+            }
+            int c = nextNonWhitespace(true);
+            if (c == '"') return peeked = PEEKED_NAME;
+            if (c == '}' && scope == EMPTY_OBJECT) return peeked = PEEKED_END_OBJECT;
+            throw syntaxError("Expected name");
+        } else if (scope == DANGLING_NAME) {
+            stack[stackSize - 1] = NONEMPTY_OBJECT;
+            if (nextNonWhitespace(true) != ':') throw syntaxError("Expected ':'");
+        } else if (scope == EMPTY_DOCUMENT) {
+            stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+        } else if (scope == NONEMPTY_DOCUMENT) {
+            if (nextNonWhitespace(false) == -1) return peeked = PEEKED_EOF;
+            throw syntaxError("Expected end of document");
+        }
+
+        int c = nextNonWhitespace(true);
+        switch (c) {
+            case ']':
+                if (scope == EMPTY_ARRAY) return peeked = PEEKED_END_ARRAY;
+                throw syntaxError("Unexpected ']'");
+            case '"':
+                return peeked = PEEKED_STRING;
+            case '{':
+                return peeked = PEEKED_BEGIN_OBJECT;
+            case '[':
+                return peeked = PEEKED_BEGIN_ARRAY;
+            case 't':
+                expectLiteral("rue");
+                return peeked = PEEKED_TRUE;
+            case 'f':
+                expectLiteral("alse");
+                return peeked = PEEKED_FALSE;
+            case 'n':
+                expectLiteral("ull");
+                return peeked = PEEKED_NULL;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    pos--;
+                    scanNumber();
+                    return peeked = PEEKED_NUMBER;
+                }
+                throw syntaxError("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    /**
+     * 把未读的字符移到缓冲区开头, 再读到至少 minimum 个字符
+     */
+    private boolean fill(int minimum) throws IOException {
+        if (pos != limit) {
+            System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+            limit -= pos;
+        } else {
+            limit = 0;
+        }
+        pos = 0;
+        while (limit < minimum) {
+            int count = in.read(buffer, limit, buffer.length - limit);
+            if (count == -1) return false;
+            limit += count;
+        }
+        return true;
+    }
+
+    private int nextNonWhitespace(boolean throwOnEof) throws IOException {
+        while (true) {
+            if (pos == limit && !fill(1)) {
+                if (throwOnEof) throw new EOFException("End of input at " + getPath());
+                return -1;
+            }
+            char c = buffer[pos++];
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') return c;
+        }
+    }
+
+    private void expectLiteral(String rest) throws IOException {
+        for (int i = 0; i < rest.length(); i++) {
+            if (pos == limit && !fill(1)) throw new EOFException("End of input at " + getPath());
+            if (buffer[pos++] != rest.charAt(i)) throw syntaxError("Unexpected literal");
+        }
+    }
+
+    private void scanNumber() throws IOException {
+        number.setLength(0);
+        while (true) {
+            if (pos == limit && !fill(1)) break;
+            char c = buffer[pos];
+            if ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E') {
+                number.append(c);
+                pos++;
+            } else {
+                break;
+            }
+        }
+        if (!isNumber(number)) throw syntaxError("Bad number '" + number + "'");
+    }
+
+    /**
+     * RFC 8259: -? (0 | [1-9][0-9]*) (.[0-9]+)? ([eE][+-]?[0-9]+)?
+     */
+    private static boolean isNumber(CharSequence s) {
+        int length = s.length();
+        int i = 0;
+        if (i < length && s.charAt(i) == '-') i++;
+        if (i == length) return false;
+        if (s.charAt(i) == '0') {
+            i++;
+        } else {
+            int start = i;
+            while (i < length && isDigit(s.charAt(i))) i++;
+            if (i == start) return false;
+        }
+        if (i < length && s.charAt(i) == '.') {
+            int start = ++i;
+            while (i < length && isDigit(s.charAt(i))) i++;
+            if (i == start) return false;
+        }
+        if (i < length && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+            i++;
+            if (i < length && (s.charAt(i) == '+' || s.charAt(i) == '-')) i++;
+            int start = i;
+            while (i < length && isDigit(s.charAt(i))) i++;
+            if (i == start) return false;
+        }
+        return i == length;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * 读取双引号之后的字符串内容, 没有转义且不跨缓冲区时直接从缓冲区构造
+     */
+    private String readString() throws IOException {
+        StringBuilder builder = null;
+        while (true) {
+            int p = pos;
+            int start = p;
+            while (p < limit) {
+                char c = buffer[p++];
+                if (c == '"') {
+                    pos = p;
+                    if (builder == null) return new String(buffer, start, p - start - 1);
+                    builder.append(buffer, start, p - start - 1);
+                    return builder.toString();
+                } else if (c == '\\') {
+                    pos = p;
+                    if (builder == null) builder = new StringBuilder(Math.max(16, (p - start) * 2));
+                    builder.append(buffer, start, p - start - 1);
+                    builder.append(readEscape());
+                    p = pos;
+                    start = p;
+                } else if (c < 0x20) {
+                    pos = p;
+                    throw syntaxError("Unescaped control character");
+                }
+            }
+            if (builder == null) builder = new StringBuilder(Math.max(16, (p - start) * 2));
+            builder.append(buffer, start, p - start);
+            pos = p;
+            if (!fill(1)) throw syntaxError("Unterminated string");
+        }
+    }
+
+    private char readEscape() throws IOException {
+        if (pos == limit && !fill(1)) throw syntaxError("Unterminated escape");
+        char c = buffer[pos++];
+        switch (c) {
+            case 'u': {
+                if (pos + 4 > limit && !fill(4)) throw syntaxError("Unterminated escape");
+                int result = 0;
+                for (int i = pos, end = pos + 4; i < end; i++) {
+                    int digit = Character.digit(buffer[i], 16);
+                    if (digit < 0) throw syntaxError("Bad \\u escape");
+                    result = (result << 4) | digit;
+                }
+                pos += 4;
+                return (char) result;
+            }
+            case 'b':
+                return '\b';
+            case 't':
+                return '\t';
+            case 'n':
+                return '\n';
+            case 'f':
+                return '\f';
+            case 'r':
+                return '\r';
+            case '"':
+            case '\\':
+            case '/':
+                return c;
+            default:
+                throw syntaxError("Bad escape '\\" + c + "'");
+        }
+    }
+
+    private void skipString() throws IOException {
+        while (true) {
+            int p = pos;
+            while (p < limit) {
+                char c = buffer[p++];
+                if (c == '"') {
+                    pos = p;
+                    return;
+                } else if (c == '\\') {
+                    //转义的下一个字符不可能结束字符串, \\uXXXX 中也只有十六进制数字
+                    if (p == limit) {
+                        pos = p;
+                        if (!fill(1)) throw syntaxError("Unterminated string");
+                        p = pos;
+                    }
+                    p++;
+                } else if (c < 0x20) {
+                    pos = p;
+                    throw syntaxError("Unescaped control character");
+                }
+            }
+            pos = p;
+            if (!fill(1)) throw syntaxError("Unterminated string");
+        }
+    }
+
+    /**
+     * 与 JSONTokener 一致: 整数优先用 Integer/Long, 其余为 Double
+     */
+    private Object readNumber() throws IOException {
+        String literal = number.toString();
+        consumed();
+        if (literal.indexOf('.') < 0 && literal.indexOf('e') < 0 && literal.indexOf('E') < 0) {
+            try {
+                long value = Long.parseLong(literal);
+                if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) return (int) value;
+                return value;
+            } catch (NumberFormatException ignored) {
+                //超出 long 范围
+            }
+        }
+        try {
+            return Double.valueOf(literal);
+        } catch (NumberFormatException e) {
+            throw syntaxError("Bad number '" + literal + "'");
+        }
+    }
+
+    private long parseLong(CharSequence s) {
+        int length = s.length();
+        boolean negative = length > 0 && s.charAt(0) == '-';
+        int i = negative ? 1 : 0;
+        if (i == length) throw new NumberFormatException("'" + s + "' at " + getPath());
+        long result = 0;
+        for (; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                //小数或科学计数法, 值为整数时也接受
+                return parseDecimal(s);
+            }
+            //按负数累加, 能表示 Long.MIN_VALUE
+            if (result < (Long.MIN_VALUE + (c - '0')) / 10) {
+                throw new NumberFormatException("long overflow '" + s + "' at " + getPath());
+            }
+            result = result * 10 - (c - '0');
+        }
+        if (!negative) {
+            if (result == Long.MIN_VALUE) throw new NumberFormatException("long overflow '" + s + "' at " + getPath());
+            result = -result;
+        }
+        return result;
+    }
+
+    /**
+     * 按十进制精确判断, 不经过 double, 超过 2^53 的整数也不会丢失精度
+     */
+    private long parseDecimal(CharSequence s) {
+        BigDecimal value = new BigDecimal(s.toString());
+        //先按整数部分的位数排除, 避免为 1e999999999 之类的指数展开大数
+        long integerDigits = (long) value.precision() - value.scale();
+        if (value.signum() != 0 && (integerDigits <= 0 || integerDigits > 19)) {
+            throw new NumberFormatException("'" + s + "' is not a long at " + getPath());
+        }
+        try {
+            return value.longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("'" + s + "' is not a long at " + getPath());
+        }
+    }
+}
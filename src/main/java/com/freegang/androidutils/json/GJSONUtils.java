@@ -4,12 +4,24 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * org.json
  * <p>
  * GJSONUtils
  */
 public class GJSONUtils {
+    private static final int PATH_CACHE_SIZE = 64;
+    private static final Map<String, GJSONPath> PATH_CACHE = new ConcurrentHashMap<>();
+
     private GJSONUtils() {
         ///
     }
@@ -21,7 +33,15 @@ public class GJSONUtils {
      * @return
      */
     public static JSONObject parse(String jsonStr) {
-        return parse(jsonStr, StandardCharsets.UTF_8);
+        JSONObject jsonObject = new JSONObject();
+
+        if (jsonStr.isEmpty()) return jsonObject;
+        try {
+            jsonObject = new JSONObject(jsonStr);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        return jsonObject;
     }
 
     /**
@@ -30,28 +50,47 @@ public class GJSONUtils {
      * @param jsonStr
      * @param charset
      * @return
+     * @deprecated String 已经是解码后的字符, 与编码无关, 使用 {@link #parse(String)}
      */
+    @Deprecated
     public static JSONObject parse(String jsonStr, Charset charset) {
-        jsonStr = new String(jsonStr.getBytes(charset), charset);
-        JSONObject jsonObject = new JSONObject();
+        return parse(jsonStr);
+    }
 
-        if (jsonStr.isEmpty()) return jsonObject;
-        try {
-            jsonObject = new JSONObject(jsonStr);
-        } catch (JSONException e) {
-            e.printStackTrace();
-        }
-        return jsonObject;
+    /**
+     * 从输入流中解析json, 按UTF-8解码, 边读边解析, 不会先读成完整的字符串; 不会关闭输入流
+     *
+     * @param in
+     * @return
+     */
+    public static JSONObject parse(InputStream in) {
+        return parse(in, StandardCharsets.UTF_8);
     }
 
     /**
-     * 解析具有jsonArray格式的字符串
+     * 从输入流中解析json, 不会关闭输入流
      *
-     * @param jsonStr
+     * @param in
+     * @param charset
      * @return
      */
-    public static JSONArray parseArray(String jsonStr) {
-        return parseArray(jsonStr, StandardCharsets.UTF_8);
+    public static JSONObject parse(InputStream in, Charset charset) {
+        return parse(new GJSONReader(in, charset));
+    }
+
+    /**
+     * 从Reader中解析json, 不会关闭Reader
+     *
+     * @param reader
+     * @return
+     */
+    public static JSONObject parse(Reader reader) {
+        return parse(new GJSONReader(reader));
+    }
+
+    private static JSONObject parse(GJSONReader reader) {
+        Object value = readDocument(reader);
+        return value instanceof JSONObject ? (JSONObject) value : new JSONObject();
     }
 
     /**
@@ -60,8 +99,7 @@ public class GJSONUtils {
      * @param jsonStr
      * @return
      */
-    public static JSONArray parseArray(String jsonStr, Charset charset) {
-        jsonStr = new String(jsonStr.getBytes(charset), charset);
+    public static JSONArray parseArray(String jsonStr) {
         JSONArray jsonArray = new JSONArray();
 
         if (jsonStr.isEmpty()) return jsonArray;
@@ -73,6 +111,70 @@ public class GJSONUtils {
         return jsonArray;
     }
 
+    /**
+     * 解析具有jsonArray格式的字符串
+     *
+     * @param jsonStr
+     * @return
+     * @deprecated String 已经是解码后的字符, 与编码无关, 使用 {@link #parseArray(String)}
+     */
+    @Deprecated
+    public static JSONArray parseArray(String jsonStr, Charset charset) {
+        return parseArray(jsonStr);
+    }
+
+    /**
+     * 从输入流中解析jsonArray, 按UTF-8解码, 不会关闭输入流
+     *
+     * @param in
+     * @return
+     */
+    public static JSONArray parseArray(InputStream in) {
+        return parseArray(in, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 从输入流中解析jsonArray, 不会关闭输入流
+     *
+     * @param in
+     * @param charset
+     * @return
+     */
+    public static JSONArray parseArray(InputStream in, Charset charset) {
+        return parseArray(new GJSONReader(in, charset));
+    }
+
+    /**
+     * 从Reader中解析jsonArray, 不会关闭Reader
+     *
+     * @param reader
+     * @return
+     */
+    public static JSONArray parseArray(Reader reader) {
+        return parseArray(new GJSONReader(reader));
+    }
+
+    private static JSONArray parseArray(GJSONReader reader) {
+        Object value = readDocument(reader);
+        return value instanceof JSONArray ? (JSONArray) value : new JSONArray();
+    }
+
+    /**
+     * 读取一个完整的json文档, 格式错误或之后还有多余内容时返回null
+     */
+    private static Object readDocument(GJSONReader reader) {
+        try {
+            Object value = reader.readValue();
+            if (reader.peek() != GJSONReader.Token.END_DOCUMENT) {
+                throw new GJSONReader.SyntaxException("Expected end of document at " + reader.getPath());
+            }
+            return value;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
     /**
      * 将一个JSONObject转换为json格式的字符串
      *
@@ -383,48 +485,79 @@ public class GJSONUtils {
     }
 
     /**
-     * 获取某个key节点; keys 必须是 [从左到右] -> [从父到子] 的层级关系; 若某个key不存在, 则会直接返回 null, 该 keys 的最右边节点应该是一个 JSONObject
+     * 获取某个key节点; keys 必须是 [从左到右] -> [从父到子] 的层级关系; 若某个key不存在或不是 JSONObject, 则返回空的 JSONObject
      *
      * @param jsonObject
      * @param keys
      * @return
+     * @deprecated 使用 {@link GJSONPath} 或 {@link #findFirst(Object, String)}
      */
+    @Deprecated
     public static JSONObject getUntil(JSONObject jsonObject, String... keys) {
         JSONObject resultJSON = jsonObject;
-        try {
-            for (String key : keys) {
-                if (isNull(resultJSON, key)) return new JSONObject();
-                resultJSON = resultJSON.getJSONObject(key);
-            }
-        } catch (JSONException e) {
-            e.printStackTrace();
+        for (String key : keys) {
+            resultJSON = resultJSON.optJSONObject(key);
+            if (resultJSON == null) return new JSONObject();
         }
 
         return resultJSON;
     }
 
     /**
-     * 获取某个key节点; keys 必须是 [从左到右] -> [从父到子] 的层级关系; 若某个key不存在, 则会直接返回 null, 该 keys 的最右边节点应该是一个 JSONArray
+     * 获取某个key节点; keys 必须是 [从左到右] -> [从父到子] 的层级关系; 若某个key不存在或不是 JSONArray, 则返回空的 JSONArray
      *
      * @param jsonObject
      * @param keys
      * @return
+     * @deprecated 使用 {@link GJSONPath} 或 {@link #findFirst(Object, String)}
      */
+    @Deprecated
     public static JSONArray getArrayUntil(JSONObject jsonObject, String... keys) {
         JSONObject resultJSON = jsonObject;
+        for (int i = 0; i < keys.length - 1; i++) {
+            resultJSON = resultJSON.optJSONObject(keys[i]);
+            if (resultJSON == null) return new JSONArray();
+        }
 
-        try {
-            for (int i = 0; i < keys.length - 1; i++) {
-                if (isNull(resultJSON, keys[i])) return new JSONArray();
-                resultJSON = resultJSON.getJSONObject(keys[i]);
-            }
+        JSONArray jsonArray = keys.length == 0 ? null : resultJSON.optJSONArray(keys[keys.length - 1]);
+        return jsonArray == null ? new JSONArray() : jsonArray;
+    }
 
-            return resultJSON.getJSONArray(keys[keys.length - 1]);
-        } catch (JSONException e) {
-            e.printStackTrace();
-        }
+    /**
+     * 按 JSONPath 查找所有匹配的值, 如 $.data.items[*].price, 语法见 {@link GJSONPath}
+     * <p>
+     * 编译结果会被缓存; 路径不存在时返回空列表
+     *
+     * @param json JSONObject 或 JSONArray
+     * @param path
+     * @return
+     * @throws IllegalArgumentException 路径格式错误
+     */
+    public static List<Object> find(Object json, String path) {
+        return compilePath(path).find(json);
+    }
 
-        return new JSONArray();
+    /**
+     * 按 JSONPath 查找第一个匹配的值, 不存在时返回 null
+     *
+     * @param json JSONObject 或 JSONArray
+     * @param path
+     * @return
+     * @throws IllegalArgumentException 路径格式错误
+     */
+    public static Object findFirst(Object json, String path) {
+        return compilePath(path).findFirst(json);
+    }
+
+    private static GJSONPath compilePath(String path) {
+        GJSONPath compiled = PATH_CACHE.get(path);
+        if (compiled == null) {
+            compiled = GJSONPath.compile(path);
+            //路径通常是常量, 数量超出时说明在拼接动态路径, 直接清空
+            if (PATH_CACHE.size() >= PATH_CACHE_SIZE) PATH_CACHE.clear();
+            PATH_CACHE.put(path, compiled);
+        }
+        return compiled;
     }
 
     /**
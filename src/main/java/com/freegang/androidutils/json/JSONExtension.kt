@@ -29,4 +29,12 @@ fun JSONArray.isEmpty(): Boolean {
 
 fun JSONArray.isNotEmpty(): Boolean {
     return GJSONUtils.isNotEmpty(this)
-}
\ No newline at end of file
+}
+
+fun JSONObject.find(path: String): List<Any> {
+    return GJSONUtils.find(this, path)
+}
+
+fun JSONArray.find(path: String): List<Any> {
+    return GJSONUtils.find(this, path)
+}
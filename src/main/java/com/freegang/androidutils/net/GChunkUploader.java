@@ -0,0 +1,398 @@
+package com.freegang.androidutils.net;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/**
+ * 大文件分块上传, 多个分块并发上传, 只重试失败的分块, 通过断点文件在进程重启后继续
+ * <p>
+ * 具体的服务端协议由 ChunkProtocol 决定, 默认提供基于 Content-Range 的简单协议 {@link RangeProtocol}
+ */
+public class GChunkUploader {
+    private static final int CHECKPOINT_MAGIC = 0x47435531; //GCU1
+    private static final MediaType OCTET_STREAM = MediaType.parse("application/octet-stream");
+
+    /**
+     * 上传回调, 非UI线程
+     */
+    public interface UploadListener {
+        void onProgress(long uploaded, long total);
+
+        void onComplete(@NonNull String uploadId);
+
+        void onFailure(@NonNull IOException e);
+    }
+
+    /**
+     * 分块上传协议
+     */
+    public interface ChunkProtocol {
+        /**
+         * 创建一个上传会话, 返回会话标识; 续传时不会再次调用
+         */
+        @NonNull
+        String start(@NonNull OkHttpClient client, @NonNull File file, long total) throws IOException;
+
+        /**
+         * 构造某个分块的请求, body 已经是该分块的流式请求体
+         */
+        @NonNull
+        Request chunk(@NonNull String uploadId, int index, long offset, long count, long total, @NonNull RequestBody body);
+
+        /**
+         * 所有分块上传完成后调用, 例如通知服务端合并; 空文件没有分块, chunkCount 为 0
+         */
+        void finish(@NonNull OkHttpClient client, @NonNull String uploadId, int chunkCount, long total) throws IOException;
+    }
+
+    /**
+     * 简单协议: 会话标识由客户端生成, 每个分块 PUT 到 url, 携带 Upload-Id 与 Content-Range 请求头,
+     * 全部完成后 POST 到 url 并携带 Upload-Complete: chunkCount
+     */
+    public static class RangeProtocol implements ChunkProtocol {
+        private final String url;
+
+        public RangeProtocol(@NonNull String url) {
+            this.url = url;
+        }
+
+        @NonNull
+        @Override
+        public String start(@NonNull OkHttpClient client, @NonNull File file, long total) {
+            return UUID.randomUUID().toString();
+        }
+
+        @NonNull
+        @Override
+        public Request chunk(@NonNull String uploadId, int index, long offset, long count, long total, @NonNull RequestBody body) {
+            return new Request.Builder()
+                    .url(url)
+                    .put(body)
+                    .header("Upload-Id", uploadId)
+                    .header("Content-Range", "bytes " + offset + "-" + (offset + count - 1) + "/" + total)
+                    .build();
+        }
+
+        @Override
+        public void finish(@NonNull OkHttpClient client, @NonNull String uploadId, int chunkCount, long total) throws IOException {
+            Request request = new Request.Builder()
+                    .url(url)
+                    .post(RequestBody.create(null, new byte[0]))
+                    .header("Upload-Id", uploadId)
+                    .header("Upload-Complete", String.valueOf(chunkCount))
+                    .build();
+            try (Response response = client.newCall(request).execute()) {
+                if (!response.isSuccessful()) throw new IOException("finish upload HTTP " + response.code());
+            }
+        }
+    }
+
+    private final OkHttpClient client;
+    private final File checkpointDir;
+    private final ExecutorService executor;
+    private final long chunkSize;
+    private final int concurrency;
+    private final int maxRetries;
+
+    /**
+     * 默认 4MB 分块, 3 个并发, 每块最多重试 3 次
+     *
+     * @param okHttpUtils   使用其 OkHttpClient 发起请求
+     * @param checkpointDir 断点文件目录
+     */
+    public GChunkUploader(@NonNull GOkHttpUtils okHttpUtils, @NonNull File checkpointDir) {
+        this(okHttpUtils, checkpointDir, 4 * 1024 * 1024, 3, 3);
+    }
+
+    /**
+     * @param okHttpUtils   使用其 OkHttpClient 发起请求
+     * @param checkpointDir 断点文件目录
+     * @param chunkSize     分块大小
+     * @param concurrency   每个任务的并发分块数
+     * @param maxRetries    每个分块的最大重试次数
+     */
+    public GChunkUploader(@NonNull GOkHttpUtils okHttpUtils, @NonNull File checkpointDir, long chunkSize, int concurrency, int maxRetries) {
+        if (chunkSize < 1) throw new IllegalArgumentException("chunkSize < 1");
+        if (concurrency < 1) throw new IllegalArgumentException("concurrency < 1");
+        this.client = okHttpUtils.getOkHttpClient();
+        this.checkpointDir = checkpointDir;
+        this.executor = Executors.newCachedThreadPool();
+        this.chunkSize = chunkSize;
+        this.concurrency = concurrency;
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * 上传文件, 同一个文件(路径、长度、修改时间均一致)存在断点时从断点继续
+     *
+     * @param file     文件
+     * @param protocol 协议
+     * @param listener 回调
+     * @return Task
+     */
+    public Task upload(@NonNull File file, @NonNull ChunkProtocol protocol, @NonNull UploadListener listener) {
+        Task task = new Task(file, protocol, listener);
+        executor.execute(task::run);
+        return task;
+    }
+
+    /**
+     * 放弃某个文件的断点
+     */
+    public void discard(@NonNull File file) {
+        //noinspection ResultOfMethodCallIgnored
+        checkpointFile(file).delete();
+    }
+
+    private File checkpointFile(File file) {
+        String key = file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified() + "|" + chunkSize;
+        return new File(checkpointDir, String.format(Locale.ROOT, "%016x.gcu", fnv64(key)));
+    }
+
+    private static long fnv64(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    ////
+
+    /**
+     * 一个上传任务
+     */
+    public final class Task {
+        private final File file;
+        private final File checkpointFile;
+        private final ChunkProtocol protocol;
+        private final UploadListener listener;
+
+        private final AtomicBoolean canceled = new AtomicBoolean();
+        private final AtomicLong uploaded = new AtomicLong();
+        private final AtomicInteger cursor = new AtomicInteger();
+        //正在进行的分块请求, 取消时一并取消
+        private final Set<Call> calls = Collections.newSetFromMap(new ConcurrentHashMap<Call, Boolean>());
+        private volatile IOException failure;
+
+        private String uploadId;
+        private long total;
+        private int chunkCount;
+        private BitSet completed;
+
+        Task(File file, ChunkProtocol protocol, UploadListener listener) {
+            this.file = file;
+            this.checkpointFile = checkpointFile(file);
+            this.protocol = protocol;
+            this.listener = listener;
+        }
+
+        /**
+         * 取消上传, 正在上传的分块立即中断, 已完成的分块保留在断点中
+         */
+        public void cancel() {
+            canceled.set(true);
+            for (Call call : calls) {
+                call.cancel();
+            }
+        }
+
+        public long getUploaded() {
+            return uploaded.get();
+        }
+
+        private void run() {
+            try {
+                total = file.length();
+                //空文件没有分块, 直接 finish
+                chunkCount = (int) ((total + chunkSize - 1) / chunkSize);
+                if (!readCheckpoint()) {
+                    uploadId = protocol.start(client, file, total);
+                    completed = new BitSet(chunkCount);
+                    writeCheckpoint();
+                }
+                for (int i = completed.nextSetBit(0); i >= 0; i = completed.nextSetBit(i + 1)) {
+                    uploaded.addAndGet(count(i));
+                }
+                listener.onProgress(uploaded.get(), total);
+
+                //每个 worker 依次领取尚未完成的分块
+                int workers = Math.min(concurrency, chunkCount - completed.cardinality());
+                List<Future<?>> futures = new ArrayList<>();
+                for (int i = 1; i < workers; i++) {
+                    futures.add(executor.submit(this::work));
+                }
+                work();
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+
+                if (failure != null) throw failure;
+                if (canceled.get()) throw new InterruptedIOException("upload canceled");
+                protocol.finish(client, uploadId, chunkCount, total);
+                //noinspection ResultOfMethodCallIgnored
+                checkpointFile.delete();
+                listener.onComplete(uploadId);
+            } catch (IOException e) {
+                listener.onFailure(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                canceled.set(true);
+                listener.onFailure(new InterruptedIOException("upload interrupted"));
+            } catch (ExecutionException e) {
+                listener.onFailure(new IOException(e.getCause()));
+            }
+        }
+
+        private void work() {
+            while (!canceled.get() && failure == null) {
+                int index = nextChunk();
+                if (index < 0) return;
+                try {
+                    uploadChunk(index);
+                } catch (IOException e) {
+                    failure = e;
+                    return;
+                }
+            }
+        }
+
+        private int nextChunk() {
+            while (true) {
+                int index = cursor.getAndIncrement();
+                if (index >= chunkCount) return -1;
+                synchronized (this) {
+                    if (!completed.get(index)) return index;
+                }
+            }
+        }
+
+        private long count(int index) {
+            long offset = index * chunkSize;
+            return Math.min(chunkSize, total - offset);
+        }
+
+        private void uploadChunk(int index) throws IOException {
+            long offset = index * chunkSize;
+            long count = count(index);
+            IOException last = null;
+            for (int attempt = 0; attempt <= maxRetries; attempt++) {
+                if (canceled.get()) throw new InterruptedIOException("upload canceled");
+                if (attempt > 0) backoff(attempt);
+                RequestBody body = GRequestBodyUtils.create(OCTET_STREAM, file, offset, count);
+                Request request = protocol.chunk(uploadId, index, offset, count, total, body);
+                Call call = client.newCall(request);
+                calls.add(call);
+                //登记之前 cancel() 已经遍历过
+                if (canceled.get()) call.cancel();
+                try (Response response = call.execute()) {
+                    if (response.isSuccessful()) {
+                        synchronized (this) {
+                            completed.set(index);
+                            writeCheckpoint();
+                        }
+                        listener.onProgress(uploaded.addAndGet(count), total);
+                        return;
+                    }
+                    last = new IOException("chunk " + index + " HTTP " + response.code());
+                    //4xx 除了超时与限流, 重试不会成功
+                    int code = response.code();
+                    if (code >= 400 && code < 500 && code != 408 && code != 429) break;
+                } catch (IOException e) {
+                    if (canceled.get()) throw new InterruptedIOException("upload canceled");
+                    last = e;
+                } finally {
+                    calls.remove(call);
+                }
+            }
+            throw last;
+        }
+
+        private void backoff(int attempt) throws InterruptedIOException {
+            try {
+                TimeUnit.MILLISECONDS.sleep(Math.min(10_000L, 500L << attempt));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("upload interrupted");
+            }
+        }
+
+        /**
+         * 断点文件: magic, uploadId, total, chunkSize, chunkCount, 已完成分块的位图
+         */
+        private boolean readCheckpoint() {
+            if (!checkpointFile.exists()) return false;
+            try (DataInputStream in = new DataInputStream(new FileInputStream(checkpointFile))) {
+                if (in.readInt() != CHECKPOINT_MAGIC) return false;
+                String id = in.readUTF();
+                if (in.readLong() != total || in.readLong() != chunkSize || in.readInt() != chunkCount) return false;
+                byte[] bits = new byte[in.readInt()];
+                in.readFully(bits);
+                uploadId = id;
+                completed = BitSet.valueOf(bits);
+                return true;
+            } catch (IOException e) {
+                //损坏的断点文件, 重新上传
+                return false;
+            }
+        }
+
+        private void writeCheckpoint() throws IOException {
+            if (!checkpointDir.exists() && !checkpointDir.mkdirs()) {
+                throw new IOException("mkdirs failed: " + checkpointDir);
+            }
+            File tmp = new File(checkpointFile.getPath() + ".tmp");
+            try (FileOutputStream fos = new FileOutputStream(tmp);
+                 DataOutputStream out = new DataOutputStream(fos)) {
+                byte[] bits = completed.toByteArray();
+                out.writeInt(CHECKPOINT_MAGIC);
+                out.writeUTF(uploadId);
+                out.writeLong(total);
+                out.writeLong(chunkSize);
+                out.writeInt(chunkCount);
+                out.writeInt(bits.length);
+                out.write(bits);
+                out.flush();
+                fos.getFD().sync();
+            }
+            if (!tmp.renameTo(checkpointFile)) throw new IOException("rename checkpoint failed: " + checkpointFile);
+        }
+
+        @Nullable
+        public String getUploadId() {
+            return uploadId;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.freegang.androidutils.net;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+/**
+ * 按Host熔断的拦截器, 通过 GOkHttpUtils.Builder.circuitBreaker 启用, 位于 GRetryInterceptor 内层
+ * <p>
+ * CLOSED: 正常放行, 连续失败达到阈值后进入 OPEN;
+ * OPEN: 直接抛出 OpenException, 不发起网络请求, 冷却结束后进入 HALF_OPEN;
+ * HALF_OPEN: 只放行一个探测请求, 成功则 CLOSED, 失败则重新 OPEN; 探测请求被主动取消时只让出探测名额, 状态不变;
+ * only-if-cached 的请求(如 GHttpCache 的 FORCE_CACHE)不访问网络, 总是放行, 也不计入状态, 后端故障时仍可离线读取缓存
+ */
+public class GCircuitBreaker implements Interceptor {
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN,
+    }
+
+    /**
+     * 熔断中快速失败时抛出
+     */
+    public static class OpenException extends IOException {
+        public OpenException(String host) {
+            super("circuit open for " + host);
+        }
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private final Map<String, HostCircuit> circuits = new ConcurrentHashMap<>();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * 默认连续失败 5 次熔断, 冷却 30s
+     */
+    public GCircuitBreaker() {
+        this(5, 30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param failureThreshold 触发熔断的连续失败次数
+     * @param openDuration     熔断冷却时长
+     * @param unit             时间单位
+     */
+    public GCircuitBreaker(int failureThreshold, long openDuration, TimeUnit unit) {
+        if (failureThreshold < 1) throw new IllegalArgumentException("failureThreshold < 1");
+        this.failureThreshold = failureThreshold;
+        this.openNanos = unit.toNanos(openDuration);
+    }
+
+    /**
+     * 某个Host当前的状态
+     */
+    @NonNull
+    public State getState(@NonNull String host) {
+        HostCircuit circuit = circuits.get(host);
+        return circuit != null ? circuit.state(System.nanoTime()) : State.CLOSED;
+    }
+
+    /**
+     * 所有出现过的Host及其状态
+     */
+    @NonNull
+    public Map<String, State> getStates() {
+        long now = System.nanoTime();
+        Map<String, State> states = new HashMap<>();
+        for (Map.Entry<String, HostCircuit> entry : circuits.entrySet()) {
+            states.put(entry.getKey(), entry.getValue().state(now));
+        }
+        return states;
+    }
+
+    /**
+     * 因熔断被直接拒绝的请求数
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * 手动恢复某个Host
+     */
+    public void reset(@NonNull String host) {
+        circuits.remove(host);
+    }
+
+    @NonNull
+    @Override
+    public Response intercept(@NonNull Chain chain) throws IOException {
+        //只读缓存, 504 来自本地而不是后端
+        if (chain.request().cacheControl().onlyIfCached()) return chain.proceed(chain.request());
+
+        String host = chain.request().url().host();
+        HostCircuit circuit = circuits.get(host);
+        if (circuit == null) {
+            HostCircuit created = new HostCircuit();
+            circuit = circuits.putIfAbsent(host, created);
+            if (circuit == null) circuit = created;
+        }
+
+        if (!circuit.tryAcquire(System.nanoTime())) {
+            rejectedCount.incrementAndGet();
+            throw new OpenException(host);
+        }
+
+        Response response;
+        try {
+            response = chain.proceed(chain.request());
+        } catch (IOException e) {
+            //主动取消既不说明后端故障, 也不说明已经恢复
+            if (chain.call().isCanceled()) {
+                circuit.onCanceled();
+            } else {
+                circuit.onFailure(System.nanoTime());
+            }
+            throw e;
+        }
+        if (response.code() >= 500) {
+            circuit.onFailure(System.nanoTime());
+        } else {
+            circuit.onSuccess();
+        }
+        return response;
+    }
+
+    private class HostCircuit {
+        private State state = State.CLOSED;
+        private int failures;
+        private long openedAt;
+        private boolean probing;
+
+        synchronized State state(long now) {
+            if (state == State.OPEN && now - openedAt >= openNanos) return State.HALF_OPEN;
+            return state;
+        }
+
+        synchronized boolean tryAcquire(long now) {
+            switch (state) {
+                case CLOSED:
+                    return true;
+                case OPEN:
+                    if (now - openedAt < openNanos) return false;
+                    state = State.HALF_OPEN;
+                    probing = true;
+                    return true;
+                default:
+                    //HALF_OPEN 期间只允许一个探测请求
+                    if (probing) return false;
+                    probing = true;
+                    return true;
+            }
+        }
+
+        synchronized void onSuccess() {
+            state = State.CLOSED;
+            failures = 0;
+            probing = false;
+        }
+
+        synchronized void onCanceled() {
+            probing = false;
+        }
+
+        synchronized void onFailure(long now) {
+            probing = false;
+            if (state == State.HALF_OPEN || ++failures >= failureThreshold) {
+                state = State.OPEN;
+                openedAt = now;
+                failures = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.freegang.androidutils.net;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Inflater;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSource;
+import okio.GzipSink;
+import okio.GzipSource;
+import okio.InflaterSource;
+import okio.Okio;
+import okio.Source;
+
+/**
+ * 请求/响应压缩拦截器, 通过 GOkHttpUtils.Builder.compression 启用, 位于 GRetryInterceptor 外层, 每个请求只压缩一次
+ * <p>
+ * 文本类(json/xml/text/表单)且大小在阈值与上限之间的请求体以 gzip 压缩发送 (需要服务端支持 Content-Encoding: gzip 的请求),
+ * 压缩在内存中完成; 文件/流请求体、分片(带 Content-Range)与长度未知的请求体保持流式发送, 不压缩;
+ * 响应方向按已注册的解码器声明 Accept-Encoding 并解码, 内置 gzip 与 deflate, brotli/zstd 需要通过 addDecoder 注册第三方实现
+ */
+public class GCompressionInterceptor implements Interceptor {
+    /**
+     * 响应体解码器
+     */
+    public interface ContentDecoder {
+        @NonNull
+        Source decode(@NonNull Source source) throws IOException;
+    }
+
+    /**
+     * 默认 1KB 以上的请求体才压缩, 更小的请求压缩收益抵不过 gzip 头部开销
+     */
+    public static final long DEFAULT_THRESHOLD = 1024;
+    /**
+     * 默认 1MB 以上的请求体不压缩, 压缩需要把整个请求体读入内存
+     */
+    public static final long DEFAULT_MAX_SIZE = 1024 * 1024;
+
+    private final long threshold;
+    private final long maxSize;
+    private final Map<String, ContentDecoder> decoders = new ConcurrentHashMap<>();
+    //注册顺序即偏好顺序
+    private volatile String acceptEncoding = "gzip, deflate";
+
+    private final AtomicLong requestOriginalBytes = new AtomicLong();
+    private final AtomicLong requestCompressedBytes = new AtomicLong();
+    private final AtomicLong responseEncodedBytes = new AtomicLong();
+    private final AtomicLong responseDecodedBytes = new AtomicLong();
+
+    public GCompressionInterceptor() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @param threshold 请求体压缩阈值(字节), 传 Long.MAX_VALUE 只处理响应
+     */
+    public GCompressionInterceptor(long threshold) {
+        this(threshold, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param threshold 请求体压缩阈值(字节), 传 Long.MAX_VALUE 只处理响应
+     * @param maxSize   请求体压缩上限(字节), 更大的请求体原样流式发送
+     */
+    public GCompressionInterceptor(long threshold, long maxSize) {
+        this.threshold = threshold;
+        this.maxSize = maxSize;
+        decoders.put("gzip", GzipSource::new);
+        decoders.put("deflate", source -> new InflaterSource(source, new Inflater()));
+    }
+
+    /**
+     * 注册一个响应解码器, 优先于已有的编码; 例如 brotli:
+     * <pre>
+     * addDecoder("br", source -> Okio.source(new BrotliInputStream(Okio.buffer(source).inputStream())));
+     * </pre>
+     *
+     * @param encoding Content-Encoding 名称, 如 br, zstd
+     * @param decoder  解码器
+     */
+    public GCompressionInterceptor addDecoder(@NonNull String encoding, @NonNull ContentDecoder decoder) {
+        String name = encoding.toLowerCase(Locale.ROOT);
+        decoders.put(name, decoder);
+        synchronized (this) {
+            StringBuilder builder = new StringBuilder(name);
+            for (String existing : acceptEncoding.split(",\\s*")) {
+                if (!existing.equals(name)) builder.append(", ").append(existing);
+            }
+            acceptEncoding = builder.toString();
+        }
+        return this;
+    }
+
+    //----------- 统计 -----------//
+
+    public long getRequestOriginalBytes() {
+        return requestOriginalBytes.get();
+    }
+
+    public long getRequestCompressedBytes() {
+        return requestCompressedBytes.get();
+    }
+
+    /**
+     * 请求体压缩率, 压缩后 / 压缩前
+     */
+    public double getRequestCompressionRatio() {
+        long original = requestOriginalBytes.get();
+        return original == 0 ? 1 : (double) requestCompressedBytes.get() / original;
+    }
+
+    public long getResponseEncodedBytes() {
+        return responseEncodedBytes.get();
+    }
+
+    public long getResponseDecodedBytes() {
+        return responseDecodedBytes.get();
+    }
+
+    /**
+     * 响应体压缩率, 传输字节 / 解码后字节, 只统计已读取的部分
+     */
+    public double getResponseCompressionRatio() {
+        long decoded = responseDecodedBytes.get();
+        return decoded == 0 ? 1 : (double) responseEncodedBytes.get() / decoded;
+    }
+
+    ////
+
+    @NonNull
+    @Override
+    public Response intercept(@NonNull Chain chain) throws IOException {
+        Request request = chain.request();
+        Request.Builder builder = request.newBuilder();
+
+        RequestBody body = request.body();
+        if (shouldCompress(request, body)) {
+            //noinspection ConstantConditions
+            builder.header("Content-Encoding", "gzip")
+                    .method(request.method(), gzip(body));
+        }
+        //调用方自行声明了 Accept-Encoding 时不接管解码
+        boolean decode = request.header("Accept-Encoding") == null && request.header("Range") == null;
+        if (decode) {
+            builder.header("Accept-Encoding", acceptEncoding);
+        }
+
+        Response response = chain.proceed(builder.build());
+        return decode ? decode(request, response) : response;
+    }
+
+    boolean shouldCompress(Request request, @Nullable RequestBody body) throws IOException {
+        if (body == null || request.header("Content-Encoding") != null) return false;
+        //分片的 Content-Range 是未压缩的偏移, 压缩后与请求体对不上
+        if (request.header("Content-Range") != null) return false;
+        //一次性/双工的请求体无法预先读取, 文件/流请求体读入内存会失去流式上传与真实的上传进度
+        if (body.isOneShot() || body.isDuplex() || GRequestBodyUtils.isStreaming(body)) return false;
+        //只压缩文本类, multipart 与二进制多为已压缩的格式
+        if (!isCompressible(body.contentType())) return false;
+        long length = body.contentLength();
+        return length >= threshold && length <= maxSize;
+    }
+
+    static boolean isCompressible(@Nullable MediaType type) {
+        if (type == null) return false;
+        String subtype = type.subtype();
+        return "text".equals(type.type())
+                || "json".equals(subtype) || subtype.endsWith("+json")
+                || "xml".equals(subtype) || subtype.endsWith("+xml")
+                || "x-www-form-urlencoded".equals(subtype)
+                || "javascript".equals(subtype);
+    }
+
+    /**
+     * 压缩到内存中, 这样可以给出准确的 Content-Length, 也能被重试
+     */
+    private RequestBody gzip(RequestBody body) throws IOException {
+        Buffer compressed = new Buffer();
+        Buffer original = new Buffer();
+        body.writeTo(original);
+        long originalSize = original.size();
+        try (BufferedSink sink = Okio.buffer(new GzipSink(compressed))) {
+            sink.writeAll(original);
+        }
+        requestOriginalBytes.addAndGet(originalSize);
+        requestCompressedBytes.addAndGet(compressed.size());
+        return RequestBody.create(body.contentType(), compressed.readByteString());
+    }
+
+    private Response decode(Request request, Response response) throws IOException {
+        String encoding = response.header("Content-Encoding");
+        ResponseBody body = response.body();
+        if (encoding == null || body == null || "HEAD".equals(request.method())
+                || response.code() == 204 || response.code() == 304 || body.contentLength() == 0) {
+            return response;
+        }
+        ContentDecoder decoder = decoders.get(encoding.trim().toLowerCase(Locale.ROOT));
+        if (decoder == null) return response;
+
+        MediaType contentType = body.contentType();
+        Source encoded = new CountingSource(body.source(), responseEncodedBytes);
+        Source decoded = new CountingSource(decoder.decode(encoded), responseDecodedBytes);
+        return response.newBuilder()
+                .removeHeader("Content-Encoding")
+                .removeHeader("Content-Length")
+                .body(ResponseBody.create(contentType, -1, Okio.buffer(decoded)))
+                .build();
+    }
+
+    private static class CountingSource extends ForwardingSource {
+        private final AtomicLong counter;
+
+        CountingSource(Source delegate, AtomicLong counter) {
+            super(delegate);
+            this.counter = counter;
+        }
+
+        @Override
+        public long read(@NonNull Buffer sink, long byteCount) throws IOException {
+            long read = super.read(sink, byteCount);
+            if (read > 0) counter.addAndGet(read);
+            return read;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.freegang.androidutils.net;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+/**
+ * application/x-www-form-urlencoded 请求体
+ * <p>
+ * 与 okhttp3.FormBody 不同, 参数在写入时才直接编码进 BufferedSink, 不会为每个参数生成编码后的字符串;
+ * contentLength 通过同一套编码规则计算, 只计算一次
+ */
+public final class GFormBody extends RequestBody {
+    private static final MediaType CONTENT_TYPE = MediaType.get("application/x-www-form-urlencoded");
+    private static final byte[] HEX = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'};
+    /**
+     * 无需转义的 ASCII 字符, 与 URLEncoder 一致: 字母数字与 -_.*
+     */
+    private static final boolean[] SAFE = new boolean[128];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) SAFE[c] = true;
+        for (char c = 'A'; c <= 'Z'; c++) SAFE[c] = true;
+        for (char c = '0'; c <= '9'; c++) SAFE[c] = true;
+        SAFE['-'] = true;
+        SAFE['_'] = true;
+        SAFE['.'] = true;
+        SAFE['*'] = true;
+    }
+
+    private final String[] namesAndValues;
+    private long contentLength = -1;
+
+    private GFormBody(String[] namesAndValues) {
+        this.namesAndValues = namesAndValues;
+    }
+
+    public int size() {
+        return namesAndValues.length / 2;
+    }
+
+    @NonNull
+    public String name(int index) {
+        return namesAndValues[index * 2];
+    }
+
+    @NonNull
+    public String value(int index) {
+        return namesAndValues[index * 2 + 1];
+    }
+
+    @Nullable
+    @Override
+    public MediaType contentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public long contentLength() {
+        long length = contentLength;
+        if (length == -1) {
+            length = Math.max(0, namesAndValues.length / 2 * 2 - 1);
+            for (String s : namesAndValues) {
+                length += encodedLength(s);
+            }
+            contentLength = length;
+        }
+        return length;
+    }
+
+    @Override
+    public void writeTo(@NonNull BufferedSink sink) throws IOException {
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            if (i > 0) sink.writeByte('&');
+            encode(sink, namesAndValues[i]);
+            sink.writeByte('=');
+            encode(sink, namesAndValues[i + 1]);
+        }
+    }
+
+    ////
+
+    static long encodedLength(String s) {
+        long length = 0;
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length += SAFE[c] || c == ' ' ? 1 : 3;
+            } else if (c < 0x800) {
+                length += 6;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 12;
+                i++;
+            } else {
+                //孤立的代理项按 '?' 编码, 与 String.getBytes 一致
+                length += Character.isSurrogate(c) ? 3 : 9;
+            }
+        }
+        return length;
+    }
+
+    static void encode(BufferedSink sink, String s) throws IOException {
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                if (SAFE[c]) {
+                    sink.writeByte(c);
+                } else if (c == ' ') {
+                    sink.writeByte('+');
+                } else {
+                    escape(sink, c);
+                }
+            } else if (c < 0x800) {
+                escape(sink, 0xC0 | (c >> 6));
+                escape(sink, 0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                escape(sink, 0xF0 | (codePoint >> 18));
+                escape(sink, 0x80 | ((codePoint >> 12) & 0x3F));
+                escape(sink, 0x80 | ((codePoint >> 6) & 0x3F));
+                escape(sink, 0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                escape(sink, '?');
+            } else {
+                escape(sink, 0xE0 | (c >> 12));
+                escape(sink, 0x80 | ((c >> 6) & 0x3F));
+                escape(sink, 0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private static void escape(BufferedSink sink, int b) throws IOException {
+        sink.writeByte('%');
+        sink.writeByte(HEX[(b >> 4) & 0xF]);
+        sink.writeByte(HEX[b & 0xF]);
+    }
+
+    ////
+
+    /**
+     * 可重复使用的构建器, build 之后可以 clear 再继续添加
+     */
+    public static final class Builder {
+        private String[] namesAndValues;
+        private int size;
+
+        public Builder() {
+            this(8);
+        }
+
+        /**
+         * @param expectedSize 预计的参数个数
+         */
+        public Builder(int expectedSize) {
+            namesAndValues = new String[Math.max(1, expectedSize) * 2];
+        }
+
+        public Builder add(@NonNull String name, @Nullable String value) {
+            if (size + 2 > namesAndValues.length) {
+                namesAndValues = Arrays.copyOf(namesAndValues, namesAndValues.length * 2);
+            }
+            namesAndValues[size++] = name;
+            namesAndValues[size++] = value == null ? "" : value;
+            return this;
+        }
+
+        public Builder addAll(@Nullable Map<String, String> params) {
+            if (params != null) {
+                for (Map.Entry<String, String> entry : params.entrySet()) {
+                    add(entry.getKey(), entry.getValue());
+                }
+            }
+            return this;
+        }
+
+        public Builder clear() {
+            Arrays.fill(namesAndValues, 0, size, null);
+            size = 0;
+            return this;
+        }
+
+        @NonNull
+        public GFormBody build() {
+            return new GFormBody(Arrays.copyOf(namesAndValues, size));
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package com.freegang.androidutils.net;
+
+import androidx.annotation.NonNull;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Request;
+import okhttp3.RequestBody;
+
+/**
+ * 小请求批量发送, 在时间窗口或数量上限内累积 postDataAsync 类请求, 然后一次性发出
+ * <p>
+ * COMBINED: 所有请求编码进同一个请求体, 发往批量接口, 再由 BatchDecoder 拆分响应分发给各自的回调;
+ * PIPELINED: 请求保持原样, 但在同一时刻集中发出, 在 HTTP/2 下共享同一条连接多路复用;
+ * 编码与派发都在批量器自己的线程中进行, 不占用调用 add 的线程
+ */
+public class GHttpBatcher {
+    public enum Mode {
+        COMBINED,
+        PIPELINED,
+    }
+
+    /**
+     * 单个待发送的请求
+     */
+    public static final class Item {
+        private final String url;
+        private final Map<String, String> params;
+        private final GOkHttpUtils.RespCallBody respCallBody;
+
+        Item(String url, Map<String, String> params, GOkHttpUtils.RespCallBody respCallBody) {
+            this.url = url;
+            this.params = params;
+            this.respCallBody = respCallBody;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public Map<String, String> getParams() {
+            return params;
+        }
+    }
+
+    /**
+     * 将一批请求编码为一个请求体
+     */
+    public interface BatchEncoder {
+        @NonNull
+        RequestBody encode(@NonNull List<Item> items) throws IOException;
+    }
+
+    /**
+     * 将批量接口的响应拆分为每个请求各自的响应体, 返回的列表需与 itemCount 等长
+     */
+    public interface BatchDecoder {
+        @NonNull
+        List<String> decode(int statusCode, @NonNull String body, int itemCount) throws IOException;
+    }
+
+    private final GOkHttpUtils okHttpUtils;
+    private final Mode mode;
+    private final String batchUrl;
+    private final int maxBatchSize;
+    private final long maxDelayMillis;
+    private final BatchEncoder encoder;
+    private final BatchDecoder decoder;
+    private final ScheduledExecutorService scheduler;
+
+    private List<Item> pending = new ArrayList<>();
+    private ScheduledFuture<?> scheduledFlush;
+    private boolean shutdown;
+
+    private GHttpBatcher(Builder builder) {
+        this.okHttpUtils = builder.okHttpUtils;
+        this.mode = builder.mode;
+        this.batchUrl = builder.batchUrl;
+        this.maxBatchSize = builder.maxBatchSize;
+        this.maxDelayMillis = builder.maxDelayMillis;
+        this.encoder = builder.encoder;
+        this.decoder = builder.decoder;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "GHttpBatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 加入一个表单请求, 回调与 GOkHttpUtils.postDataAsync 一致, 非UI线程
+     *
+     * @param url          url
+     * @param bodyParams   Request Body
+     * @param respCallBody Response
+     * @throws IllegalStateException 已经 shutdown
+     */
+    public void add(String url, Map<String, String> bodyParams, GOkHttpUtils.RespCallBody respCallBody) {
+        synchronized (this) {
+            if (shutdown) throw new IllegalStateException("GHttpBatcher has been shut down");
+            pending.add(new Item(url, bodyParams, respCallBody));
+            if (pending.size() >= maxBatchSize) {
+                dispatchLater(drain());
+            } else if (scheduledFlush == null) {
+                scheduledFlush = scheduler.schedule(this::dispatchPending, maxDelayMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * 立即发出当前累积的请求
+     */
+    public void flush() {
+        synchronized (this) {
+            dispatchLater(drain());
+        }
+    }
+
+    /**
+     * 发出剩余请求并停止计时线程, 之后不能再 add
+     */
+    public void shutdown() {
+        synchronized (this) {
+            if (shutdown) return;
+            shutdown = true;
+            dispatchLater(drain());
+        }
+        //已提交的派发任务仍会执行
+        scheduler.shutdown();
+    }
+
+    /**
+     * 交给计时线程派发; 调用方持有锁, shutdown 之后不会再有新的批次
+     */
+    private void dispatchLater(final List<Item> items) {
+        if (!items.isEmpty()) scheduler.execute(() -> dispatch(items));
+    }
+
+    /**
+     * 时间窗口到期, 在计时线程中执行
+     */
+    private void dispatchPending() {
+        List<Item> items;
+        synchronized (this) {
+            items = drain();
+        }
+        dispatch(items);
+    }
+
+    private List<Item> drain() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        if (pending.isEmpty()) return Collections.emptyList();
+        List<Item> items = pending;
+        pending = new ArrayList<>();
+        return items;
+    }
+
+    private void dispatch(List<Item> items) {
+        if (items.isEmpty()) return;
+        if (mode == Mode.PIPELINED) {
+            for (Item item : items) {
+                okHttpUtils.postDataAsync(item.url, item.params, item.respCallBody);
+            }
+            return;
+        }
+
+        final List<Item> batch = items;
+        RequestBody body;
+        try {
+            body = encoder.encode(batch);
+        } catch (IOException e) {
+            failAll(batch, e.getMessage());
+            return;
+        }
+        Request request = new Request.Builder()
+                .url(batchUrl)
+                .post(body)
+                .build();
+        okHttpUtils.executeAsync(request, (statusCode, responseBody) -> {
+            if (statusCode == -1) {
+                failAll(batch, responseBody);
+                return;
+            }
+            List<String> parts;
+            try {
+                parts = decoder.decode(statusCode, responseBody, batch.size());
+            } catch (IOException e) {
+                failAll(batch, e.getMessage());
+                return;
+            }
+            if (parts.size() != batch.size()) {
+                failAll(batch, "batch response size " + parts.size() + " != " + batch.size());
+                return;
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).respCallBody.onResponseBody(statusCode, parts.get(i));
+            }
+        });
+    }
+
+    private static void failAll(List<Item> items, String message) {
+        for (Item item : items) {
+            item.respCallBody.onResponseBody(-1, message);
+        }
+    }
+
+    ////
+
+    /**
+     * 默认编码: [{"url": "...", "params": {...}}, ...] 的 JSON 数组
+     */
+    public static final BatchEncoder JSON_ENCODER = items -> {
+        JSONArray array = new JSONArray();
+        try {
+            for (Item item : items) {
+                JSONObject object = new JSONObject();
+                object.put("url", item.url);
+                object.put("params", item.params != null ? new JSONObject(item.params) : new JSONObject());
+                array.put(object);
+            }
+        } catch (JSONException e) {
+            throw new IOException(e);
+        }
+        return RequestBody.create(GOkHttpUtils.MEDIA_TYPE_JSON, array.toString());
+    };
+
+    /**
+     * 默认解码: 与请求顺序一致的 JSON 数组, 每个元素作为对应请求的响应体
+     */
+    public static final BatchDecoder JSON_DECODER = (statusCode, body, itemCount) -> {
+        try {
+            JSONArray array = new JSONArray(body);
+            List<String> parts = new ArrayList<>(array.length());
+            for (int i = 0; i < array.length(); i++) {
+                parts.add(array.isNull(i) ? "" : String.valueOf(array.get(i)));
+            }
+            return parts;
+        } catch (JSONException e) {
+            throw new IOException(e);
+        }
+    };
+
+    public static final class Builder {
+        private final GOkHttpUtils okHttpUtils;
+        private Mode mode = Mode.PIPELINED;
+        private String batchUrl;
+        private int maxBatchSize = 50;
+        private long maxDelayMillis = 200;
+        private BatchEncoder encoder = JSON_ENCODER;
+        private BatchDecoder decoder = JSON_DECODER;
+
+        public Builder(@NonNull GOkHttpUtils okHttpUtils) {
+            this.okHttpUtils = okHttpUtils;
+        }
+
+        /**
+         * 合并为一个请求体, 发往批量接口
+         *
+         * @param batchUrl 批量接口地址
+         */
+        public Builder combined(@NonNull String batchUrl) {
+            this.mode = Mode.COMBINED;
+            this.batchUrl = batchUrl;
+            return this;
+        }
+
+        /**
+         * 各自发送, 只在时间上集中 (默认)
+         */
+        public Builder pipelined() {
+            this.mode = Mode.PIPELINED;
+            this.batchUrl = null;
+            return this;
+        }
+
+        /**
+         * 累积窗口, 默认 50 个 / 200ms, 先到先发
+         *
+         * @param maxBatchSize 单批最大请求数
+         * @param maxDelay     第一个请求加入后最长等待时长
+         * @param unit         时间单位
+         */
+        public Builder window(int maxBatchSize, long maxDelay, TimeUnit unit) {
+            if (maxBatchSize < 1) throw new IllegalArgumentException("maxBatchSize < 1");
+            this.maxBatchSize = maxBatchSize;
+            this.maxDelayMillis = unit.toMillis(maxDelay);
+            return this;
+        }
+
+        public Builder encoder(@NonNull BatchEncoder encoder) {
+            this.encoder = encoder;
+            return this;
+        }
+
+        public Builder decoder(@NonNull BatchDecoder decoder) {
+            this.decoder = decoder;
+            return this;
+        }
+
+        public GHttpBatcher build() {
+            if (mode == Mode.COMBINED && batchUrl == null) throw new IllegalStateException("batchUrl == null");
+            return new GHttpBatcher(this);
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.freegang.androidutils.net;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Cache;
+import okhttp3.CacheControl;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import okio.Okio;
+
+/**
+ * 基于 OkHttp Cache 的磁盘缓存, 通过 GOkHttpUtils.Builder.cache 启用
+ * <p>
+ * 容量上限与LRU淘汰、ETag/Last-Modified 条件请求由 OkHttp 完成, 这里补充离线模式、stale-while-revalidate 以及命中统计
+ */
+public class GHttpCache {
+    private static final long DEFAULT_STALE_WHILE_REVALIDATE = TimeUnit.DAYS.toSeconds(1);
+    /**
+     * 必须访问网络, 但仍允许 OkHttp 带上 If-None-Match/If-Modified-Since; FORCE_NETWORK(no-cache) 会跳过条件请求
+     */
+    private static final CacheControl REVALIDATE = new CacheControl.Builder().maxAge(0, TimeUnit.SECONDS).build();
+
+    /**
+     * 缓存模式, 通过 Request.tag(CacheMode.class, mode) 指定
+     */
+    public enum CacheMode {
+        /**
+         * 遵循响应头的缓存策略, 过期后自动发起条件请求
+         */
+        DEFAULT,
+        /**
+         * 总是访问网络, 有缓存时发送条件请求, 304 时响应体来自缓存; 响应仍会写入缓存
+         */
+        NETWORK_ONLY,
+        /**
+         * 离线模式, 只读缓存, 即使已经过期; 没有缓存时返回 504
+         */
+        FORCE_CACHE,
+        /**
+         * 有缓存(哪怕已过期)则立即返回, 过期时在后台重新验证并刷新缓存; 没有缓存时走网络
+         */
+        STALE_WHILE_REVALIDATE,
+    }
+
+    private final Cache cache;
+    private final int staleWhileRevalidateSeconds;
+    private final Set<String> revalidating = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private volatile GOkHttpUtils okHttpUtils;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong conditionalHitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong revalidateCount = new AtomicLong();
+    private final AtomicLong savedBytes = new AtomicLong();
+    private final AtomicLong hitNanos = new AtomicLong();
+    private final AtomicLong missNanos = new AtomicLong();
+
+    /**
+     * @param directory 缓存目录, 建议使用 context.getCacheDir() 下的子目录
+     * @param maxSize   缓存上限(字节), 超出后按LRU淘汰
+     */
+    public GHttpCache(@NonNull File directory, long maxSize) {
+        this(directory, maxSize, DEFAULT_STALE_WHILE_REVALIDATE, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param directory            缓存目录
+     * @param maxSize              缓存上限(字节)
+     * @param staleWhileRevalidate STALE_WHILE_REVALIDATE 模式下可接受的最大过期时长
+     * @param unit                 时间单位
+     */
+    public GHttpCache(@NonNull File directory, long maxSize, long staleWhileRevalidate, TimeUnit unit) {
+        this.cache = new Cache(directory, maxSize);
+        this.staleWhileRevalidateSeconds = (int) Math.min(Integer.MAX_VALUE, unit.toSeconds(staleWhileRevalidate));
+    }
+
+    /**
+     * 底层 OkHttp Cache
+     */
+    @NonNull
+    public Cache getCache() {
+        return cache;
+    }
+
+    /**
+     * 由 GOkHttpUtils 在构建完成后调用, 后台重新验证经由它发出, 与其他请求一样受 GHttpScheduler 调度
+     */
+    void attach(GOkHttpUtils okHttpUtils) {
+        this.okHttpUtils = okHttpUtils;
+    }
+
+    /**
+     * 应用拦截器, 处理 CacheMode 并统计命中情况
+     */
+    @NonNull
+    public Interceptor interceptor() {
+        return new CacheModeInterceptor();
+    }
+
+    //----------- 统计 -----------//
+
+    /**
+     * 完全由缓存返回, 未产生网络请求
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * 条件请求返回304, 响应体来自缓存
+     */
+    public long getConditionalHitCount() {
+        return conditionalHitCount.get();
+    }
+
+    /**
+     * 响应体来自网络
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * 后台重新验证的次数
+     */
+    public long getRevalidateCount() {
+        return revalidateCount.get();
+    }
+
+    /**
+     * 由缓存提供、无需通过网络传输的响应体字节数, 仅统计带 Content-Length 的响应
+     */
+    public long getSavedBytes() {
+        return savedBytes.get();
+    }
+
+    /**
+     * 缓存命中(含304)的平均耗时, 毫秒
+     */
+    public double getAverageHitMillis() {
+        long count = hitCount.get() + conditionalHitCount.get();
+        return count == 0 ? 0 : hitNanos.get() / 1e6 / count;
+    }
+
+    /**
+     * 未命中的平均耗时, 毫秒
+     */
+    public double getAverageMissMillis() {
+        long count = missCount.get();
+        return count == 0 ? 0 : missNanos.get() / 1e6 / count;
+    }
+
+    public void resetStats() {
+        hitCount.set(0);
+        conditionalHitCount.set(0);
+        missCount.set(0);
+        revalidateCount.set(0);
+        savedBytes.set(0);
+        hitNanos.set(0);
+        missNanos.set(0);
+    }
+
+    /**
+     * 当前缓存占用的字节数
+     */
+    public long size() throws IOException {
+        return cache.size();
+    }
+
+    public void evictAll() throws IOException {
+        cache.evictAll();
+    }
+
+    ////
+
+    private void record(Response response, long tookNanos) {
+        Response cacheResponse = response.cacheResponse();
+        Response networkResponse = response.networkResponse();
+        //条件请求返回新内容(200)时 cacheResponse 同样不为 null, 只有 304 才算命中
+        if (cacheResponse == null || (networkResponse != null && networkResponse.code() != 304)) {
+            missCount.incrementAndGet();
+            missNanos.addAndGet(tookNanos);
+            return;
+        }
+        if (networkResponse == null) {
+            hitCount.incrementAndGet();
+        } else {
+            conditionalHitCount.incrementAndGet();
+        }
+        hitNanos.addAndGet(tookNanos);
+        ResponseBody body = response.body();
+        long length = body != null ? body.contentLength() : -1;
+        if (length > 0) savedBytes.addAndGet(length);
+    }
+
+    /**
+     * OkHttp 在返回过期缓存时会附带 110 警告
+     */
+    private static boolean isStale(Response response) {
+        for (String warning : response.headers("Warning")) {
+            if (warning.startsWith("110")) return true;
+        }
+        return false;
+    }
+
+    private void revalidate(Request request) {
+        GOkHttpUtils okHttpUtils = this.okHttpUtils;
+        final String key = request.method() + " " + request.url();
+        if (okHttpUtils == null || !revalidating.add(key)) return;
+        revalidateCount.incrementAndGet();
+
+        Request revalidateRequest = request.newBuilder()
+                .tag(CacheMode.class, CacheMode.DEFAULT)
+                .cacheControl(REVALIDATE)
+                .build();
+        okHttpUtils.dispatch(revalidateRequest, new Callback() {
+            @Override
+            public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                revalidating.remove(key);
+            }
+
+            @Override
+            public void onResponse(@NonNull Call call, @NonNull Response response) {
+                //必须读完响应体, OkHttp 才会写入缓存
+                try (ResponseBody body = response.body()) {
+                    if (body != null) {
+                        BufferedSource source = body.source();
+                        source.readAll(Okio.blackhole());
+                    }
+                } catch (IOException ignored) {
+                } finally {
+                    revalidating.remove(key);
+                }
+            }
+        });
+    }
+
+    private class CacheModeInterceptor implements Interceptor {
+        @NonNull
+        @Override
+        public Response intercept(@NonNull Chain chain) throws IOException {
+            Request request = chain.request();
+            CacheMode mode = request.tag(CacheMode.class);
+            if (mode == null) mode = CacheMode.DEFAULT;
+
+            switch (mode) {
+                case NETWORK_ONLY:
+                    request = request.newBuilder().cacheControl(REVALIDATE).build();
+                    break;
+                case FORCE_CACHE:
+                    request = request.newBuilder().cacheControl(CacheControl.FORCE_CACHE).build();
+                    break;
+                case STALE_WHILE_REVALIDATE:
+                    Request staleRequest = request.newBuilder()
+                            .cacheControl(new CacheControl.Builder()
+                                    .onlyIfCached()
+                                    .maxStale(staleWhileRevalidateSeconds, TimeUnit.SECONDS)
+                                    .build())
+                            .build();
+                    long staleStart = System.nanoTime();
+                    Response cached = chain.proceed(staleRequest);
+                    //504: 没有可用缓存, 转为普通网络请求
+                    if (cached.code() != 504) {
+                        record(cached, System.nanoTime() - staleStart);
+                        if (isStale(cached)) revalidate(request);
+                        return cached;
+                    }
+                    cached.close();
+                    break;
+                default:
+                    break;
+            }
+
+            long start = System.nanoTime();
+            Response response = chain.proceed(request);
+            record(response, System.nanoTime() - start);
+            return response;
+        }
+    }
+}
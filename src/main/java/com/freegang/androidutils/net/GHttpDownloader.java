@@ -0,0 +1,531 @@
+package com.freegang.androidutils.net;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+
+/**
+ * 多段并行、可断点续传的文件下载
+ * <p>
+ * 通过 Range 请求把文件切成 N 段同时下载, 各段直接按偏移写入预先分配好长度的目标文件;
+ * 每段进度保存在 目标文件.gdl 中, 进程被杀后重新调用 download 会从断点继续, 服务端文件已变化时丢弃断点从头下载;
+ * 全部完成后校验长度与摘要
+ */
+public class GHttpDownloader {
+    private static final int CHECKPOINT_MAGIC = 0x47444C31; //GDL1
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long CHECKPOINT_INTERVAL_NANOS = 1_000_000_000L;
+    private static final long PROGRESS_INTERVAL_NANOS = 200_000_000L;
+
+    /**
+     * 下载回调, 非UI线程
+     */
+    public interface DownloadListener {
+        void onProgress(long downloaded, long total);
+
+        void onComplete(@NonNull File file);
+
+        void onFailure(@NonNull IOException e);
+    }
+
+    private final OkHttpClient client;
+    private final ExecutorService executor;
+
+    public GHttpDownloader(@NonNull GOkHttpUtils okHttpUtils) {
+        this(okHttpUtils, Executors.newCachedThreadPool());
+    }
+
+    /**
+     * @param okHttpUtils 使用其 OkHttpClient 发起请求
+     * @param executor    执行下载的线程池, 每个任务占用 1 + 分段数 个线程, 不要使用容量不足的固定线程池
+     */
+    public GHttpDownloader(@NonNull GOkHttpUtils okHttpUtils, @NonNull ExecutorService executor) {
+        this.client = okHttpUtils.getOkHttpClient();
+        this.executor = executor;
+    }
+
+    /**
+     * 下载文件, 不校验摘要
+     *
+     * @param url      url
+     * @param target   目标文件
+     * @param segments 分段数
+     * @param listener 回调
+     */
+    public Task download(@NonNull String url, @NonNull File target, int segments, @NonNull DownloadListener listener) {
+        return download(url, target, segments, null, null, listener);
+    }
+
+    /**
+     * 下载文件
+     *
+     * @param url             url
+     * @param target          目标文件
+     * @param segments        分段数, 服务端不支持 Range 时退化为单连接
+     * @param digestAlgorithm 摘要算法, 如 SHA-256、MD5; 为 null 时只校验长度
+     * @param expectedDigest  期望的摘要, 十六进制
+     * @param listener        回调
+     */
+    public Task download(@NonNull String url, @NonNull File target, int segments,
+                         @Nullable String digestAlgorithm, @Nullable String expectedDigest,
+                         @NonNull DownloadListener listener) {
+        if (segments < 1) throw new IllegalArgumentException("segments < 1");
+        Task task = new Task(url, target, segments, digestAlgorithm, expectedDigest, listener);
+        task.future = executor.submit(task::run);
+        return task;
+    }
+
+    ////
+
+    /**
+     * 一个下载任务
+     */
+    public final class Task {
+        private final String url;
+        private final File target;
+        private final File checkpointFile;
+        private final int segmentCount;
+        private final String digestAlgorithm;
+        private final String expectedDigest;
+        private final DownloadListener listener;
+
+        private final AtomicBoolean canceled = new AtomicBoolean();
+        private final AtomicBoolean stopped = new AtomicBoolean();
+        private final AtomicLong downloaded = new AtomicLong();
+        private final List<Call> calls = new ArrayList<>();
+        private volatile Future<?> future;
+        private long lastCheckpointNanos;
+        private long lastProgressNanos;
+        private Checkpoint checkpoint;
+
+        Task(String url, File target, int segmentCount, String digestAlgorithm, String expectedDigest, DownloadListener listener) {
+            this.url = url;
+            this.target = target;
+            this.checkpointFile = new File(target.getPath() + ".gdl");
+            this.segmentCount = segmentCount;
+            this.digestAlgorithm = digestAlgorithm;
+            this.expectedDigest = expectedDigest;
+            this.listener = listener;
+        }
+
+        /**
+         * 取消下载, 已下载的分段进度会保留, 之后可继续; 即使任务还没开始, 也会回调 onFailure
+         */
+        public void cancel() {
+            canceled.set(true);
+            stop();
+            Future<?> future = this.future;
+            if (future != null && future.cancel(false)) {
+                //任务还没开始, run() 不会再执行, 在下载线程池中通知失败
+                executor.execute(() -> listener.onFailure(new InterruptedIOException("download canceled")));
+            }
+        }
+
+        public boolean isCanceled() {
+            return canceled.get();
+        }
+
+        public long getDownloaded() {
+            return downloaded.get();
+        }
+
+        /**
+         * 停止所有分段的网络读取
+         */
+        private void stop() {
+            stopped.set(true);
+            synchronized (calls) {
+                for (Call call : calls) call.cancel();
+            }
+        }
+
+        private void run() {
+            try {
+                try {
+                    download(false);
+                } catch (RemoteChangedException e) {
+                    //服务端文件已变化, 旧进度作废, 删除断点从头下载一次; 先复位再检查取消, 避免漏掉并发的 cancel
+                    //noinspection ResultOfMethodCallIgnored
+                    checkpointFile.delete();
+                    stopped.set(false);
+                    if (canceled.get()) throw e;
+                    download(true);
+                }
+
+                verify();
+                //noinspection ResultOfMethodCallIgnored
+                checkpointFile.delete();
+                listener.onComplete(target);
+            } catch (IOException e) {
+                listener.onFailure(canceled.get() ? new InterruptedIOException("download canceled") : e);
+            }
+        }
+
+        /**
+         * @param fresh 忽略已有的断点
+         */
+        private void download(boolean fresh) throws IOException {
+            checkpoint = fresh ? null : Checkpoint.read(checkpointFile, url);
+            if (checkpoint == null || !target.exists() || target.length() != checkpoint.total) {
+                checkpoint = probe();
+            }
+            long done = 0;
+            for (Segment segment : checkpoint.segments) done += segment.done;
+            downloaded.set(done);
+
+            try (RandomAccessFile file = new RandomAccessFile(target, "rw")) {
+                if (checkpoint.total < 0) {
+                    //单连接下载按实际写入的长度计算总长, 已有的更长的旧文件必须先截断
+                    file.setLength(0);
+                } else if (file.length() != checkpoint.total) {
+                    file.setLength(checkpoint.total);
+                }
+                FileChannel channel = file.getChannel();
+                if (checkpoint.total < 0) {
+                    downloadWhole(channel);
+                } else {
+                    downloadSegments(channel);
+                }
+                channel.force(false);
+            }
+        }
+
+        /**
+         * 请求第一个字节, 判断是否支持 Range 并获得总长度与校验标识
+         */
+        private Checkpoint probe() throws IOException {
+            Request request = new Request.Builder()
+                    .url(url)
+                    .header("Range", "bytes=0-0")
+                    .build();
+            try (Response response = execute(request)) {
+                Checkpoint result = new Checkpoint(url);
+                result.validator = validator(response);
+                long total = response.code() == 206 ? parseTotal(response.header("Content-Range")) : -1;
+                if (total <= 0) {
+                    //不支持 Range 或长度未知, 单连接下载, 无法续传
+                    result.total = -1;
+                    result.segments.add(new Segment(0, -1));
+                    return result;
+                }
+                result.total = total;
+                int count = (int) Math.max(1, Math.min(segmentCount, total / BUFFER_SIZE));
+                long size = total / count;
+                for (int i = 0; i < count; i++) {
+                    long start = i * size;
+                    long end = i == count - 1 ? total - 1 : start + size - 1;
+                    result.segments.add(new Segment(start, end));
+                }
+                return result;
+            }
+        }
+
+        private void downloadWhole(FileChannel channel) throws IOException {
+            Request request = new Request.Builder().url(url).build();
+            try (Response response = execute(request)) {
+                if (!response.isSuccessful()) throw new IOException("HTTP " + response.code());
+                write(response, channel, checkpoint.segments.get(0));
+            }
+            checkpoint.total = checkpoint.segments.get(0).done;
+        }
+
+        private void downloadSegments(final FileChannel channel) throws IOException {
+            List<Future<?>> futures = new ArrayList<>();
+            for (final Segment segment : checkpoint.segments) {
+                if (segment.isComplete()) continue;
+                futures.add(executor.submit(() -> {
+                    downloadSegment(channel, segment);
+                    return null;
+                }));
+            }
+            IOException failure = null;
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+                        //一个分段失败, 停止其余分段, 保留进度
+                        stop();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    stop();
+                    failure = new InterruptedIOException("download interrupted");
+                }
+            }
+            //文件已变化时断点随后会被删除, 不再保存
+            if (!(failure instanceof RemoteChangedException)) saveCheckpoint(channel, true);
+            if (failure != null) throw failure;
+        }
+
+        private void downloadSegment(FileChannel channel, Segment segment) throws IOException {
+            Request.Builder builder = new Request.Builder()
+                    .url(url)
+                    .header("Range", "bytes=" + (segment.start + segment.done) + "-" + segment.end);
+            if (checkpoint.validator != null) {
+                //文件在服务端发生变化时返回 200, 而不是错误的片段
+                builder.header("If-Range", checkpoint.validator);
+            }
+            try (Response response = execute(builder.build())) {
+                if (response.code() != 206) {
+                    throw new RemoteChangedException("segment " + segment.start + "-" + segment.end + " HTTP " + response.code() + ", remote file changed");
+                }
+                write(response, channel, segment);
+            }
+        }
+
+        private void write(Response response, FileChannel channel, Segment segment) throws IOException {
+            ResponseBody body = response.body();
+            if (body == null) throw new IOException("empty body");
+            BufferedSource source = body.source();
+            byte[] bytes = new byte[BUFFER_SIZE];
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            int read;
+            while ((read = source.read(bytes, 0, bytes.length)) != -1) {
+                if (stopped.get()) throw new InterruptedIOException("download stopped");
+                buffer.clear().limit(read);
+                long position = segment.start + segment.done;
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+                segment.done += read;
+                downloaded.addAndGet(read);
+                saveCheckpoint(channel, false);
+                reportProgress();
+            }
+            if (segment.end >= 0 && !segment.isComplete()) {
+                throw new IOException("segment " + segment.start + "-" + segment.end + " truncated");
+            }
+        }
+
+        private void verify() throws IOException {
+            if (target.length() != checkpoint.total) {
+                fail("length mismatch: " + target.length() + " != " + checkpoint.total);
+            }
+            if (digestAlgorithm == null || expectedDigest == null) return;
+            MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance(digestAlgorithm);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IOException(e);
+            }
+            byte[] buffer = new byte[BUFFER_SIZE];
+            try (FileInputStream in = new FileInputStream(target)) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+            String actual = toHex(digest.digest());
+            if (!actual.equalsIgnoreCase(expectedDigest)) {
+                fail(digestAlgorithm + " mismatch: " + actual);
+            }
+        }
+
+        /**
+         * 校验失败的文件不可续传, 清理后抛出
+         */
+        private void fail(String message) throws IOException {
+            //noinspection ResultOfMethodCallIgnored
+            checkpointFile.delete();
+            //noinspection ResultOfMethodCallIgnored
+            target.delete();
+            throw new IOException(message);
+        }
+
+        private Response execute(Request request) throws IOException {
+            if (stopped.get()) throw new InterruptedIOException("download stopped");
+            Call call = client.newCall(request);
+            synchronized (calls) {
+                calls.add(call);
+            }
+            try {
+                return call.execute();
+            } finally {
+                synchronized (calls) {
+                    calls.remove(call);
+                }
+            }
+        }
+
+        private void saveCheckpoint(FileChannel channel, boolean force) throws IOException {
+            if (checkpoint.total < 0) return;
+            synchronized (this) {
+                long now = System.nanoTime();
+                if (!force && now - lastCheckpointNanos < CHECKPOINT_INTERVAL_NANOS) return;
+                lastCheckpointNanos = now;
+                //先记下各分段的进度, 再让数据落盘, 断点记录的进度才不会超过文件中实际的内容;
+                //其他分段线程在 force 期间继续写入, 那部分进度留给下一次断点
+                long[] done = checkpoint.snapshot();
+                channel.force(false);
+                checkpoint.write(checkpointFile, done);
+            }
+        }
+
+        private void reportProgress() {
+            long now = System.nanoTime();
+            synchronized (this) {
+                if (now - lastProgressNanos < PROGRESS_INTERVAL_NANOS) return;
+                lastProgressNanos = now;
+            }
+            listener.onProgress(downloaded.get(), checkpoint.total);
+        }
+    }
+
+    ////
+
+    private static String validator(Response response) {
+        String etag = response.header("ETag");
+        //弱 ETag 不能用于 If-Range
+        if (etag != null && !etag.startsWith("W/")) return etag;
+        return response.header("Last-Modified");
+    }
+
+    /**
+     * Content-Range: bytes 0-0/12345
+     */
+    private static long parseTotal(String contentRange) {
+        if (contentRange == null) return -1;
+        int slash = contentRange.lastIndexOf('/');
+        if (slash == -1) return -1;
+        try {
+            return Long.parseLong(contentRange.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] digits = "0123456789abcdef".toCharArray();
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = digits[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = digits[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * 分段请求没有返回 206, 说明服务端文件已变化(If-Range 不匹配)或不再支持 Range
+     */
+    private static final class RemoteChangedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        RemoteChangedException(String message) {
+            super(message);
+        }
+    }
+
+    private static final class Segment {
+        final long start;
+        final long end;
+        volatile long done;
+
+        Segment(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        boolean isComplete() {
+            return end >= 0 && start + done > end;
+        }
+    }
+
+    /**
+     * 断点文件: magic, url, validator, total, 分段数, [start, end, done]...
+     */
+    private static final class Checkpoint {
+        final String url;
+        String validator;
+        long total;
+        final List<Segment> segments = new ArrayList<>();
+
+        Checkpoint(String url) {
+            this.url = url;
+        }
+
+        /**
+         * 各分段当前已写入的字节数
+         */
+        long[] snapshot() {
+            long[] done = new long[segments.size()];
+            for (int i = 0; i < done.length; i++) done[i] = segments.get(i).done;
+            return done;
+        }
+
+        /**
+         * @param done 写入 snapshot 时的进度, 而不是分段线程正在推进的进度
+         */
+        void write(File file, long[] done) throws IOException {
+            File tmp = new File(file.getPath() + ".tmp");
+            try (FileOutputStream fos = new FileOutputStream(tmp);
+                 DataOutputStream out = new DataOutputStream(fos)) {
+                out.writeInt(CHECKPOINT_MAGIC);
+                out.writeUTF(url);
+                out.writeUTF(validator != null ? validator : "");
+                out.writeLong(total);
+                out.writeInt(segments.size());
+                for (int i = 0; i < done.length; i++) {
+                    Segment segment = segments.get(i);
+                    out.writeLong(segment.start);
+                    out.writeLong(segment.end);
+                    out.writeLong(done[i]);
+                }
+                out.flush();
+                fos.getFD().sync();
+            }
+            if (!tmp.renameTo(file)) throw new IOException("rename checkpoint failed: " + file);
+        }
+
+        @Nullable
+        static Checkpoint read(File file, String url) {
+            if (!file.exists()) return null;
+            try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+                if (in.readInt() != CHECKPOINT_MAGIC) return null;
+                Checkpoint checkpoint = new Checkpoint(in.readUTF());
+                if (!checkpoint.url.equals(url)) return null;
+                String validator = in.readUTF();
+                checkpoint.validator = validator.isEmpty() ? null : validator;
+                checkpoint.total = in.readLong();
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    Segment segment = new Segment(in.readLong(), in.readLong());
+                    segment.done = in.readLong();
+                    checkpoint.segments.add(segment);
+                }
+                return checkpoint;
+            } catch (IOException e) {
+                //损坏的断点文件, 重新下载
+                return null;
+            }
+        }
+    }
+}
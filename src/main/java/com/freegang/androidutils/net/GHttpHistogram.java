@@ -0,0 +1,120 @@
+package com.freegang.androidutils.net;
+
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 无锁的对数-线性直方图, 用于统计耗时分布
+ * <p>
+ * 小于 16 的值精确记录, 更大的值按 2 的幂分组, 每组再均分 8 个桶, 分位数的相对误差不超过 12.5%
+ */
+public class GHttpHistogram {
+    private static final int LINEAR = 16;
+    private static final int SUB_BUCKETS = 8;
+    private static final int SUB_BITS = 3;
+    private static final int BUCKETS = LINEAR + (63 - 4) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * 记录一个值, 负数按 0 处理
+     */
+    public void record(long value) {
+        if (value < 0) value = 0;
+        buckets.incrementAndGet(indexOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) break;
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * 分位数
+     *
+     * @param quantile 0 ~ 1, 例如 0.99
+     * @return 所在桶的中值, 没有数据时为 0
+     */
+    public long percentile(double quantile) {
+        long total = count.get();
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(quantile * total);
+        if (rank < 1) rank = 1;
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) return Math.min(middleOf(i), max.get());
+        }
+        return max.get();
+    }
+
+    @NonNull
+    public Snapshot snapshot() {
+        long total = count.get();
+        return new Snapshot(total, total == 0 ? 0 : (double) sum.get() / total,
+                percentile(0.50), percentile(0.95), percentile(0.99), max.get());
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) buckets.set(i, 0);
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    ////
+
+    static int indexOf(long value) {
+        if (value < LINEAR) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR + (exponent - 4) * SUB_BUCKETS + sub;
+    }
+
+    static long middleOf(int index) {
+        if (index < LINEAR) return index;
+        int exponent = (index - LINEAR) / SUB_BUCKETS + 4;
+        int sub = (index - LINEAR) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BITS);
+        long lower = (long) (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+        return lower + width / 2;
+    }
+
+    /**
+     * 某一时刻的统计快照
+     */
+    public static final class Snapshot {
+        public final long count;
+        public final double mean;
+        public final long p50;
+        public final long p95;
+        public final long p99;
+        public final long max;
+
+        Snapshot(long count, double mean, long p50, long p95, long p99, long max) {
+            this.count = count;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p95 = p95;
+            this.p99 = p99;
+            this.max = max;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "count=%d mean=%.1f p50=%d p95=%d p99=%d max=%d", count, mean, p50, p95, p99, max);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.freegang.androidutils.net;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+/**
+ * net 包内部日志, 默认关闭
+ * <p>
+ * 调用方先用 isLoggable 判断再拼接日志内容, 关闭时不会产生任何字符串
+ */
+public final class GHttpLogger {
+    /**
+     * 日志输出
+     */
+    public interface Printer {
+        void println(int priority, @NonNull String tag, @NonNull String message);
+    }
+
+    /**
+     * 关闭所有日志
+     */
+    public static final int OFF = Integer.MAX_VALUE;
+
+    private static volatile int level = OFF;
+    private static volatile Printer printer = Log::println;
+
+    private GHttpLogger() {
+        ///
+    }
+
+    /**
+     * 设置最低输出级别
+     *
+     * @param level Log.VERBOSE ~ Log.ASSERT, 或 OFF
+     */
+    public static void setLevel(int level) {
+        GHttpLogger.level = level;
+    }
+
+    public static int getLevel() {
+        return level;
+    }
+
+    /**
+     * 替换日志输出, 默认输出到 Logcat
+     */
+    public static void setPrinter(@NonNull Printer printer) {
+        GHttpLogger.printer = printer;
+    }
+
+    public static boolean isLoggable(int priority) {
+        return priority >= level;
+    }
+
+    public static void log(int priority, @NonNull String tag, @NonNull String message) {
+        if (priority >= level) {
+            printer.println(priority, tag, message);
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.freegang.androidutils.net;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Request;
+
+/**
+ * 基于 OkHttp EventListener 的请求耗时统计, 通过 GOkHttpUtils.Builder.metrics 启用
+ * <p>
+ * 按Host记录各阶段耗时(微秒)的直方图, 以及收发字节数与连接复用率, 可随时查询或导出快照
+ */
+public class GHttpMetrics implements EventListener.Factory {
+    /**
+     * 请求阶段
+     */
+    public enum Phase {
+        DNS,
+        CONNECT,
+        TLS,
+        REQUEST_WRITE,
+        /**
+         * 请求写完到收到响应头 (time to first byte)
+         */
+        TTFB,
+        BODY_READ,
+        /**
+         * 整个Call, 含重试与重定向
+         */
+        CALL,
+    }
+
+    private final Map<String, HostMetrics> hosts = new ConcurrentHashMap<>();
+
+    @NonNull
+    @Override
+    public EventListener create(@NonNull Call call) {
+        return new CallListener(host(call.request().url().host()));
+    }
+
+    /**
+     * 某个Host的统计, 没有记录时返回 null
+     */
+    @Nullable
+    public HostMetrics get(@NonNull String host) {
+        return hosts.get(host);
+    }
+
+    /**
+     * 所有Host的统计
+     */
+    @NonNull
+    public Map<String, HostMetrics> getAll() {
+        return new TreeMap<>(hosts);
+    }
+
+    public void reset() {
+        hosts.clear();
+    }
+
+    /**
+     * 导出文本快照, 耗时单位为微秒
+     */
+    @NonNull
+    public String dump() {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, HostMetrics> entry : getAll().entrySet()) {
+            HostMetrics metrics = entry.getValue();
+            builder.append(entry.getKey())
+                    .append(String.format(Locale.ROOT, " calls=%d failed=%d sent=%d received=%d reuse=%.2f%n",
+                            metrics.calls.get(), metrics.failedCalls.get(), metrics.bytesSent.get(),
+                            metrics.bytesReceived.get(), metrics.getConnectionReuseRatio()));
+            for (Map.Entry<Phase, GHttpHistogram.Snapshot> phase : metrics.snapshot().entrySet()) {
+                if (phase.getValue().count == 0) continue;
+                builder.append("  ").append(phase.getKey()).append(' ').append(phase.getValue()).append('\n');
+            }
+        }
+        return builder.toString();
+    }
+
+    private HostMetrics host(String host) {
+        HostMetrics metrics = hosts.get(host);
+        if (metrics == null) {
+            HostMetrics created = new HostMetrics();
+            metrics = hosts.putIfAbsent(host, created);
+            if (metrics == null) metrics = created;
+        }
+        return metrics;
+    }
+
+    ////
+
+    /**
+     * 单个Host的统计
+     */
+    public static final class HostMetrics {
+        private final EnumMap<Phase, GHttpHistogram> phases = new EnumMap<>(Phase.class);
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong failedCalls = new AtomicLong();
+        private final AtomicLong bytesSent = new AtomicLong();
+        private final AtomicLong bytesReceived = new AtomicLong();
+        private final AtomicLong connectionsAcquired = new AtomicLong();
+        private final AtomicLong connectionsCreated = new AtomicLong();
+
+        HostMetrics() {
+            for (Phase phase : Phase.values()) {
+                phases.put(phase, new GHttpHistogram());
+            }
+        }
+
+        @NonNull
+        public GHttpHistogram histogram(@NonNull Phase phase) {
+            //noinspection ConstantConditions
+            return phases.get(phase);
+        }
+
+        @NonNull
+        public Map<Phase, GHttpHistogram.Snapshot> snapshot() {
+            EnumMap<Phase, GHttpHistogram.Snapshot> snapshot = new EnumMap<>(Phase.class);
+            for (Map.Entry<Phase, GHttpHistogram> entry : phases.entrySet()) {
+                snapshot.put(entry.getKey(), entry.getValue().snapshot());
+            }
+            return snapshot;
+        }
+
+        public long getCalls() {
+            return calls.get();
+        }
+
+        public long getFailedCalls() {
+            return failedCalls.get();
+        }
+
+        public long getBytesSent() {
+            return bytesSent.get();
+        }
+
+        public long getBytesReceived() {
+            return bytesReceived.get();
+        }
+
+        /**
+         * 获取连接时直接复用已有连接的比例
+         */
+        public double getConnectionReuseRatio() {
+            long acquired = connectionsAcquired.get();
+            if (acquired == 0) return 0;
+            return Math.max(0, 1 - (double) connectionsCreated.get() / acquired);
+        }
+
+        void record(Phase phase, long startNanos) {
+            if (startNanos == 0) return;
+            //noinspection ConstantConditions
+            phases.get(phase).record((System.nanoTime() - startNanos) / 1000);
+        }
+    }
+
+    /**
+     * 每个Call一个实例, 事件在同一个Call内按顺序到达
+     */
+    private static final class CallListener extends EventListener {
+        private final HostMetrics metrics;
+        private long callStart;
+        private long dnsStart;
+        private long connectStart;
+        private long secureConnectStart;
+        private long requestStart;
+        private long requestEnd;
+        private long bodyStart;
+
+        CallListener(HostMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        @Override
+        public void callStart(@NonNull Call call) {
+            callStart = System.nanoTime();
+            metrics.calls.incrementAndGet();
+        }
+
+        @Override
+        public void dnsStart(@NonNull Call call, @NonNull String domainName) {
+            dnsStart = System.nanoTime();
+        }
+
+        @Override
+        public void dnsEnd(@NonNull Call call, @NonNull String domainName, @NonNull List<InetAddress> inetAddressList) {
+            metrics.record(Phase.DNS, dnsStart);
+        }
+
+        @Override
+        public void connectStart(@NonNull Call call, @NonNull InetSocketAddress inetSocketAddress, @NonNull Proxy proxy) {
+            connectStart = System.nanoTime();
+            metrics.connectionsCreated.incrementAndGet();
+        }
+
+        @Override
+        public void secureConnectStart(@NonNull Call call) {
+            secureConnectStart = System.nanoTime();
+        }
+
+        @Override
+        public void secureConnectEnd(@NonNull Call call, @Nullable Handshake handshake) {
+            metrics.record(Phase.TLS, secureConnectStart);
+        }
+
+        @Override
+        public void connectEnd(@NonNull Call call, @NonNull InetSocketAddress inetSocketAddress, @NonNull Proxy proxy, @Nullable Protocol protocol) {
+            metrics.record(Phase.CONNECT, connectStart);
+        }
+
+        @Override
+        public void connectionAcquired(@NonNull Call call, @NonNull Connection connection) {
+            metrics.connectionsAcquired.incrementAndGet();
+        }
+
+        @Override
+        public void requestHeadersStart(@NonNull Call call) {
+            requestStart = System.nanoTime();
+        }
+
+        @Override
+        public void requestHeadersEnd(@NonNull Call call, @NonNull Request request) {
+            if (request.body() == null) {
+                requestEnd = System.nanoTime();
+                metrics.record(Phase.REQUEST_WRITE, requestStart);
+            }
+        }
+
+        @Override
+        public void requestBodyEnd(@NonNull Call call, long byteCount) {
+            requestEnd = System.nanoTime();
+            metrics.record(Phase.REQUEST_WRITE, requestStart);
+            metrics.bytesSent.addAndGet(byteCount);
+        }
+
+        @Override
+        public void responseHeadersStart(@NonNull Call call) {
+            metrics.record(Phase.TTFB, requestEnd);
+        }
+
+        @Override
+        public void responseBodyStart(@NonNull Call call) {
+            bodyStart = System.nanoTime();
+        }
+
+        @Override
+        public void responseBodyEnd(@NonNull Call call, long byteCount) {
+            metrics.record(Phase.BODY_READ, bodyStart);
+            metrics.bytesReceived.addAndGet(byteCount);
+        }
+
+        @Override
+        public void callEnd(@NonNull Call call) {
+            metrics.record(Phase.CALL, callStart);
+        }
+
+        @Override
+        public void callFailed(@NonNull Call call, @NonNull IOException ioe) {
+            metrics.failedCalls.incrementAndGet();
+            metrics.record(Phase.CALL, callStart);
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package com.freegang.androidutils.net;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * 按优先级调度异步请求, 通过 GOkHttpUtils.Builder.scheduler 启用
+ * <p>
+ * 请求先进入各自优先级的队列, 再按 INTERACTIVE > NORMAL > BACKGROUND 的顺序交给 OkHttp;
+ * 总并发中为 INTERACTIVE 预留一部分, 后台批量同步无法占满; BACKGROUND 可以整体暂停;
+ * 每个Host的并发也由调度器控制, 并且不超过 Dispatcher 的 maxRequestsPerHost, 交给 OkHttp 的请求不会在它的 FIFO 队列中排队,
+ * 否则 INTERACTIVE 请求会排在同一Host已派发的后台请求之后, 预留失去意义;
+ * 通过 tag(Deadline.class, ...) 指定截止时间, 排队超时直接失败, 已发出的请求到期会被取消;
+ * 上述保证只覆盖经过调度器的请求: GOkHttpUtils 的回调、CompletableFuture 与协程接口, 以及缓存的后台验证和离线队列的重放;
+ * 同步的 execute 不占用 Dispatcher 的异步额度, 不经过调度器; 直接对 getOkHttpClient() 发起的异步请求不受调度
+ */
+public class GHttpScheduler {
+    public enum Priority {
+        INTERACTIVE,
+        NORMAL,
+        BACKGROUND,
+    }
+
+    /**
+     * 请求截止时间, Request.Builder.tag(Deadline.class, Deadline.in(5, TimeUnit.SECONDS))
+     */
+    public static final class Deadline {
+        final long nanoTime;
+
+        private Deadline(long nanoTime) {
+            this.nanoTime = nanoTime;
+        }
+
+        public static Deadline in(long duration, TimeUnit unit) {
+            return new Deadline(System.nanoTime() + unit.toNanos(duration));
+        }
+
+        long remainingNanos() {
+            return nanoTime - System.nanoTime();
+        }
+    }
+
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "GHttpScheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final int maxConcurrent;
+    private final int reservedInteractive;
+    private final int maxPerHost;
+    private final Map<String, Integer> runningPerHost = new HashMap<>();
+    private final EnumMap<Priority, ArrayDeque<Task>> queues = new EnumMap<>(Priority.class);
+    private final EnumMap<Priority, GHttpHistogram> waitMicros = new EnumMap<>(Priority.class);
+    private final AtomicLong expiredCount = new AtomicLong();
+    private int running;
+    private boolean backgroundPaused;
+
+    /**
+     * 默认总并发 16, 为 INTERACTIVE 预留 4, 每个Host 5 个(与 Dispatcher 的默认值相同)
+     */
+    public GHttpScheduler() {
+        this(16, 4, 5);
+    }
+
+    /**
+     * 每个Host的并发为 5
+     */
+    public GHttpScheduler(int maxConcurrent, int reservedInteractive) {
+        this(maxConcurrent, reservedInteractive, 5);
+    }
+
+    /**
+     * @param maxConcurrent       同时交给 OkHttp 的请求数, 超过 Dispatcher 的 maxRequests 时按后者计算
+     * @param reservedInteractive 只允许 INTERACTIVE 使用的并发数; 大于 0 时每个Host也为 INTERACTIVE 预留 1 个
+     * @param maxPerHost          每个Host同时交给 OkHttp 的请求数, 超过 Dispatcher 的 maxRequestsPerHost 时按后者计算
+     */
+    public GHttpScheduler(int maxConcurrent, int reservedInteractive, int maxPerHost) {
+        if (maxConcurrent < 1) throw new IllegalArgumentException("maxConcurrent < 1");
+        if (reservedInteractive < 0 || reservedInteractive >= maxConcurrent) {
+            throw new IllegalArgumentException("reservedInteractive must be in [0, maxConcurrent)");
+        }
+        if (maxPerHost < 1) throw new IllegalArgumentException("maxPerHost < 1");
+        this.maxConcurrent = maxConcurrent;
+        this.reservedInteractive = reservedInteractive;
+        this.maxPerHost = maxPerHost;
+        for (Priority priority : Priority.values()) {
+            queues.put(priority, new ArrayDeque<>());
+            waitMicros.put(priority, new GHttpHistogram());
+        }
+    }
+
+    /**
+     * 暂停 BACKGROUND 请求的派发, 已发出的请求不受影响
+     */
+    public void pauseBackground() {
+        synchronized (this) {
+            backgroundPaused = true;
+        }
+    }
+
+    public void resumeBackground() {
+        synchronized (this) {
+            backgroundPaused = false;
+        }
+        pump();
+    }
+
+    /**
+     * 某个优先级的排队数量
+     */
+    public synchronized int getQueueDepth(@NonNull Priority priority) {
+        //noinspection ConstantConditions
+        return queues.get(priority).size();
+    }
+
+    public synchronized int getRunningCount() {
+        return running;
+    }
+
+    /**
+     * 某个优先级的排队耗时分布, 微秒
+     */
+    @NonNull
+    public GHttpHistogram getWaitHistogram(@NonNull Priority priority) {
+        //noinspection ConstantConditions
+        return waitMicros.get(priority);
+    }
+
+    /**
+     * 排队期间超过截止时间而失败的请求数
+     */
+    public long getExpiredCount() {
+        return expiredCount.get();
+    }
+
+    /**
+     * 排队中或已派发的请求
+     */
+    public interface Cancelable {
+        /**
+         * 排队中的请求直接出队并以 "Canceled" 失败, 已派发的请求取消底层 Call
+         */
+        void cancel();
+    }
+
+    /**
+     * 按 Request 的 tag 排队, 未指定优先级时为 NORMAL
+     *
+     * @return 用于取消请求, 请求派发之前 Call 还不存在
+     */
+    @NonNull
+    public Cancelable enqueue(@NonNull OkHttpClient client, @NonNull Request request, @NonNull Callback callback) {
+        Priority priority = request.tag(Priority.class);
+        Task task = new Task(client, request, callback, priority != null ? priority : Priority.NORMAL);
+        synchronized (this) {
+            //noinspection ConstantConditions
+            queues.get(task.priority).add(task);
+        }
+        if (task.deadline != null) {
+            TIMER.schedule(this::pump, Math.max(0, task.deadline.remainingNanos()), TimeUnit.NANOSECONDS);
+        }
+        pump();
+        return task;
+    }
+
+    /**
+     * 清理过期请求, 并在并发额度内派发
+     */
+    private void pump() {
+        List<Task> expired = new ArrayList<>();
+        List<Task> ready = new ArrayList<>();
+        synchronized (this) {
+            for (ArrayDeque<Task> queue : queues.values()) {
+                for (Iterator<Task> iterator = queue.iterator(); iterator.hasNext(); ) {
+                    Task task = iterator.next();
+                    if (task.deadline != null && task.deadline.remainingNanos() <= 0) {
+                        iterator.remove();
+                        expired.add(task);
+                    }
+                }
+            }
+            Task task;
+            while ((task = poll()) != null) {
+                running++;
+                Integer count = runningPerHost.get(task.host);
+                runningPerHost.put(task.host, count == null ? 1 : count + 1);
+                ready.add(task);
+            }
+        }
+        for (Task task : expired) {
+            expiredCount.incrementAndGet();
+            task.callback.onFailure(task.client.newCall(task.request), new InterruptedIOException("deadline exceeded while queued"));
+        }
+        for (Task task : ready) {
+            task.start();
+        }
+    }
+
+    private Task poll() {
+        if (running >= maxConcurrent) return null;
+        Task task = poll(Priority.INTERACTIVE);
+        if (task != null || running >= maxConcurrent - reservedInteractive) return task;
+        task = poll(Priority.NORMAL);
+        if (task != null || backgroundPaused) return task;
+        return poll(Priority.BACKGROUND);
+    }
+
+    /**
+     * 取出某个优先级中第一个所在Host还有并发额度的请求, Host已满的请求留在原位, 不阻塞其他Host
+     */
+    private Task poll(Priority priority) {
+        //noinspection ConstantConditions
+        for (Iterator<Task> iterator = queues.get(priority).iterator(); iterator.hasNext(); ) {
+            Task task = iterator.next();
+            Dispatcher dispatcher = task.client.dispatcher();
+            if (running >= dispatcher.getMaxRequests()) continue;
+            int hostLimit = Math.min(maxPerHost, dispatcher.getMaxRequestsPerHost());
+            //Host的最后一个额度留给 INTERACTIVE
+            if (priority != Priority.INTERACTIVE && reservedInteractive > 0 && hostLimit > 1) hostLimit--;
+            Integer count = runningPerHost.get(task.host);
+            if (count == null || count < hostLimit) {
+                iterator.remove();
+                return task;
+            }
+        }
+        return null;
+    }
+
+    private void finished(Task task) {
+        synchronized (this) {
+            running--;
+            Integer count = runningPerHost.get(task.host);
+            if (count == null || count <= 1) {
+                runningPerHost.remove(task.host);
+            } else {
+                runningPerHost.put(task.host, count - 1);
+            }
+        }
+        pump();
+    }
+
+    private final class Task implements Callback, Cancelable {
+        final OkHttpClient client;
+        final Request request;
+        final Callback callback;
+        final Priority priority;
+        final Deadline deadline;
+        final String host;
+        final long enqueuedAt = System.nanoTime();
+        private boolean canceled;
+        private Call call;
+
+        Task(OkHttpClient client, Request request, Callback callback, Priority priority) {
+            this.client = client;
+            this.request = request;
+            this.callback = callback;
+            this.priority = priority;
+            this.deadline = request.tag(Deadline.class);
+            this.host = request.url().host();
+        }
+
+        void start() {
+            //noinspection ConstantConditions
+            waitMicros.get(priority).record((System.nanoTime() - enqueuedAt) / 1000);
+            Call call = client.newCall(request);
+            if (deadline != null) {
+                //整个Call的超时, 到期后 OkHttp 会取消它
+                call.timeout().timeout(Math.max(1, deadline.remainingNanos()), TimeUnit.NANOSECONDS);
+            }
+            boolean canceled;
+            synchronized (this) {
+                this.call = call;
+                canceled = this.canceled;
+            }
+            //出队之后、派发之前被取消, 交给 OkHttp 以 Canceled 失败, 同时释放额度
+            if (canceled) call.cancel();
+            call.enqueue(this);
+        }
+
+        @Override
+        public void cancel() {
+            Call call;
+            synchronized (this) {
+                canceled = true;
+                call = this.call;
+            }
+            if (call != null) {
+                call.cancel();
+                return;
+            }
+            boolean removed;
+            synchronized (GHttpScheduler.this) {
+                //noinspection ConstantConditions
+                removed = queues.get(priority).remove(this);
+            }
+            if (removed) {
+                Call canceledCall = client.newCall(request);
+                canceledCall.cancel();
+                callback.onFailure(canceledCall, new IOException("Canceled"));
+            }
+        }
+
+        @Override
+        public void onFailure(@NonNull Call call, @NonNull IOException e) {
+            try {
+                callback.onFailure(call, e);
+            } finally {
+                finished(this);
+            }
+        }
+
+        @Override
+        public void onResponse(@NonNull Call call, @NonNull Response response) throws IOException {
+            try {
+                callback.onResponse(call, response);
+            } finally {
+                finished(this);
+            }
+        }
+    }
+
+    @NonNull
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder("GHttpScheduler{running=").append(running);
+        for (Map.Entry<Priority, ArrayDeque<Task>> entry : queues.entrySet()) {
+            builder.append(", ").append(entry.getKey()).append('=').append(entry.getValue().size());
+        }
+        return builder.append(backgroundPaused ? ", background paused}" : "}").toString();
+    }
+}
@@ -0,0 +1,274 @@
+package com.freegang.androidutils.net;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * 并发的相同 GET 请求合并为一次网络调用 (single-flight), 通过 GOkHttpUtils.Builder.singleFlight 启用
+ * <p>
+ * 以 method + url + 优先级 + 缓存模式 + 指定请求头 作为键; 第一个请求真正发出, 其余请求在它完成前加入等待.
+ * 完成时只有一个等待者则原样交付响应, 保持流式读取; 有多个等待者时, 不超过 maxSharedBytes 的响应体在内存中读取一次,
+ * 每个回调拿到一个独立的 Response 副本, 更大的响应体交给发起者, 其余等待者各自重新发起请求.
+ * 发起者的 Call 被取消时只通知发起者, 其余等待者重新发起; 某个回调抛出异常不影响其他回调.
+ * 需要独占响应的请求可以用 Request.tag(Mode.class, Mode.EXCLUSIVE) 关闭合并
+ */
+public class GHttpSingleFlight {
+    private static final String[] DEFAULT_KEY_HEADERS = {"Authorization", "Cookie", "Accept", "Accept-Language"};
+
+    /**
+     * 默认 256KB 以内的响应体才在等待者之间共享
+     */
+    public static final long DEFAULT_MAX_SHARED_BYTES = 256 * 1024;
+
+    /**
+     * 合并方式, 通过 Request.tag(Mode.class, mode) 指定
+     */
+    public enum Mode {
+        /**
+         * 默认, 与相同的请求合并
+         */
+        SHARED,
+        /**
+         * 不合并, 总是单独发起
+         */
+        EXCLUSIVE,
+    }
+
+    private static final class Waiter {
+        final Request request;
+        final Callback callback;
+
+        Waiter(Request request, Callback callback) {
+            this.request = request;
+            this.callback = callback;
+        }
+    }
+
+    private final long maxSharedBytes;
+    private final String[] keyHeaders;
+    private final Map<String, List<Waiter>> flights = new HashMap<>();
+    private final AtomicLong callCount = new AtomicLong();
+    private final AtomicLong sharedCount = new AtomicLong();
+
+    /**
+     * 使用默认的键请求头: Authorization, Cookie, Accept, Accept-Language
+     */
+    public GHttpSingleFlight() {
+        this(DEFAULT_KEY_HEADERS);
+    }
+
+    /**
+     * @param keyHeaders 参与计算键的请求头, 值不同的请求不会被合并
+     */
+    public GHttpSingleFlight(String... keyHeaders) {
+        this(DEFAULT_MAX_SHARED_BYTES, keyHeaders);
+    }
+
+    /**
+     * @param maxSharedBytes 多个等待者之间共享的响应体上限(字节), 更大的响应体不读入内存
+     * @param keyHeaders     参与计算键的请求头, 值不同的请求不会被合并
+     */
+    public GHttpSingleFlight(long maxSharedBytes, String... keyHeaders) {
+        if (maxSharedBytes < 0) throw new IllegalArgumentException("maxSharedBytes < 0: " + maxSharedBytes);
+        this.maxSharedBytes = maxSharedBytes;
+        this.keyHeaders = keyHeaders.clone();
+    }
+
+    /**
+     * 只合并无请求体的 GET, 分段下载(Range)与 Mode.EXCLUSIVE 的请求不合并
+     */
+    public boolean isEligible(@NonNull Request request) {
+        return "GET".equals(request.method())
+                && request.body() == null
+                && request.header("Range") == null
+                && request.tag(Mode.class) != Mode.EXCLUSIVE;
+    }
+    /**
+     * 实际发出的网络调用次数
+     */
+    public long getCallCount() {
+        return callCount.get();
+    }
+
+    /**
+     * 因合并而省下的网络调用次数
+     */
+    public long getSharedCount() {
+        return sharedCount.get();
+    }
+
+    /**
+     * 请求的合并键, URL 经过规范化, 参数顺序或编码方式不同的同一请求也能合并
+     */
+    @NonNull
+    public String key(@NonNull Request request) {
+        String url = request.url().toString();
+        StringBuilder builder = new StringBuilder(url.length() + 64)
+                .append(request.method())
+                .append(' ');
+        GURLPramsUtils.appendCanonical(builder, url, false);
+        //优先级不同的请求不合并, 否则 INTERACTIVE 请求可能挂在排队或暂停中的 BACKGROUND 请求上
+        GHttpScheduler.Priority priority = request.tag(GHttpScheduler.Priority.class);
+        builder.append('\n').append(priority != null ? priority : GHttpScheduler.Priority.NORMAL);
+        //缓存模式不同的请求不合并, 否则 NETWORK_ONLY 的请求可能拿到 FORCE_CACHE 的结果
+        GHttpCache.CacheMode cacheMode = request.tag(GHttpCache.CacheMode.class);
+        builder.append('\n').append(cacheMode != null ? cacheMode : GHttpCache.CacheMode.DEFAULT);
+        for (String name : keyHeaders) {
+            String value = request.header(name);
+            if (value != null) {
+                builder.append('\n').append(name.toLowerCase(Locale.ROOT)).append(':').append(value);
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 真正发出请求的方式, 例如直接 newCall().enqueue() 或交给 GHttpScheduler
+     */
+    public interface Dispatcher {
+        void dispatch(@NonNull Request request, @NonNull Callback callback);
+    }
+
+    /**
+     * 发起请求, 如果已有相同请求正在进行, 则只登记回调
+     */
+    public void enqueue(@NonNull final OkHttpClient client, @NonNull Request request, @NonNull Callback callback) {
+        enqueue(request, callback, (r, c) -> client.newCall(r).enqueue(c));
+    }
+
+    /**
+     * 发起请求, 如果已有相同请求正在进行, 则只登记回调
+     */
+    public void enqueue(@NonNull Request request, @NonNull Callback callback, @NonNull final Dispatcher dispatcher) {
+        final String key = key(request);
+        synchronized (flights) {
+            List<Waiter> waiters = flights.get(key);
+            if (waiters != null) {
+                waiters.add(new Waiter(request, callback));
+                sharedCount.incrementAndGet();
+                return;
+            }
+            waiters = new ArrayList<>(4);
+            waiters.add(new Waiter(request, callback));
+            flights.put(key, waiters);
+        }
+        callCount.incrementAndGet();
+
+        dispatcher.dispatch(request, new Callback() {
+            @Override
+            public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                List<Waiter> waiters = complete(key);
+                //取消的是发起者的 Call, 其余等待者重新合并发起
+                if (call.isCanceled() && waiters.size() > 1) {
+                    sharedCount.addAndGet(1 - waiters.size());
+                    for (Waiter waiter : waiters.subList(1, waiters.size())) {
+                        enqueue(waiter.request, waiter.callback, dispatcher);
+                    }
+                    waiters = waiters.subList(0, 1);
+                }
+                notifyFailure(call, e, waiters);
+            }
+
+            @Override
+            public void onResponse(@NonNull Call call, @NonNull Response response) throws IOException {
+                List<Waiter> waiters = complete(key);
+                if (waiters.size() == 1) {
+                    waiters.get(0).callback.onResponse(call, response);
+                    return;
+                }
+                boolean shareable;
+                try {
+                    shareable = isShareable(response);
+                } catch (IOException e) {
+                    response.close();
+                    notifyFailure(call, e, waiters);
+                    return;
+                }
+                if (!shareable) {
+                    //响应体太大, 发起者独占流式读取, 其余等待者各自发起
+                    sharedCount.addAndGet(1 - waiters.size());
+                    callCount.addAndGet(waiters.size() - 1);
+                    for (Waiter waiter : waiters.subList(1, waiters.size())) {
+                        dispatcher.dispatch(waiter.request, waiter.callback);
+                    }
+                    waiters.get(0).callback.onResponse(call, response);
+                    return;
+                }
+                byte[] bytes;
+                MediaType contentType;
+                try (ResponseBody body = response.body()) {
+                    contentType = body != null ? body.contentType() : null;
+                    bytes = body != null ? body.bytes() : new byte[0];
+                } catch (IOException e) {
+                    notifyFailure(call, e, waiters);
+                    return;
+                }
+                //每个回调单独捕获异常, 全部通知完后再抛出第一个异常, 交给 OkHttp 按回调异常处理
+                Exception thrown = null;
+                for (Waiter waiter : waiters) {
+                    Response copy = response.newBuilder()
+                            .body(ResponseBody.create(contentType, bytes))
+                            .build();
+                    try {
+                        waiter.callback.onResponse(call, copy);
+                    } catch (IOException | RuntimeException e) {
+                        if (thrown == null) thrown = e;
+                    }
+                }
+                if (thrown instanceof IOException) throw (IOException) thrown;
+                if (thrown != null) throw (RuntimeException) thrown;
+            }
+        });
+    }
+
+    /**
+     * 每个回调单独捕获异常, 全部通知完后再抛出第一个运行时异常
+     */
+    private static void notifyFailure(Call call, IOException e, List<Waiter> waiters) {
+        RuntimeException thrown = null;
+        for (Waiter waiter : waiters) {
+            try {
+                waiter.callback.onFailure(call, e);
+            } catch (RuntimeException ex) {
+                if (thrown == null) thrown = ex;
+            }
+        }
+        if (thrown != null) throw thrown;
+    }
+
+    /**
+     * 响应体是否不超过 maxSharedBytes, 长度未知时最多预读 maxSharedBytes + 1 字节
+     */
+    private boolean isShareable(Response response) throws IOException {
+        ResponseBody body = response.body();
+        if (body == null) return true;
+        long length = body.contentLength();
+        if (length >= 0) return length <= maxSharedBytes;
+        return response.peekBody(maxSharedBytes + 1).contentLength() <= maxSharedBytes;
+    }
+
+    /**
+     * 移除并返回某个键的全部等待者, 之后到达的相同请求会重新发起
+     */
+    private List<Waiter> complete(String key) {
+        synchronized (flights) {
+            List<Waiter> waiters = flights.remove(key);
+            return waiters != null ? waiters : new ArrayList<>();
+        }
+    }
+}
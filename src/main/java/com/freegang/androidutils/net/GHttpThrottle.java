@@ -0,0 +1,326 @@
+package com.freegang.androidutils.net;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.ForwardingSource;
+import okio.Okio;
+import okio.Sink;
+import okio.Source;
+
+/**
+ * 限流与限速拦截器, 通过 GOkHttpUtils.Builder.throttle 启用
+ * <p>
+ * 按Host的令牌桶限制每秒请求数; 按 GHttpScheduler.Priority 限制单个请求的上传/下载速度(字节/秒),
+ * 也可以通过 tag(Bandwidth.class, ...) 为单个请求指定; 所有限制都可以在运行时修改, 对进行中的传输立即生效
+ * <p>
+ * 必须注册为网络拦截器(addNetworkInterceptor): 命中缓存的请求不经过它, 限制的是线路上实际传输的字节;
+ * 重定向与 OkHttp 内部的重试每次都会消耗令牌
+ */
+public class GHttpThrottle implements Interceptor {
+    /**
+     * 单个请求的速度上限, Request.Builder.tag(Bandwidth.class, Bandwidth.of(256 * 1024))
+     */
+    public static final class Bandwidth {
+        final long bytesPerSecond;
+
+        private Bandwidth(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        public static Bandwidth of(long bytesPerSecond) {
+            if (bytesPerSecond <= 0) throw new IllegalArgumentException("bytesPerSecond <= 0");
+            return new Bandwidth(bytesPerSecond);
+        }
+    }
+
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    //0 表示不限速
+    private final EnumMap<GHttpScheduler.Priority, AtomicLong> bandwidths = new EnumMap<>(GHttpScheduler.Priority.class);
+
+    private final GHttpHistogram rateWaitMicros = new GHttpHistogram();
+    private final AtomicLong bandwidthDelayNanos = new AtomicLong();
+
+    public GHttpThrottle() {
+        for (GHttpScheduler.Priority priority : GHttpScheduler.Priority.values()) {
+            bandwidths.put(priority, new AtomicLong());
+        }
+    }
+
+    /**
+     * 限制某个Host的请求速率
+     *
+     * @param host              Host
+     * @param requestsPerSecond 每秒请求数
+     * @param burst             允许的突发请求数, 至少为 1
+     */
+    public GHttpThrottle setRate(@NonNull String host, double requestsPerSecond, int burst) {
+        if (requestsPerSecond <= 0) throw new IllegalArgumentException("requestsPerSecond <= 0");
+        String key = host.toLowerCase(Locale.ROOT);
+        TokenBucket bucket = buckets.get(key);
+        if (bucket != null) {
+            bucket.setRate(requestsPerSecond, Math.max(1, burst));
+        } else {
+            buckets.put(key, new TokenBucket(requestsPerSecond, Math.max(1, burst)));
+        }
+        return this;
+    }
+
+    public GHttpThrottle removeRate(@NonNull String host) {
+        buckets.remove(host.toLowerCase(Locale.ROOT));
+        return this;
+    }
+
+    /**
+     * 限制某个优先级下单个请求的上传/下载速度, 未指定优先级的请求按 NORMAL 处理
+     *
+     * @param priority       优先级
+     * @param bytesPerSecond 字节/秒, 传 0 取消限制
+     */
+    public GHttpThrottle setBandwidth(@NonNull GHttpScheduler.Priority priority, long bytesPerSecond) {
+        //noinspection ConstantConditions
+        bandwidths.get(priority).set(Math.max(0, bytesPerSecond));
+        return this;
+    }
+
+    /**
+     * 因请求速率限制而等待的耗时分布, 微秒, 只记录实际等待过的请求
+     */
+    @NonNull
+    public GHttpHistogram getRateWaitHistogram() {
+        return rateWaitMicros;
+    }
+
+    /**
+     * 因速度限制而累计等待的时间, 毫秒
+     */
+    public long getBandwidthDelayMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(bandwidthDelayNanos.get());
+    }
+
+    public void resetStats() {
+        rateWaitMicros.reset();
+        bandwidthDelayNanos.set(0);
+    }
+
+    ////
+
+    @NonNull
+    @Override
+    public Response intercept(@NonNull Chain chain) throws IOException {
+        Request request = chain.request();
+        TokenBucket bucket = buckets.get(request.url().host());
+        if (bucket != null) {
+            long waitNanos = bucket.reserve();
+            if (waitNanos > 0) {
+                rateWaitMicros.record(waitNanos / 1000);
+                sleep(waitNanos);
+            }
+        }
+
+        Limit limit = limitOf(request);
+        RequestBody body = request.body();
+        //双工请求体在 writeTo 返回后才继续写入, 无法包装
+        if (body != null && !body.isDuplex()) {
+            request = request.newBuilder().method(request.method(), new ThrottledRequestBody(body, limit)).build();
+        }
+        Response response = chain.proceed(request);
+        ResponseBody responseBody = response.body();
+        if (responseBody == null) return response;
+        Source source = new ThrottledSource(responseBody.source(), limit);
+        return response.newBuilder()
+                .body(ResponseBody.create(responseBody.contentType(), responseBody.contentLength(), Okio.buffer(source)))
+                .build();
+    }
+
+    private Limit limitOf(Request request) {
+        Bandwidth bandwidth = request.tag(Bandwidth.class);
+        if (bandwidth != null) {
+            final long fixed = bandwidth.bytesPerSecond;
+            return () -> fixed;
+        }
+        GHttpScheduler.Priority priority = request.tag(GHttpScheduler.Priority.class);
+        //每次读写时取当前值, 进行中的传输也能被随时限速或放开
+        final AtomicLong value = bandwidths.get(priority != null ? priority : GHttpScheduler.Priority.NORMAL);
+        //noinspection ConstantConditions
+        return value::get;
+    }
+
+    private static void sleep(long nanos) throws InterruptedIOException {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("throttle wait interrupted");
+        }
+    }
+
+    ////
+
+    /**
+     * 令牌桶, 令牌可以预支: 并发请求依次排在后面, 而不是同时醒来争抢
+     */
+    private static final class TokenBucket {
+        private double nanosPerToken;
+        private double maxTokens;
+        private double tokens;
+        private long lastNanos = System.nanoTime();
+
+        TokenBucket(double perSecond, int burst) {
+            nanosPerToken = TimeUnit.SECONDS.toNanos(1) / perSecond;
+            maxTokens = burst;
+            tokens = burst;
+        }
+
+        synchronized void setRate(double perSecond, int burst) {
+            refill();
+            nanosPerToken = TimeUnit.SECONDS.toNanos(1) / perSecond;
+            maxTokens = burst;
+            tokens = Math.min(tokens, maxTokens);
+        }
+
+        /**
+         * 取一个令牌, 返回需要等待的纳秒数
+         */
+        synchronized long reserve() {
+            refill();
+            tokens -= 1;
+            return tokens >= 0 ? 0 : (long) (-tokens * nanosPerToken);
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            tokens = Math.min(maxTokens, tokens + (now - lastNanos) / nanosPerToken);
+            lastNanos = now;
+        }
+    }
+
+    private interface Limit {
+        long bytesPerSecond();
+    }
+
+    /**
+     * 单个传输方向的限速, 限制值变化时重新开始计时
+     */
+    private final class Pacer {
+        private final Limit limit;
+        private long rate;
+        private long startNanos;
+        private long bytes;
+
+        Pacer(Limit limit) {
+            this.limit = limit;
+        }
+
+        /**
+         * 本次最多传输的字节数, 让每次等待不超过约 100ms
+         */
+        long chunk(long byteCount) {
+            long current = limit.bytesPerSecond();
+            if (current != rate) {
+                rate = current;
+                startNanos = System.nanoTime();
+                bytes = 0;
+            }
+            if (rate <= 0) return byteCount;
+            return Math.min(byteCount, Math.max(1, rate / 10));
+        }
+
+        void transferred(long count) throws InterruptedIOException {
+            if (rate <= 0 || count <= 0) return;
+            bytes += count;
+            long expected = (long) (bytes * 1e9 / rate);
+            long ahead = expected - (System.nanoTime() - startNanos);
+            if (ahead > 0) {
+                bandwidthDelayNanos.addAndGet(ahead);
+                sleep(ahead);
+            }
+        }
+    }
+
+    private final class ThrottledSource extends ForwardingSource {
+        private final Pacer pacer;
+
+        ThrottledSource(Source delegate, Limit limit) {
+            super(delegate);
+            this.pacer = new Pacer(limit);
+        }
+
+        @Override
+        public long read(@NonNull Buffer sink, long byteCount) throws IOException {
+            long read = super.read(sink, pacer.chunk(byteCount));
+            pacer.transferred(read);
+            return read;
+        }
+    }
+
+    private final class ThrottledSink extends ForwardingSink {
+        private final Pacer pacer;
+
+        ThrottledSink(Sink delegate, Limit limit) {
+            super(delegate);
+            this.pacer = new Pacer(limit);
+        }
+
+        @Override
+        public void write(@NonNull Buffer source, long byteCount) throws IOException {
+            while (byteCount > 0) {
+                long chunk = pacer.chunk(byteCount);
+                super.write(source, chunk);
+                byteCount -= chunk;
+                pacer.transferred(chunk);
+            }
+        }
+    }
+
+    private final class ThrottledRequestBody extends RequestBody {
+        private final RequestBody delegate;
+        private final Limit limit;
+
+        ThrottledRequestBody(RequestBody delegate, Limit limit) {
+            this.delegate = delegate;
+            this.limit = limit;
+        }
+
+        @Nullable
+        @Override
+        public MediaType contentType() {
+            return delegate.contentType();
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            return delegate.contentLength();
+        }
+
+        @Override
+        public boolean isOneShot() {
+            return delegate.isOneShot();
+        }
+
+        @Override
+        public void writeTo(@NonNull BufferedSink sink) throws IOException {
+            BufferedSink throttled = Okio.buffer(new ThrottledSink(sink, limit));
+            delegate.writeTo(throttled);
+            throttled.emit();
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package com.freegang.androidutils.net;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+
+import okhttp3.CertificatePinner;
+import okhttp3.OkHttpClient;
+
+/**
+ * HTTPS 配置, 通过 GOkHttpUtils.Builder.tls 使用
+ * <p>
+ * 一个实例持有一个 SSLContext, 多个 OkHttpClient 共用同一个实例时共享 TLS 会话缓存, 重复连接可以走会话恢复;
+ * 支持证书锁定(CertificatePinner), 并统计完整握手与会话恢复的次数
+ */
+public class GHttpTls {
+    private static volatile GHttpTls sDefault;
+    private static volatile GHttpTls sTrustAll;
+    //会话缓存不限制时, 最多跟踪的会话ID数量
+    private static final int MAX_TRACKED_SESSIONS = 1024;
+
+    private final SSLContext sslContext;
+    private final X509TrustManager trustManager;
+    private final SSLSocketFactory socketFactory;
+    private final CertificatePinner certificatePinner;
+    private final boolean trustAll;
+
+    private final AtomicLong fullHandshakes = new AtomicLong();
+    private final AtomicLong resumedHandshakes = new AtomicLong();
+    //见过的会话ID, 容量与会话缓存一致, 再次出现即为会话恢复
+    private final Map<String, Boolean> sessionIds;
+
+    private GHttpTls(Builder builder) throws GeneralSecurityException {
+        this.trustAll = builder.trustAll;
+        this.trustManager = builder.trustManager != null ? builder.trustManager : systemTrustManager();
+        this.sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(null, new TrustManager[]{trustManager}, new SecureRandom());
+        SSLSessionContext sessionContext = sslContext.getClientSessionContext();
+        if (sessionContext != null) {
+            sessionContext.setSessionCacheSize(builder.sessionCacheSize);
+            sessionContext.setSessionTimeout(builder.sessionTimeoutSeconds);
+        }
+        //0 表示会话缓存不限制, 跟踪的数量仍需要有上限
+        final int capacity = builder.sessionCacheSize == 0 ? MAX_TRACKED_SESSIONS : Math.max(16, builder.sessionCacheSize);
+        this.sessionIds = Collections.synchronizedMap(new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > capacity;
+            }
+        });
+        this.socketFactory = new CountingSocketFactory(sslContext.getSocketFactory());
+        this.certificatePinner = builder.pinner.build();
+    }
+
+    /**
+     * 系统证书、不锁定证书的共享实例
+     */
+    @NonNull
+    public static GHttpTls getDefault() {
+        if (sDefault == null) {
+            synchronized (GHttpTls.class) {
+                if (sDefault == null) {
+                    sDefault = new Builder().build();
+                }
+            }
+        }
+        return sDefault;
+    }
+
+    /**
+     * 跳过证书与主机名验证的共享实例, 仅用于调试
+     */
+    @NonNull
+    static GHttpTls trustAll() {
+        if (sTrustAll == null) {
+            synchronized (GHttpTls.class) {
+                if (sTrustAll == null) {
+                    Builder builder = new Builder().trustManager(new TrustAllCerts());
+                    builder.trustAll = true;
+                    sTrustAll = builder.build();
+                }
+            }
+        }
+        return sTrustAll;
+    }
+
+    @NonNull
+    public SSLContext getSslContext() {
+        return sslContext;
+    }
+
+    @NonNull
+    public X509TrustManager getTrustManager() {
+        return trustManager;
+    }
+
+    /**
+     * 完整握手次数
+     */
+    public long getFullHandshakes() {
+        return fullHandshakes.get();
+    }
+
+    /**
+     * 会话恢复次数; TLS 1.3 下会话恢复可能使用新的会话ID, 这部分会计入完整握手
+     */
+    public long getResumedHandshakes() {
+        return resumedHandshakes.get();
+    }
+
+    /**
+     * 会话恢复占全部握手的比例
+     */
+    public double getResumptionRatio() {
+        long resumed = resumedHandshakes.get();
+        long total = resumed + fullHandshakes.get();
+        return total == 0 ? 0 : (double) resumed / total;
+    }
+
+    public void resetStats() {
+        fullHandshakes.set(0);
+        resumedHandshakes.set(0);
+    }
+
+    void apply(OkHttpClient.Builder builder) {
+        builder.sslSocketFactory(socketFactory, trustManager);
+        if (trustAll) {
+            builder.hostnameVerifier((hostname, session) -> true);
+        } else {
+            builder.certificatePinner(certificatePinner);
+        }
+    }
+
+    private static X509TrustManager systemTrustManager() throws GeneralSecurityException {
+        TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        factory.init((KeyStore) null);
+        for (TrustManager manager : factory.getTrustManagers()) {
+            if (manager instanceof X509TrustManager) return (X509TrustManager) manager;
+        }
+        throw new GeneralSecurityException("no X509TrustManager: " + Arrays.toString(factory.getTrustManagers()));
+    }
+
+    ////
+
+    public static final class Builder {
+        private final CertificatePinner.Builder pinner = new CertificatePinner.Builder();
+        private X509TrustManager trustManager;
+        private int sessionCacheSize = 64;
+        private int sessionTimeoutSeconds = 24 * 60 * 60;
+        private boolean trustAll;
+
+        /**
+         * 锁定证书公钥
+         *
+         * @param pattern 主机名, 支持 *.example.com
+         * @param pins    sha256/Base64 格式的公钥哈希, 建议同时提供备用证书的哈希
+         */
+        public Builder pin(@NonNull String pattern, @NonNull String... pins) {
+            pinner.add(pattern, pins);
+            return this;
+        }
+
+        /**
+         * 自定义信任的证书, 默认使用系统证书; 可用于信任自签名的测试服务器, 例如 MockWebServer 的 HeldCertificate
+         */
+        public Builder trustManager(@Nullable X509TrustManager trustManager) {
+            this.trustManager = trustManager;
+            return this;
+        }
+
+        /**
+         * TLS 会话缓存大小, 默认 64, 0 表示不限制(握手统计最多跟踪 1024 个会话)
+         */
+        public Builder sessionCacheSize(int size) {
+            if (size < 0) throw new IllegalArgumentException("size < 0");
+            this.sessionCacheSize = size;
+            return this;
+        }
+
+        /**
+         * TLS 会话有效期, 默认 24 小时, 0 表示不过期
+         */
+        public Builder sessionTimeout(int seconds) {
+            this.sessionTimeoutSeconds = seconds;
+            return this;
+        }
+
+        @NonNull
+        public GHttpTls build() {
+            try {
+                return new GHttpTls(this);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("unable to init TLS", e);
+            }
+        }
+    }
+
+    ////
+
+    /**
+     * 为每个 SSLSocket 注册握手监听, 按会话ID区分完整握手与会话恢复
+     */
+    private final class CountingSocketFactory extends SSLSocketFactory {
+        private final SSLSocketFactory delegate;
+        private final HandshakeCompletedListener listener = event -> {
+            byte[] id = event.getSession().getId();
+            if (id == null || id.length == 0) {
+                fullHandshakes.incrementAndGet();
+                return;
+            }
+            String key = toHex(id);
+            if (sessionIds.put(key, Boolean.TRUE) != null) {
+                resumedHandshakes.incrementAndGet();
+            } else {
+                fullHandshakes.incrementAndGet();
+            }
+        };
+
+        CountingSocketFactory(SSLSocketFactory delegate) {
+            this.delegate = delegate;
+        }
+
+        private Socket observe(Socket socket) {
+            if (socket instanceof SSLSocket) {
+                ((SSLSocket) socket).addHandshakeCompletedListener(listener);
+            }
+            return socket;
+        }
+
+        @Override
+        public String[] getDefaultCipherSuites() {
+            return delegate.getDefaultCipherSuites();
+        }
+
+        @Override
+        public String[] getSupportedCipherSuites() {
+            return delegate.getSupportedCipherSuites();
+        }
+
+        @Override
+        public Socket createSocket() throws IOException {
+            return observe(delegate.createSocket());
+        }
+
+        @Override
+        public Socket createSocket(Socket s, String host, int port, boolean autoClose) throws IOException {
+            return observe(delegate.createSocket(s, host, port, autoClose));
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            return observe(delegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+            return observe(delegate.createSocket(host, port, localHost, localPort));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException {
+            return observe(delegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+            return observe(delegate.createSocket(address, port, localAddress, localPort));
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = Character.forDigit((bytes[i] >> 4) & 0xF, 16);
+            chars[i * 2 + 1] = Character.forDigit(bytes[i] & 0xF, 16);
+        }
+        return new String(chars);
+    }
+
+    static class TrustAllCerts implements X509TrustManager {
+        @Override
+        public void checkClientTrusted(X509Certificate[] x509Certificates, String s) {
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] x509Certificates, String s) {
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return new X509Certificate[0];
+        }
+    }
+}
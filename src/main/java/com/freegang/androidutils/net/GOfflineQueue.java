@@ -0,0 +1,605 @@
+package com.freegang.androidutils.net;
+
+import android.Manifest;
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresPermission;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Headers;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.Buffer;
+
+/**
+ * 离线请求队列, 请求先写入追加式日志(WAL)再发送, 断网或进程被杀后不会丢失
+ * <p>
+ * 日志记录格式为 [长度][CRC32][内容], 打开时逐条校验, 写了一半的尾部记录会被截掉;
+ * 网络恢复(watchConnectivity)或调用 flush 时按入队顺序分批重放, 每批内并发发送, 有请求未送达时按指数退避定时重试;
+ * 相同幂等键的请求只保留一个, 并通过 Idempotency-Key 请求头交给服务端去重;
+ * 已完成的记录达到一定数量后, 通过 临时文件 + rename 重写日志
+ */
+public class GOfflineQueue implements Closeable {
+    /**
+     * 发送结果回调, 在重放线程上执行
+     */
+    public interface Listener {
+        /**
+         * 服务端已接受 (2xx)
+         */
+        void onSent(@NonNull String idempotencyKey, int statusCode);
+
+        /**
+         * 服务端明确拒绝 (4xx, 不含 408/429), 不会再重试, 已从队列中移除
+         */
+        void onDropped(@NonNull String idempotencyKey, int statusCode);
+    }
+
+    private static final int MAGIC = 0x474F5131; //GOQ1
+    //旧格式, 字符串为 writeUTF, 只读不写
+    private static final byte TYPE_ADD_UTF = 1;
+    private static final byte TYPE_ACK = 2;
+    //字符串为 [长度][UTF-8], 不受 writeUTF 的 64KB 限制
+    private static final byte TYPE_ADD = 3;
+    private static final int MAX_RECORD = 64 * 1024 * 1024;
+    private static final int COMPACT_THRESHOLD = 1024;
+    private static final long RETRY_MIN_MILLIS = 1000;
+    private static final long RETRY_MAX_MILLIS = 5 * 60 * 1000;
+
+    private final GOkHttpUtils okHttpUtils;
+    private final File logFile;
+    private final int batchSize;
+    private final boolean syncOnWrite;
+    private final ScheduledExecutorService executor;
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    //按序号排列, 即入队顺序
+    private final LinkedHashMap<Long, Entry> pending = new LinkedHashMap<>();
+    private final Map<String, Long> keys = new HashMap<>();
+    private FileOutputStream out;
+    private long nextSeq = 1;
+    private long deadRecords;
+    private boolean closed;
+    private ScheduledFuture<?> retryFuture;
+    private long retryDelayMillis;
+
+    private volatile Listener listener;
+    private ConnectivityManager connectivityManager;
+    private ConnectivityManager.NetworkCallback networkCallback;
+
+    /**
+     * 每批 32 个, 每次写入都 fsync
+     */
+    public GOfflineQueue(@NonNull GOkHttpUtils okHttpUtils, @NonNull File logFile) throws IOException {
+        this(okHttpUtils, logFile, 32, true);
+    }
+
+    /**
+     * @param okHttpUtils GOkHttpUtils
+     * @param logFile     日志文件, 不存在时创建
+     * @param batchSize   每批并发重放的请求数, 传 1 则严格按顺序逐个发送
+     * @param syncOnWrite 每次写入后 fsync, 关闭后吞吐更高, 但断电时可能丢失最近的几条
+     */
+    public GOfflineQueue(@NonNull GOkHttpUtils okHttpUtils, @NonNull File logFile, int batchSize, boolean syncOnWrite) throws IOException {
+        if (batchSize < 1) throw new IllegalArgumentException("batchSize < 1");
+        this.okHttpUtils = okHttpUtils;
+        this.logFile = logFile;
+        this.batchSize = batchSize;
+        this.syncOnWrite = syncOnWrite;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "GOfflineQueue");
+            thread.setDaemon(true);
+            return thread;
+        });
+        File parent = logFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("unable to create " + parent);
+        }
+        synchronized (this) {
+            load();
+            out = new FileOutputStream(logFile, true);
+            if (logFile.length() == 0) {
+                new DataOutputStream(out).writeInt(MAGIC);
+            }
+        }
+    }
+
+    public void setListener(@Nullable Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 待发送的请求数
+     */
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    //----------- 入队 -----------//
+
+    /**
+     * Form表单 POST
+     *
+     * @return 幂等键, 已在队列中时返回 null
+     */
+    @Nullable
+    public String postData(@NonNull String url, @Nullable Map<String, String> bodyParams, @Nullable String idempotencyKey) throws IOException {
+        return enqueue(url, "POST", Headers.of(), okHttpUtils.buildFormBody(bodyParams), idempotencyKey);
+    }
+
+    /**
+     * JSON POST
+     *
+     * @return 幂等键, 已在队列中时返回 null
+     */
+    @Nullable
+    public String postJson(@NonNull String url, @NonNull String json, @Nullable String idempotencyKey) throws IOException {
+        return enqueue(url, "POST", Headers.of(), okHttpUtils.buildJsonBody(json), idempotencyKey);
+    }
+
+    /**
+     * 写入日志后立即尝试发送, 返回时请求已持久化
+     *
+     * @param url            Request Url
+     * @param method         Request Method
+     * @param headers        Request Headers
+     * @param body           Request Body, 会被完整读入内存, 不支持一次性的请求体
+     * @param idempotencyKey 幂等键, 传 null 自动生成
+     * @return 幂等键, 相同幂等键的请求已在队列中时返回 null
+     * @throws IllegalArgumentException 编码后的记录超过 64MB, 这样的记录无法再从日志中读回
+     */
+    @Nullable
+    public String enqueue(@NonNull String url, @NonNull String method, @NonNull Headers headers, @Nullable RequestBody body, @Nullable String idempotencyKey) throws IOException {
+        String key = idempotencyKey != null ? idempotencyKey : UUID.randomUUID().toString();
+        byte[] bytes = null;
+        String contentType = "";
+        if (body != null) {
+            Buffer buffer = new Buffer();
+            body.writeTo(buffer);
+            bytes = buffer.readByteArray();
+            MediaType type = body.contentType();
+            if (type != null) contentType = type.toString();
+        }
+        synchronized (this) {
+            if (closed) throw new IOException("closed");
+            if (keys.containsKey(key)) return null;
+            Entry entry = new Entry(nextSeq, key, method, url, headers, contentType, bytes);
+            //url 或 method 不合法、记录过大时在这里就抛出, 不写入日志
+            entry.toRequest();
+            byte[] record = entry.encode();
+            nextSeq++;
+            append(record);
+            pending.put(entry.seq, entry);
+            keys.put(key, entry.seq);
+        }
+        flush();
+        return key;
+    }
+
+    //----------- 重放 -----------//
+
+    /**
+     * 在后台按顺序重放, 多次调用会合并为一次
+     */
+    public void flush() {
+        if (flushRequested.compareAndSet(false, true)) {
+            try {
+                executor.execute(() -> {
+                    flushRequested.set(false);
+                    replay();
+                });
+            } catch (RuntimeException e) {
+                //已关闭
+                flushRequested.set(false);
+            }
+        }
+    }
+
+    /**
+     * 网络可用时自动 flush, 需要 ACCESS_NETWORK_STATE 权限
+     */
+    @RequiresPermission(Manifest.permission.ACCESS_NETWORK_STATE)
+    public synchronized void watchConnectivity(@NonNull Context context) {
+        if (networkCallback != null) return;
+        connectivityManager = (ConnectivityManager) context.getApplicationContext().getSystemService(Context.CONNECTIVITY_SERVICE);
+        networkCallback = new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onAvailable(@NonNull Network network) {
+                flush();
+            }
+        };
+        NetworkRequest request = new NetworkRequest.Builder()
+                .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                .build();
+        connectivityManager.registerNetworkCallback(request, networkCallback);
+    }
+
+    public synchronized void unwatchConnectivity() {
+        if (networkCallback == null) return;
+        try {
+            connectivityManager.unregisterNetworkCallback(networkCallback);
+        } catch (IllegalArgumentException ignored) {
+            //未注册
+        }
+        networkCallback = null;
+        connectivityManager = null;
+    }
+
+    private void replay() {
+        while (true) {
+            List<Entry> batch = new ArrayList<>(batchSize);
+            synchronized (this) {
+                if (closed) return;
+                for (Iterator<Entry> iterator = pending.values().iterator(); iterator.hasNext() && batch.size() < batchSize; ) {
+                    batch.add(iterator.next());
+                }
+            }
+            if (batch.isEmpty()) {
+                synchronized (this) {
+                    retryDelayMillis = 0;
+                }
+                return;
+            }
+
+            //-1: 网络错误, 其余为状态码
+            final int[] codes = new int[batch.size()];
+            final CountDownLatch latch = new CountDownLatch(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                final int index = i;
+                okHttpUtils.dispatch(batch.get(i).toRequest(), new Callback() {
+                    @Override
+                    public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                        codes[index] = -1;
+                        latch.countDown();
+                    }
+
+                    @Override
+                    public void onResponse(@NonNull Call call, @NonNull Response response) {
+                        codes[index] = response.code();
+                        response.close();
+                        latch.countDown();
+                    }
+                });
+            }
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            boolean retryLater = false;
+            List<Entry> done = new ArrayList<>(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                if (isPermanent(codes[i])) {
+                    done.add(batch.get(i));
+                } else {
+                    retryLater = true;
+                }
+            }
+            try {
+                acknowledge(done);
+            } catch (IOException e) {
+                scheduleRetry();
+                return;
+            }
+            Listener listener = this.listener;
+            if (listener != null) {
+                for (int i = 0; i < batch.size(); i++) {
+                    int code = codes[i];
+                    if (code >= 200 && code < 300) {
+                        listener.onSent(batch.get(i).key, code);
+                    } else if (isPermanent(code)) {
+                        listener.onDropped(batch.get(i).key, code);
+                    }
+                }
+            }
+            //还有请求没送达, 退避后重试, 网络恢复或 flush 也会提前触发
+            if (retryLater) {
+                scheduleRetry();
+                return;
+            }
+        }
+    }
+
+    /**
+     * 1s 起每次翻倍, 最长 5 分钟, 队列清空后复位
+     */
+    private synchronized void scheduleRetry() {
+        if (closed || retryFuture != null) return;
+        retryDelayMillis = retryDelayMillis == 0 ? RETRY_MIN_MILLIS : Math.min(retryDelayMillis * 2, RETRY_MAX_MILLIS);
+        try {
+            retryFuture = executor.schedule(() -> {
+                synchronized (this) {
+                    retryFuture = null;
+                }
+                flush();
+            }, retryDelayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ignored) {
+            //已关闭
+        }
+    }
+
+    /**
+     * 已送达或被服务端明确拒绝, 都不需要再发
+     */
+    private static boolean isPermanent(int code) {
+        if (code >= 200 && code < 300) return true;
+        return code >= 400 && code < 500 && code != 408 && code != 429;
+    }
+
+    private synchronized void acknowledge(List<Entry> entries) throws IOException {
+        if (entries.isEmpty() || closed) return;
+        ByteArrayOutputStream records = new ByteArrayOutputStream(entries.size() * 17);
+        for (Entry entry : entries) {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream(9);
+            DataOutputStream data = new DataOutputStream(payload);
+            data.writeByte(TYPE_ACK);
+            data.writeLong(entry.seq);
+            frame(records, payload.toByteArray());
+        }
+        append(records.toByteArray());
+        for (Entry entry : entries) {
+            pending.remove(entry.seq);
+            keys.remove(entry.key);
+        }
+        //每条完成的请求在日志中留下 ADD + ACK 两条无用记录
+        deadRecords += entries.size() * 2L;
+        if (deadRecords >= COMPACT_THRESHOLD && deadRecords > pending.size()) {
+            compact();
+        }
+    }
+
+    //----------- 日志 -----------//
+
+    private void load() throws IOException {
+        if (!logFile.exists()) return;
+        long valid = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)))) {
+            if (logFile.length() >= 4) {
+                if (in.readInt() != MAGIC) throw new IOException("not a GOfflineQueue log: " + logFile);
+                valid = 4;
+            }
+            CRC32 crc = new CRC32();
+            while (true) {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length <= 0 || length > MAX_RECORD) break;
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                crc.reset();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != checksum) break;
+                apply(payload);
+                valid += 8 + length;
+            }
+        } catch (EOFException ignored) {
+            //写了一半的尾部记录
+        }
+        if (valid < logFile.length()) {
+            try (RandomAccessFile file = new RandomAccessFile(logFile, "rw")) {
+                file.setLength(valid);
+            }
+        }
+    }
+
+    private void apply(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = in.readByte();
+        if (type == TYPE_ADD || type == TYPE_ADD_UTF) {
+            Entry entry = Entry.decode(in, type == TYPE_ADD_UTF);
+            pending.put(entry.seq, entry);
+            keys.put(entry.key, entry.seq);
+            nextSeq = Math.max(nextSeq, entry.seq + 1);
+        } else if (type == TYPE_ACK) {
+            Entry entry = pending.remove(in.readLong());
+            if (entry != null) keys.remove(entry.key);
+            deadRecords += 2;
+        }
+    }
+
+    private void append(byte[] records) throws IOException {
+        out.write(records);
+        if (syncOnWrite) out.getFD().sync();
+    }
+
+    /**
+     * 只保留未完成的请求, 写入临时文件后替换原日志
+     */
+    private void compact() throws IOException {
+        File tmp = new File(logFile.getPath() + ".tmp");
+        try (FileOutputStream tmpOut = new FileOutputStream(tmp)) {
+            ByteArrayOutputStream records = new ByteArrayOutputStream();
+            new DataOutputStream(records).writeInt(MAGIC);
+            for (Entry entry : pending.values()) {
+                records.write(entry.encode());
+                if (records.size() >= 64 * 1024) {
+                    records.writeTo(tmpOut);
+                    records.reset();
+                }
+            }
+            records.writeTo(tmpOut);
+            tmpOut.getFD().sync();
+        }
+        out.close();
+        if (!tmp.renameTo(logFile)) {
+            out = new FileOutputStream(logFile, true);
+            throw new IOException("unable to replace " + logFile);
+        }
+        out = new FileOutputStream(logFile, true);
+        deadRecords = 0;
+    }
+
+    private static void frame(ByteArrayOutputStream target, byte[] payload) throws IOException {
+        //load 遇到超长记录会当作损坏并截断, 之后的记录全部丢失
+        if (payload.length > MAX_RECORD) {
+            throw new IllegalArgumentException("record too large: " + payload.length + " > " + MAX_RECORD);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        DataOutputStream data = new DataOutputStream(target);
+        data.writeInt(payload.length);
+        data.writeInt((int) crc.getValue());
+        data.write(payload);
+    }
+
+    @Override
+    public void close() throws IOException {
+        unwatchConnectivity();
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            if (retryFuture != null) {
+                retryFuture.cancel(false);
+                retryFuture = null;
+            }
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            out.close();
+        }
+    }
+
+    ////
+
+    private static final class Entry {
+        final long seq;
+        final String key;
+        final String method;
+        final String url;
+        final Headers headers;
+        final String contentType;
+        final byte[] body;
+
+        Entry(long seq, String key, String method, String url, Headers headers, String contentType, byte[] body) {
+            this.seq = seq;
+            this.key = key;
+            this.method = method;
+            this.url = url;
+            this.headers = headers;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        Request toRequest() {
+            RequestBody requestBody = body == null ? null : RequestBody.create(contentType.isEmpty() ? null : MediaType.parse(contentType), body);
+            return new Request.Builder()
+                    .url(url)
+                    .headers(headers)
+                    .header("Idempotency-Key", key)
+                    .method(method, requestBody)
+                    .build();
+        }
+
+        /**
+         * 编码为一条带长度与校验的 ADD 记录
+         */
+        byte[] encode() throws IOException {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream(128 + (body == null ? 0 : body.length));
+            DataOutputStream data = new DataOutputStream(payload);
+            data.writeByte(TYPE_ADD);
+            data.writeLong(seq);
+            writeString(data, key);
+            writeString(data, method);
+            writeString(data, url);
+            data.writeInt(headers.size());
+            for (int i = 0; i < headers.size(); i++) {
+                writeString(data, headers.name(i));
+                writeString(data, headers.value(i));
+            }
+            writeString(data, contentType);
+            if (body == null) {
+                data.writeInt(-1);
+            } else {
+                data.writeInt(body.length);
+                data.write(body);
+            }
+            ByteArrayOutputStream record = new ByteArrayOutputStream(payload.size() + 8);
+            frame(record, payload.toByteArray());
+            return record.toByteArray();
+        }
+
+        /**
+         * @param legacy TYPE_ADD_UTF 记录
+         */
+        static Entry decode(DataInputStream in, boolean legacy) throws IOException {
+            long seq = in.readLong();
+            String key = readString(in, legacy);
+            String method = readString(in, legacy);
+            String url = readString(in, legacy);
+            int headerCount = legacy ? in.readUnsignedShort() : in.readInt();
+            if (headerCount < 0) throw new IOException("bad header count: " + headerCount);
+            Headers.Builder headers = new Headers.Builder();
+            for (int i = 0; i < headerCount; i++) {
+                headers.add(readString(in, legacy), readString(in, legacy));
+            }
+            String contentType = readString(in, legacy);
+            int length = in.readInt();
+            byte[] body = null;
+            if (length >= 0) {
+                body = new byte[length];
+                in.readFully(body);
+            }
+            return new Entry(seq, key, method, url, headers.build(), contentType, body);
+        }
+
+        private static void writeString(DataOutputStream out, String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private static String readString(DataInputStream in, boolean legacy) throws IOException {
+            if (legacy) return in.readUTF();
+            int length = in.readInt();
+            //记录已通过 CRC 校验, 长度异常只可能是格式错误
+            if (length < 0 || length > in.available()) throw new IOException("bad string length: " + length);
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
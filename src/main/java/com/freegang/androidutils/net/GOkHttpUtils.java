@@ -1,43 +1,48 @@
 package com.freegang.androidutils.net;
 
+import android.os.Build;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-import java.security.SecureRandom;
-import java.security.cert.CertificateException;
-import java.security.cert.X509Certificate;
-import java.util.Iterator;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
-
-import javax.net.ssl.HostnameVerifier;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLSession;
-import javax.net.ssl.SSLSocketFactory;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.X509TrustManager;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import okhttp3.Call;
 import okhttp3.Callback;
-import okhttp3.FormBody;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
 import okhttp3.Headers;
 import okhttp3.Interceptor;
 import okhttp3.MediaType;
 import okhttp3.MultipartBody;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
 import okio.Buffer;
+import okio.BufferedSink;
 import okio.BufferedSource;
 import okio.ForwardingSource;
 import okio.Okio;
-import okio.Source;
 
 /**
  * Created by fyc on 2017/7/12.
@@ -55,6 +60,7 @@ public class GOkHttpUtils {
     private static final byte[] LOCKER = new byte[0];
     private static GOkHttpUtils mInstance;
     private final OkHttpClient mOkHttpClient;
+    private final Builder mBuilder;
 
     /**
      * 单例模式获取OkHttpUtil
@@ -63,26 +69,112 @@ public class GOkHttpUtils {
         if (mInstance == null) {
             synchronized (LOCKER) {
                 if (mInstance == null) {
-                    mInstance = new GOkHttpUtils();
+                    mInstance = new Builder().build();
                 }
             }
         }
         return mInstance;
     }
 
-    private GOkHttpUtils() {
+    /**
+     * 使用自定义配置初始化单例, 建议在 Application.onCreate 中调用; 重复调用会替换原有单例
+     *
+     * @param builder 配置
+     */
+    public static void init(@NonNull Builder builder) {
+        synchronized (LOCKER) {
+            mInstance = builder.build();
+        }
+    }
+
+    private GOkHttpUtils(Builder builder) {
+        mBuilder = builder;
         OkHttpClient.Builder clientBuilder = new OkHttpClient.Builder();
         //读取超时
-        clientBuilder.readTimeout(READ_TIMEOUT, TimeUnit.SECONDS);
+        clientBuilder.readTimeout(builder.readTimeoutMillis, TimeUnit.MILLISECONDS);
         //连接超时
-        clientBuilder.connectTimeout(CONNECT_TIMEOUT, TimeUnit.SECONDS);
+        clientBuilder.connectTimeout(builder.connectTimeoutMillis, TimeUnit.MILLISECONDS);
         //写入超时
-        clientBuilder.writeTimeout(WRITE_TIMEOUT, TimeUnit.SECONDS);
-        //支持HTTPS请求，跳过证书验证
-        clientBuilder.sslSocketFactory(createSSLSocketFactory(), new TrustAllCerts());
-        clientBuilder.hostnameVerifier((hostname, session) -> true);
-        
+        clientBuilder.writeTimeout(builder.writeTimeoutMillis, TimeUnit.MILLISECONDS);
+        //连接池
+        clientBuilder.connectionPool(builder.connectionPool != null
+                ? builder.connectionPool
+                : new ConnectionPool(builder.maxIdleConnections, builder.keepAliveMillis, TimeUnit.MILLISECONDS));
+        //并发调度
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(builder.maxRequests);
+        dispatcher.setMaxRequestsPerHost(builder.maxRequestsPerHost);
+        clientBuilder.dispatcher(dispatcher);
+        //协议
+        if (builder.protocols != null) {
+            clientBuilder.protocols(builder.protocols);
+        }
+        //磁盘缓存
+        if (builder.httpCache != null) {
+            clientBuilder.cache(builder.httpCache.getCache());
+            clientBuilder.addInterceptor(builder.httpCache.interceptor());
+        }
+        //压缩在重试外层: 每个请求只压缩一次, 重试复用已压缩的请求体, 统计也不会重复;
+        //其后的拦截器看到的都是压缩后的请求体, OkHttp 的磁盘缓存保存的是线路上的原始响应
+        if (builder.compression != null) {
+            clientBuilder.addInterceptor(builder.compression);
+        }
+        //重试在外层, 熔断在内层: 每次重试都会经过熔断判断
+        if (builder.retryInterceptor != null) {
+            clientBuilder.addInterceptor(builder.retryInterceptor);
+        }
+        if (builder.circuitBreaker != null) {
+            clientBuilder.addInterceptor(builder.circuitBreaker);
+        }
+        //单独限制的Host, 只能在 Dispatcher 的 maxRequestsPerHost 之内收紧
+        for (Map.Entry<String, Integer> entry : builder.hostLimits.entrySet()) {
+            if (entry.getValue() > builder.maxRequestsPerHost) {
+                throw new IllegalArgumentException("hostLimit(" + entry.getKey() + ", " + entry.getValue()
+                        + ") exceeds maxRequestsPerHost " + builder.maxRequestsPerHost + ", raise it via dispatcher()");
+            }
+        }
+        if (!builder.hostLimits.isEmpty()) {
+            clientBuilder.addInterceptor(new HostLimitInterceptor(builder.hostLimits));
+        }
+        for (Interceptor interceptor : builder.interceptors) {
+            clientBuilder.addInterceptor(interceptor);
+        }
+        //限速是网络拦截器: 在缓存之后, 命中缓存的请求不消耗令牌也不限速; 按线路上实际传输的(压缩后的)字节计算
+        if (builder.throttle != null) {
+            clientBuilder.addNetworkInterceptor(builder.throttle);
+        }
+        for (Interceptor interceptor : builder.networkInterceptors) {
+            clientBuilder.addNetworkInterceptor(interceptor);
+        }
+        //耗时统计
+        if (builder.metrics != null) {
+            clientBuilder.eventListenerFactory(builder.metrics);
+        }
+        //HTTPS, 默认共享同一个 SSLContext 以复用 TLS 会话; 跳过证书验证仅用于调试
+        if (builder.trustAllCerts) {
+            GHttpTls.trustAll().apply(clientBuilder);
+        } else {
+            (builder.tls != null ? builder.tls : GHttpTls.getDefault()).apply(clientBuilder);
+        }
+
         mOkHttpClient = clientBuilder.build();
+        if (builder.httpCache != null) {
+            builder.httpCache.attach(this);
+        }
+    }
+
+    /**
+     * 以当前实例的配置为基础, 创建一个新的 Builder, 用于构建另一个独立实例
+     */
+    public Builder newBuilder() {
+        return new Builder(mBuilder);
+    }
+
+    /**
+     * 当前实例使用的 OkHttpClient
+     */
+    public OkHttpClient getOkHttpClient() {
+        return mOkHttpClient;
     }
 
     /**
@@ -134,12 +226,14 @@ public class GOkHttpUtils {
 
     /**
      * 同步请求方式, 直接请求网络, 需要手动创建子线程执行.
+     * <p>
+     * 返回的 Response 处于打开状态, 由调用方读取响应体后负责 close
      *
      * @param url         url
      * @param method      Method
      * @param headers     Request Headers
      * @param requestBody Request Body
-     * @return return
+     * @return return, 请求失败时返回 null
      */
     public Response execute(String url, String method, Headers headers, RequestBody requestBody) {
         Request request = new Request.Builder()
@@ -150,14 +244,62 @@ public class GOkHttpUtils {
         //将Request封装为Call
         Call call = mOkHttpClient.newCall(request);
         //执行Call，得到response
-        try (Response response = call.execute()) {
-            return response;
+        try {
+            return call.execute();
         } catch (IOException e) {
             e.printStackTrace();
         }
         return null;
     }
 
+    /**
+     * get请求, 同步方式, 返回可关闭的 RespResult
+     *
+     * @param url url
+     * @return RespResult, 使用 try-with-resources 关闭
+     * @throws IOException 网络异常
+     */
+    public RespResult getDataResult(String url) throws IOException {
+        return executeResult(url, "GET", Headers.of(), null);
+    }
+
+    /**
+     * get请求, 同步方式, 按指定缓存模式返回 RespResult, 需要在 Builder 中配置 GHttpCache
+     *
+     * @param url       url
+     * @param cacheMode 缓存模式
+     * @return RespResult, 使用 try-with-resources 关闭
+     * @throws IOException 网络异常
+     */
+    public RespResult getDataResult(String url, GHttpCache.CacheMode cacheMode) throws IOException {
+        Request request = new Request.Builder()
+                .url(url)
+                .tag(GHttpCache.CacheMode.class, cacheMode)
+                .build();
+        return new RespResult(mOkHttpClient.newCall(request).execute());
+    }
+
+    /**
+     * 同步请求方式, 直接请求网络, 需要手动创建子线程执行.
+     * <p>
+     * 与 {@link #execute(String, String, Headers, RequestBody)} 不同, 异常会直接抛出, 响应体由 RespResult 持有
+     *
+     * @param url         url
+     * @param method      Method
+     * @param headers     Request Headers
+     * @param requestBody Request Body
+     * @return RespResult, 使用 try-with-resources 关闭
+     * @throws IOException 网络异常
+     */
+    public RespResult executeResult(String url, String method, Headers headers, RequestBody requestBody) throws IOException {
+        Request request = new Request.Builder()
+                .headers(headers)
+                .method(method, requestBody)
+                .url(url)
+                .build();
+        return new RespResult(mOkHttpClient.newCall(request).execute());
+    }
+
     ////
 
     /**
@@ -230,10 +372,18 @@ public class GOkHttpUtils {
                 .method(method, requestBody)
                 .url(url)
                 .build();
-        //将Request封装为Call
-        Call call = mOkHttpClient.newCall(request);
-        //执行Call
-        call.enqueue(new Callback() {
+        executeAsync(request, respCall);
+    }
+
+    /**
+     * 异步请求方式, 使用自行构造的 Request, 可通过 Request.tag 携带额外的请求选项
+     *
+     * @param request  Request
+     * @param respCall Response
+     */
+    public void executeAsync(@NonNull Request request, final RespCall respCall) {
+        //执行Call, 可合并的GET请求会共享同一个Call
+        enqueue(request, new Callback() {
             @Override
             public void onFailure(@NonNull Call call, @NonNull IOException e) {
                 respCall.failed(call, e);
@@ -258,6 +408,21 @@ public class GOkHttpUtils {
         executeAsync(url, "GET", null, respCallBody);
     }
 
+    /**
+     * get请求, 异步方式, 按指定缓存模式获取响应体内容, 需要在 Builder 中配置 GHttpCache
+     *
+     * @param url          url
+     * @param cacheMode    缓存模式
+     * @param respCallBody Response
+     */
+    public void getDataAsync(String url, GHttpCache.CacheMode cacheMode, RespCallBody respCallBody) {
+        Request request = new Request.Builder()
+                .url(url)
+                .tag(GHttpCache.CacheMode.class, cacheMode)
+                .build();
+        executeAsync(request, respCallBody);
+    }
+
     /**
      * post请求, 异步方式, 获取响应体内容
      *
@@ -318,10 +483,18 @@ public class GOkHttpUtils {
                 .method(method, requestBody)
                 .url(url)
                 .build();
-        //将Request封装为Call
-        Call call = mOkHttpClient.newCall(request);
-        //执行Call
-        call.enqueue(new Callback() {
+        executeAsync(request, respCallBody);
+    }
+
+    /**
+     * 异步请求方式, 使用自行构造的 Request, 可通过 Request.tag 携带额外的请求选项
+     *
+     * @param request      Request
+     * @param respCallBody Response
+     */
+    public void executeAsync(@NonNull Request request, final RespCallBody respCallBody) {
+        //执行Call, 可合并的GET请求会共享同一个Call
+        enqueue(request, new Callback() {
             @Override
             public void onFailure(@NonNull Call call, @NonNull IOException e) {
                 respCallBody.onResponseBody(-1, e.getMessage());
@@ -340,7 +513,186 @@ public class GOkHttpUtils {
         });
     }
 
-    //// 待测试
+    /**
+     * 异步请求方式, 在工作线程上把响应体解码为目标类型, 非UI线程
+     *
+     * @param request  Request
+     * @param decoder  解码器, 见 GResponseDecoders
+     * @param respCall Response, 非 2xx 响应不解码, value 为 null
+     * @param <T>      目标类型
+     */
+    public <T> void executeAsync(@NonNull Request request, @NonNull final GResponseDecoder<T> decoder, @NonNull final RespCallDecoded<T> respCall) {
+        enqueue(request, new Callback() {
+            @Override
+            public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                respCall.onFailure(call, e);
+            }
+
+            @Override
+            public void onResponse(@NonNull Call call, @NonNull Response response) {
+                T value;
+                try (ResponseBody responseBody = response.body()) {
+                    value = responseBody != null && response.isSuccessful() ? decoder.decode(responseBody) : null;
+                } catch (IOException e) {
+                    respCall.onFailure(call, e);
+                    return;
+                }
+                respCall.onResponseDecoded(response.code(), value);
+            }
+        });
+    }
+
+    /**
+     * 发起异步Call, 开启 GET 合并时交由 GHttpSingleFlight 处理
+     */
+    private void enqueue(Request request, Callback callback) {
+        GHttpSingleFlight singleFlight = mBuilder.singleFlight;
+        if (singleFlight != null && singleFlight.isEligible(request)) {
+            singleFlight.enqueue(request, callback, this::dispatch);
+        } else {
+            dispatch(request, callback);
+        }
+    }
+
+    /**
+     * 交给 OkHttp, 配置了 GHttpScheduler 时先按优先级排队; 本包中所有异步请求都从这里发出
+     *
+     * @return 用于取消请求
+     */
+    @NonNull
+    GHttpScheduler.Cancelable dispatch(@NonNull Request request, @NonNull Callback callback) {
+        GHttpScheduler scheduler = mBuilder.scheduler;
+        if (scheduler != null) {
+            return scheduler.enqueue(mOkHttpClient, request, callback);
+        }
+        Call call = mOkHttpClient.newCall(request);
+        call.enqueue(callback);
+        return call::cancel;
+    }
+
+    ////
+
+    /**
+     * get请求, 异步方式, 返回 CompletableFuture
+     *
+     * @param url url
+     * @return CompletableFuture, 完成后由调用方关闭 RespResult
+     */
+    @RequiresApi(Build.VERSION_CODES.N)
+    public CompletableFuture<RespResult> getDataFuture(String url) {
+        return executeFuture(new Request.Builder().url(url).build());
+    }
+
+    /**
+     * post请求, 异步方式, 提交JSON格式数据, 返回 CompletableFuture
+     *
+     * @param url  url
+     * @param json Request Json
+     * @return CompletableFuture, 完成后由调用方关闭 RespResult
+     */
+    @RequiresApi(Build.VERSION_CODES.N)
+    public CompletableFuture<RespResult> postJsonFuture(String url, String json) {
+        return executeFuture(new Request.Builder().url(url).post(buildJsonBody(json)).build());
+    }
+
+    /**
+     * 异步请求方式, 返回 CompletableFuture, 便于并发多个请求后用 allOf 汇总, 不会阻塞线程
+     * <p>
+     * 与回调接口一样经过 GHttpScheduler 调度; 对返回的 future 调用 cancel 会取消排队中的请求或底层 Call,
+     * 由 thenApply 等派生出的 future 被取消时不会向上传递
+     *
+     * @param request Request
+     * @return CompletableFuture, 完成后由调用方关闭 RespResult
+     */
+    @RequiresApi(Build.VERSION_CODES.N)
+    public CompletableFuture<RespResult> executeFuture(@NonNull Request request) {
+        final CancelableFuture future = new CancelableFuture();
+        future.handle = dispatch(request, new Callback() {
+            @Override
+            public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(@NonNull Call call, @NonNull Response response) {
+                RespResult result = new RespResult(response);
+                //已被取消, 没有人会关闭它
+                if (!future.complete(result)) result.close();
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 取消时同时取消排队中或进行中的请求
+     */
+    @RequiresApi(Build.VERSION_CODES.N)
+    private static class CancelableFuture extends CompletableFuture<RespResult> {
+        volatile GHttpScheduler.Cancelable handle;
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            GHttpScheduler.Cancelable handle = this.handle;
+            if (handle != null) handle.cancel();
+            return super.cancel(mayInterruptIfRunning);
+        }
+    }
+
+    ////
+
+    /**
+     * get请求, 异步方式, 以流的形式读取响应体
+     *
+     * @param url            url
+     * @param respCallStream Response
+     */
+    public void getDataStream(String url, RespCallStream respCallStream) {
+        executeStream(url, "GET", Headers.of(), null, respCallStream);
+    }
+
+    /**
+     * 异步请求方式, 响应体不会被转换为String, 而是将 BufferedSource 直接交给 respCallStream 按需读取, 非UI线程
+     * <p>
+     * 读取是拉取式的, 调用方读多少, 网络就收多少, 因此大文件/大数据流只占用 Okio 的分段缓冲, 内存有界
+     *
+     * @param url            Request Url
+     * @param method         Request Method
+     * @param headers        Request Headers
+     * @param requestBody    Request Body
+     * @param respCallStream Response
+     */
+    public void executeStream(String url, String method, Headers headers, RequestBody requestBody, final RespCallStream respCallStream) {
+        //构造Request
+        Request request = new Request.Builder()
+                .headers(headers)
+                .method(method, requestBody)
+                .url(url)
+                .build();
+        //执行Call
+        dispatch(request, new Callback() {
+            @Override
+            public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                respCallStream.onFailure(call, e);
+            }
+
+            @Override
+            public void onResponse(@NonNull Call call, @NonNull Response response) {
+                try (ResponseBody responseBody = response.body()) {
+                    BufferedSource source = responseBody != null ? responseBody.source() : new Buffer();
+                    respCallStream.onResponseStream(response.code(), source);
+                } catch (IOException e) {
+                    respCallStream.onFailure(call, e);
+                }
+            }
+        });
+    }
+
+    ////
+
+    /**
+     * 上传进度的默认回调间隔, 避免高频回调占满UI线程
+     */
+    public static final long UPLOAD_PROGRESS_INTERVAL_MILLIS = 100;
 
     /**
      * 文件上传
@@ -350,13 +702,14 @@ public class GOkHttpUtils {
      * @param types    File Types
      * @param files    Files
      * @param listener Listener
+     * @return 上传是否成功
      */
-    public void uploadFiles(String url, String method, MediaType[] types, File[] files, UploadProgressListener listener) {
-        uploadFiles(url, method, types, files, null, listener);
+    public boolean uploadFiles(String url, String method, MediaType[] types, File[] files, UploadProgressListener listener) {
+        return uploadFiles(url, method, types, files, null, listener);
     }
 
     /**
-     * 文件上传
+     * 文件上传, 同步方式, 需要手动创建子线程执行; 文件在写入 socket 时才被读取
      *
      * @param url        url
      * @param method     Method
@@ -364,29 +717,45 @@ public class GOkHttpUtils {
      * @param files      Files
      * @param bodyParams Request Body
      * @param listener   Listener
+     * @return 上传是否成功
+     */
+    public boolean uploadFiles(String url, String method, MediaType[] types, File[] files, Map<String, String> bodyParams, UploadProgressListener listener) {
+        //构建Request, 请求体包装为上传进度统计
+        Request request = buildUploadRequest(url, method, types, files, bodyParams, listener);
+        //执行请求
+        try (Response response = mOkHttpClient.newCall(request).execute()) {
+            return response.isSuccessful();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    /**
+     * 文件上传, 异步方式, 获取响应体内容
+     *
+     * @param url          url
+     * @param method       Method
+     * @param types        File Types
+     * @param files        Files
+     * @param bodyParams   Request Body
+     * @param listener     Listener
+     * @param respCallBody Response
      */
-    public void uploadFiles(String url, String method, MediaType[] types, File[] files, Map<String, String> bodyParams, UploadProgressListener listener) {
-        //构建RequestBody
+    public void uploadFilesAsync(String url, String method, MediaType[] types, File[] files, Map<String, String> bodyParams, UploadProgressListener listener, RespCallBody respCallBody) {
+        executeAsync(buildUploadRequest(url, method, types, files, bodyParams, listener), respCallBody);
+    }
+
+    private Request buildUploadRequest(String url, String method, MediaType[] types, File[] files, Map<String, String> bodyParams, UploadProgressListener listener) {
         RequestBody requestBody = buildUploadFileBody(types, files, bodyParams);
-        //构建Request
-        Request request = new Request
+        if (listener != null) {
+            requestBody = GRequestBodyUtils.progress(requestBody, listener, UPLOAD_PROGRESS_INTERVAL_MILLIS);
+        }
+        return new Request
                 .Builder()
                 .method(method, requestBody)
                 .url(url)
                 .build();
-        //重新构建一个 HttpClient, 并添加上传拦截器
-        OkHttpClient client = mOkHttpClient
-                .newBuilder()
-                .addInterceptor(new ProgressResponseInterceptor(listener))
-                .build();
-        //执行请求
-        try {
-            Response response = client.newCall(request).execute();
-            boolean successful = response.isSuccessful();
-            //todo 其他操作
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
     }
 
     ////
@@ -398,19 +767,18 @@ public class GOkHttpUtils {
      * @return return
      */
     public RequestBody buildFormBody(Map<String, String> bodyParams) {
-        RequestBody body = null;
-        FormBody.Builder formEncodingBuilder = new FormBody.Builder();
+        int size = bodyParams == null ? 0 : bodyParams.size();
+        GFormBody.Builder builder = new GFormBody.Builder(size);
         if (bodyParams != null) {
-            Iterator<String> iterator = bodyParams.keySet().iterator();
-            String key = "";
-            while (iterator.hasNext()) {
-                key = iterator.next();
-                formEncodingBuilder.add(key, bodyParams.get(key));
-                Log.d(TAG, "bodyParams===" + key + "====" + bodyParams.get(key));
+            boolean loggable = GHttpLogger.isLoggable(Log.DEBUG);
+            for (Map.Entry<String, String> entry : bodyParams.entrySet()) {
+                builder.add(entry.getKey(), entry.getValue());
+                if (loggable) {
+                    GHttpLogger.log(Log.DEBUG, TAG, "bodyParams===" + entry.getKey() + "====" + entry.getValue());
+                }
             }
         }
-        body = formEncodingBuilder.build();
-        return body;
+        return builder.build();
     }
 
     /**
@@ -444,19 +812,21 @@ public class GOkHttpUtils {
             RequestBody fileBody = MultipartBody.create(type, file);
             //RequestBody fileBody = MultipartBody.create(file, type); //okhttp3推荐这样写, 如有需要可切换上面一行
             builder.addFormDataPart("file_" + i, file.getName(), fileBody);
-            Log.d(TAG, "uploadFile===" + file.getName());
+            if (GHttpLogger.isLoggable(Log.DEBUG)) {
+                GHttpLogger.log(Log.DEBUG, TAG, "uploadFile===" + file.getName());
+            }
         }
         //传入批量提交文件的数量
         builder.addFormDataPart("fileCount", String.valueOf(files.length));
 
         //其他参数, 如果有
         if (bodyParams != null) {
-            Iterator<String> iterator = bodyParams.keySet().iterator();
-            String key = "";
-            while (iterator.hasNext()) {
-                key = iterator.next();
-                builder.addFormDataPart(key, bodyParams.get(key));
-                Log.d(TAG, "bodyParams===" + key + "====" + bodyParams.get(key));
+            boolean loggable = GHttpLogger.isLoggable(Log.DEBUG);
+            for (Map.Entry<String, String> entry : bodyParams.entrySet()) {
+                builder.addFormDataPart(entry.getKey(), entry.getValue());
+                if (loggable) {
+                    GHttpLogger.log(Log.DEBUG, TAG, "bodyParams===" + entry.getKey() + "====" + entry.getValue());
+                }
             }
         }
 
@@ -465,38 +835,312 @@ public class GOkHttpUtils {
 
     ////
 
+    ////
+
     /**
-     * 生成安全套接字工厂，用于https请求的证书跳过
-     *
-     * @return return
+     * GOkHttpUtils 配置, 每次 build() 都会得到一个拥有独立连接池与调度器的实例
      */
-    private SSLSocketFactory createSSLSocketFactory() {
-        SSLSocketFactory ssfFactory = null;
-        try {
-            SSLContext sc = SSLContext.getInstance("TLS");
-            sc.init(null, new TrustManager[]{new TrustAllCerts()}, new SecureRandom());
-            ssfFactory = sc.getSocketFactory();
-        } catch (Exception e) {
+    public static final class Builder {
+        private long readTimeoutMillis = TimeUnit.SECONDS.toMillis(READ_TIMEOUT);
+        private long connectTimeoutMillis = TimeUnit.SECONDS.toMillis(CONNECT_TIMEOUT);
+        private long writeTimeoutMillis = TimeUnit.SECONDS.toMillis(WRITE_TIMEOUT);
+        private int maxIdleConnections = 5;
+        private long keepAliveMillis = TimeUnit.MINUTES.toMillis(5);
+        private ConnectionPool connectionPool;
+        private int maxRequests = 64;
+        private int maxRequestsPerHost = 5;
+        private List<Protocol> protocols;
+        private final Map<String, Integer> hostLimits = new HashMap<>();
+        private final List<Interceptor> interceptors = new ArrayList<>();
+        private final List<Interceptor> networkInterceptors = new ArrayList<>();
+        private boolean trustAllCerts = false;
+        private GHttpTls tls;
+        private GHttpCache httpCache;
+        private GHttpSingleFlight singleFlight;
+        private GRetryInterceptor retryInterceptor;
+        private GCircuitBreaker circuitBreaker;
+        private GHttpMetrics metrics;
+        private GHttpScheduler scheduler;
+        private GCompressionInterceptor compression;
+        private GHttpThrottle throttle;
+
+        public Builder() {
+        }
+
+        Builder(Builder other) {
+            readTimeoutMillis = other.readTimeoutMillis;
+            connectTimeoutMillis = other.connectTimeoutMillis;
+            writeTimeoutMillis = other.writeTimeoutMillis;
+            maxIdleConnections = other.maxIdleConnections;
+            keepAliveMillis = other.keepAliveMillis;
+            connectionPool = other.connectionPool;
+            maxRequests = other.maxRequests;
+            maxRequestsPerHost = other.maxRequestsPerHost;
+            protocols = other.protocols;
+            hostLimits.putAll(other.hostLimits);
+            interceptors.addAll(other.interceptors);
+            networkInterceptors.addAll(other.networkInterceptors);
+            trustAllCerts = other.trustAllCerts;
+            tls = other.tls;
+            httpCache = other.httpCache;
+            singleFlight = other.singleFlight;
+            retryInterceptor = other.retryInterceptor;
+            circuitBreaker = other.circuitBreaker;
+            metrics = other.metrics;
+            scheduler = other.scheduler;
+            compression = other.compression;
+            throttle = other.throttle;
+        }
+
+        public Builder readTimeout(long timeout, TimeUnit unit) {
+            readTimeoutMillis = unit.toMillis(timeout);
+            return this;
+        }
+
+        public Builder connectTimeout(long timeout, TimeUnit unit) {
+            connectTimeoutMillis = unit.toMillis(timeout);
+            return this;
+        }
+
+        public Builder writeTimeout(long timeout, TimeUnit unit) {
+            writeTimeoutMillis = unit.toMillis(timeout);
+            return this;
+        }
+
+        /**
+         * 连接池大小与空闲连接保活时长, 默认 5 个 / 5 分钟
+         *
+         * @param maxIdleConnections 最大空闲连接数
+         * @param keepAlive          空闲连接保活时长
+         * @param unit               时间单位
+         */
+        public Builder connectionPool(int maxIdleConnections, long keepAlive, TimeUnit unit) {
+            if (maxIdleConnections < 0) throw new IllegalArgumentException("maxIdleConnections < 0");
+            this.maxIdleConnections = maxIdleConnections;
+            this.keepAliveMillis = unit.toMillis(keepAlive);
+            this.connectionPool = null;
+            return this;
+        }
+
+        /**
+         * 与其他实例共享同一个连接池
+         *
+         * @param connectionPool 连接池
+         */
+        public Builder connectionPool(@NonNull ConnectionPool connectionPool) {
+            this.connectionPool = connectionPool;
+            return this;
+        }
+
+        /**
+         * 调度器并发限制, 默认 64 / 每个Host 5
+         *
+         * @param maxRequests        最大并发请求数
+         * @param maxRequestsPerHost 每个Host最大并发请求数
+         */
+        public Builder dispatcher(int maxRequests, int maxRequestsPerHost) {
+            if (maxRequests < 1) throw new IllegalArgumentException("maxRequests < 1");
+            if (maxRequestsPerHost < 1) throw new IllegalArgumentException("maxRequestsPerHost < 1");
+            this.maxRequests = maxRequests;
+            this.maxRequestsPerHost = maxRequestsPerHost;
+            return this;
+        }
+
+        /**
+         * 单独限制某个Host的并发请求数, 包括响应体的传输, 直到响应体被关闭
+         * <p>
+         * Dispatcher 先按 maxRequestsPerHost 限制, 这里只能进一步收紧, 超过时 build 会抛出 IllegalArgumentException;
+         * 等待中的请求会占用 Dispatcher 的线程
+         *
+         * @param host           Host
+         * @param maxConcurrency 最大并发请求数, 不能超过 dispatcher 中的 maxRequestsPerHost
+         */
+        public Builder hostLimit(@NonNull String host, int maxConcurrency) {
+            if (maxConcurrency < 1) throw new IllegalArgumentException("maxConcurrency < 1");
+            hostLimits.put(host.toLowerCase(Locale.ROOT), maxConcurrency);
+            return this;
+        }
+
+        /**
+         * 协议偏好, 如 h2 + http/1.1
+         *
+         * @param protocols 协议列表
+         */
+        public Builder protocols(Protocol... protocols) {
+            this.protocols = Arrays.asList(protocols);
+            return this;
+        }
+
+        /**
+         * 已知服务端支持 h2c 时使用, 跳过协商直接以 HTTP/2 明文通信
+         */
+        public Builder http2PriorKnowledge() {
+            this.protocols = Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE);
+            return this;
+        }
+
+        /**
+         * 启用磁盘缓存, 默认不启用; 同一个缓存目录只能被一个 GHttpCache 使用
+         *
+         * @param httpCache 缓存
+         */
+        public Builder cache(@Nullable GHttpCache httpCache) {
+            this.httpCache = httpCache;
+            return this;
+        }
+
+        /**
+         * 合并并发的相同 GET 请求, 默认不合并
+         *
+         * @param singleFlight 合并器, 传 null 关闭
+         */
+        public Builder singleFlight(@Nullable GHttpSingleFlight singleFlight) {
+            this.singleFlight = singleFlight;
+            return this;
+        }
+
+        /**
+         * 失败重试, 默认不重试
+         *
+         * @param retryInterceptor 重试拦截器, 传 null 关闭
+         */
+        public Builder retry(@Nullable GRetryInterceptor retryInterceptor) {
+            this.retryInterceptor = retryInterceptor;
+            return this;
+        }
+
+        /**
+         * 按Host熔断, 默认不熔断
+         *
+         * @param circuitBreaker 熔断器, 传 null 关闭
+         */
+        public Builder circuitBreaker(@Nullable GCircuitBreaker circuitBreaker) {
+            this.circuitBreaker = circuitBreaker;
+            return this;
+        }
+
+        /**
+         * 按Host统计各阶段耗时, 默认不统计
+         *
+         * @param metrics 统计, 传 null 关闭
+         */
+        public Builder metrics(@Nullable GHttpMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * 按优先级调度异步请求, 默认直接交给 OkHttp 的先进先出调度
+         *
+         * @param scheduler 调度器, 传 null 关闭
+         */
+        public Builder scheduler(@Nullable GHttpScheduler scheduler) {
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * 请求体 gzip 压缩与响应体解码, 默认由 OkHttp 只处理 gzip 响应
+         *
+         * @param compression 压缩拦截器, 传 null 关闭
+         */
+        public Builder compression(@Nullable GCompressionInterceptor compression) {
+            this.compression = compression;
+            return this;
+        }
+
+        /**
+         * 按Host限制请求速率, 按优先级限制传输速度, 默认不限制
+         *
+         * @param throttle 限流器, 传 null 关闭
+         */
+        public Builder throttle(@Nullable GHttpThrottle throttle) {
+            this.throttle = throttle;
+            return this;
+        }
+
+        public Builder addInterceptor(@NonNull Interceptor interceptor) {
+            interceptors.add(interceptor);
+            return this;
+        }
+
+        public Builder addNetworkInterceptor(@NonNull Interceptor interceptor) {
+            networkInterceptors.add(interceptor);
+            return this;
+        }
+
+        /**
+         * HTTPS 配置, 证书锁定与 TLS 会话缓存, 默认使用系统证书与共享的 GHttpTls.getDefault()
+         *
+         * @param tls TLS 配置, 传 null 使用默认
+         */
+        public Builder tls(@Nullable GHttpTls tls) {
+            this.tls = tls;
+            return this;
+        }
+
+        /**
+         * 是否跳过HTTPS证书验证与主机名验证, 默认验证, 仅用于调试, 开启后 tls 配置不生效
+         *
+         * @param trustAllCerts trustAllCerts
+         */
+        public Builder trustAllCerts(boolean trustAllCerts) {
+            this.trustAllCerts = trustAllCerts;
+            return this;
+        }
+
+        public GOkHttpUtils build() {
+            return new GOkHttpUtils(new Builder(this));
         }
-        return ssfFactory;
     }
 
     /**
-     * 用于信任所有证书
+     * 按Host限制并发, 超出限制的请求会在调度线程上等待
      */
-    static class TrustAllCerts implements X509TrustManager {
-        @Override
-        public void checkClientTrusted(X509Certificate[] x509Certificates, String s) throws CertificateException {
-        }
-
-        @Override
-        public void checkServerTrusted(X509Certificate[] x509Certificates, String s) throws CertificateException {
+    private static class HostLimitInterceptor implements Interceptor {
+        private final Map<String, Semaphore> semaphores = new HashMap<>();
 
+        HostLimitInterceptor(Map<String, Integer> hostLimits) {
+            for (Map.Entry<String, Integer> entry : hostLimits.entrySet()) {
+                semaphores.put(entry.getKey(), new Semaphore(entry.getValue(), true));
+            }
         }
 
+        @NonNull
         @Override
-        public X509Certificate[] getAcceptedIssuers() {
-            return new X509Certificate[0];
+        public Response intercept(@NonNull Chain chain) throws IOException {
+            Semaphore semaphore = semaphores.get(chain.request().url().host());
+            if (semaphore == null) return chain.proceed(chain.request());
+            try {
+                semaphore.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("host limit wait interrupted");
+            }
+            boolean handedOff = false;
+            try {
+                Response response = chain.proceed(chain.request());
+                ResponseBody body = response.body();
+                if (body == null) return response;
+                //响应体关闭时才释放, 传输响应体的过程同样受限制
+                final AtomicBoolean released = new AtomicBoolean();
+                ForwardingSource source = new ForwardingSource(body.source()) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            if (released.compareAndSet(false, true)) semaphore.release();
+                        }
+                    }
+                };
+                handedOff = true;
+                return response.newBuilder()
+                        .body(ResponseBody.create(body.contentType(), body.contentLength(), Okio.buffer(source)))
+                        .build();
+            } finally {
+                if (!handedOff) semaphore.release();
+            }
         }
     }
 
@@ -519,105 +1163,184 @@ public class GOkHttpUtils {
     }
 
     /**
-     * 上传进度监听接口
+     * 响应回调接口, 返回解码后的响应体
      */
-    public interface UploadProgressListener {
-        void onProgress(long speed, long total, boolean done);
+    public interface RespCallDecoded<T> {
+        void onFailure(@NonNull Call call, @NonNull IOException e);
+
+        void onResponseDecoded(int statusCode, @Nullable T value);
     }
 
     /**
-     * 上传响应, 重新包装
+     * 响应回调接口, 以流的形式返回响应体, source 仅在回调内有效, 回调结束后会被关闭
      */
-    private static class ProgressResponseBody extends ResponseBody {
+    public interface RespCallStream {
+        void onFailure(@NonNull Call call, @NonNull IOException e);
 
-        private final ResponseBody mResponseBody;
-        private final UploadProgressListener progressListener;
-        private BufferedSource bufferedSource;
+        void onResponseStream(int statusCode, @NonNull BufferedSource source) throws IOException;
+    }
 
-        ProgressResponseBody(ResponseBody mResponseBody, UploadProgressListener progressListener) {
-            this.mResponseBody = mResponseBody;
-            this.progressListener = progressListener;
+    /**
+     * 分块读取响应体, 使用同一个缓冲区反复填充, 每次回调最多 chunkSize 个字节
+     */
+    public abstract static class ChunkCallStream implements RespCallStream {
+        private final byte[] chunk;
+
+        public ChunkCallStream(int chunkSize) {
+            if (chunkSize <= 0) throw new IllegalArgumentException("chunkSize <= 0");
+            this.chunk = new byte[chunkSize];
+        }
+
+        @Override
+        public void onResponseStream(int statusCode, @NonNull BufferedSource source) throws IOException {
+            onStart(statusCode);
+            int read;
+            while ((read = source.read(chunk, 0, chunk.length)) != -1) {
+                //返回 false 表示不再需要后续数据, 剩余部分随响应一起关闭
+                if (!onChunk(chunk, read)) break;
+            }
+            onComplete();
+        }
+
+        protected void onStart(int statusCode) {
         }
 
         /**
-         * 重写调用实际的响应体的contentLength
-         *
-         * @return contentLength
+         * @param buffer 复用的缓冲区, 不要在回调之外持有
+         * @param length 本次有效字节数
+         * @return 是否继续读取
          */
-        @Override
-        public long contentLength() {
-            return mResponseBody.contentLength();
+        protected abstract boolean onChunk(byte[] buffer, int length) throws IOException;
+
+        protected void onComplete() {
         }
+    }
+
+    /**
+     * 将响应体直接写入文件, 不经过内存中的完整副本
+     */
+    public static class FileCallStream implements RespCallStream {
+        private final File file;
+        private final RespCallBody respCallBody;
 
         /**
-         * 重写调用实际的响应体的contentType
-         *
-         * @return MediaType
+         * @param file         目标文件
+         * @param respCallBody 写入完成后回调, body 为文件绝对路径; 非 2xx 时不写入文件, body 为 null; 失败时 statusCode == -1
          */
-        @Nullable
+        public FileCallStream(File file, RespCallBody respCallBody) {
+            this.file = file;
+            this.respCallBody = respCallBody;
+        }
+
+        @Override
+        public void onFailure(@NonNull Call call, @NonNull IOException e) {
+            respCallBody.onResponseBody(-1, e.getMessage());
+        }
+
         @Override
-        public MediaType contentType() {
-            return mResponseBody.contentType();
+        public void onResponseStream(int statusCode, @NonNull BufferedSource source) throws IOException {
+            //错误页不能覆盖目标文件
+            if (statusCode < 200 || statusCode >= 300) {
+                respCallBody.onResponseBody(statusCode, null);
+                return;
+            }
+            try (BufferedSink sink = Okio.buffer(Okio.sink(file))) {
+                sink.writeAll(source);
+            }
+            respCallBody.onResponseBody(statusCode, file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * 同步请求结果, 持有一个未关闭的 Response, 响应体只能被读取一次
+     * <p>
+     * bytes()/byteBuffer() 直接从网络缓冲读入一个数组, 不经过 String 转换; source() 则完全不拷贝
+     */
+    public static final class RespResult implements Closeable {
+        private final Response response;
+
+        RespResult(@NonNull Response response) {
+            this.response = response;
+        }
+
+        public int code() {
+            return response.code();
+        }
+
+        public boolean isSuccessful() {
+            return response.isSuccessful();
+        }
+
+        @NonNull
+        public Headers headers() {
+            return response.headers();
+        }
+
+        @Nullable
+        public String header(String name) {
+            return response.header(name);
         }
 
         /**
-         * 重写进行包装source
-         *
-         * @return BufferedSource
+         * 原始 Response, 关闭 RespResult 即关闭它
          */
         @NonNull
-        @Override
-        public BufferedSource source() {
-            if (bufferedSource == null) {
-                bufferedSource = Okio.buffer(source(mResponseBody.source()));
-            }
-            return bufferedSource;
+        public Response response() {
+            return response;
         }
 
         /**
-         * 读取，回调进度接口
-         *
-         * @param source Source
-         * @return Source
+         * 响应体长度, 未知时为 -1
          */
-        private Source source(Source source) {
-            return new ForwardingSource(source) {
-                //当前读取字节数
-                long totalBytesRead = 0L;
-
-                @Override
-                public long read(@NonNull Buffer sink, long byteCount) throws IOException {
-                    long bytesRead = super.read(sink, byteCount);
-                    //增加当前读取的字节数，如果读取完成了bytesRead会返回-1
-                    totalBytesRead += bytesRead != -1 ? bytesRead : 0;
-                    //回调，如果contentLength()长度未知，会返回-1
-                    progressListener.onProgress(totalBytesRead, mResponseBody.contentLength(), bytesRead == -1);
-                    return bytesRead;
-                }
-            };
+        public long contentLength() {
+            ResponseBody body = response.body();
+            return body != null ? body.contentLength() : -1;
         }
-    }
 
-    /**
-     * 上传拦截器, 在这里重写响应 [ProgressResponseBody]
-     */
-    private static class ProgressResponseInterceptor implements Interceptor {
-        private final UploadProgressListener progressListener;
+        /**
+         * 响应体的流式读取, 由调用方按需拉取
+         */
+        @NonNull
+        public BufferedSource source() {
+            ResponseBody body = response.body();
+            return body != null ? body.source() : new Buffer();
+        }
+
+        @NonNull
+        public byte[] bytes() throws IOException {
+            ResponseBody body = response.body();
+            return body != null ? body.bytes() : new byte[0];
+        }
 
-        ProgressResponseInterceptor(UploadProgressListener progressListener) {
-            this.progressListener = progressListener;
+        /**
+         * 包装 bytes() 得到的数组, 不会再次拷贝
+         */
+        @NonNull
+        public ByteBuffer byteBuffer() throws IOException {
+            return ByteBuffer.wrap(bytes());
         }
 
         @NonNull
+        public String string() throws IOException {
+            ResponseBody body = response.body();
+            return body != null ? body.string() : "";
+        }
+
         @Override
-        public Response intercept(@NonNull Chain chain) throws IOException {
-            Response response = chain.proceed(chain.request());
-            return response
-                    .newBuilder()
-                    .code(response.code())
-                    .headers(response.headers())
-                    .body(new ProgressResponseBody(response.body(), progressListener))
-                    .build();
+        public void close() {
+            response.close();
         }
     }
+
+    /**
+     * 上传进度监听接口
+     */
+    public interface UploadProgressListener {
+        /**
+         * @param bytesWritten 已写入 socket 的字节数
+         * @param total        总字节数, 未知时为 -1
+         * @param done         是否写入完成
+         */
+        void onProgress(long bytesWritten, long total, boolean done);
+    }
 }
\ No newline at end of file
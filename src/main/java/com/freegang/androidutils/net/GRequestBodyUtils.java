@@ -0,0 +1,272 @@
+package com.freegang.androidutils.net;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.Okio;
+import okio.Sink;
+import okio.Source;
+
+/**
+ * 流式 RequestBody 工具, 写入时才从文件/通道/流中读取数据, 不会把整个请求体放进内存
+ */
+public class GRequestBodyUtils {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private GRequestBodyUtils() {
+        ///
+    }
+
+    /**
+     * 包装一个 RequestBody, 统计真正写入 socket 的字节数, 并按最小间隔回调进度
+     *
+     * @param body              原始请求体
+     * @param listener          进度回调, 在写入线程上执行
+     * @param minIntervalMillis 两次回调的最小间隔, 完成时总会回调一次
+     * @return RequestBody
+     */
+    public static RequestBody progress(@NonNull RequestBody body, @NonNull GOkHttpUtils.UploadProgressListener listener, long minIntervalMillis) {
+        return new ProgressRequestBody(body, listener, minIntervalMillis);
+    }
+
+    /**
+     * 文件中的某一段
+     *
+     * @param type     MediaType
+     * @param file     文件
+     * @param position 起始偏移
+     * @param count    字节数
+     * @return RequestBody
+     */
+    public static RequestBody create(@Nullable MediaType type, @NonNull File file, long position, long count) {
+        return new FileRegionRequestBody(type, file, position, count);
+    }
+
+    /**
+     * 通道中的某一段, 通道由调用方管理, 请求体可被重复写入(例如重试)
+     *
+     * @param type     MediaType
+     * @param channel  FileChannel
+     * @param position 起始偏移
+     * @param count    字节数
+     * @return RequestBody
+     */
+    public static RequestBody create(@Nullable MediaType type, @NonNull FileChannel channel, long position, long count) {
+        return new ChannelRequestBody(type, channel, position, count);
+    }
+
+    /**
+     * 输入流, 只能写入一次, 不支持重试
+     *
+     * @param type          MediaType
+     * @param in            输入流, 写入完成后关闭
+     * @param contentLength 长度, 未知时传 -1 (chunked)
+     * @return RequestBody
+     */
+    public static RequestBody create(@Nullable MediaType type, @NonNull InputStream in, long contentLength) {
+        return new InputStreamRequestBody(type, in, contentLength);
+    }
+
+    ////
+
+    private static void writeChannel(FileChannel channel, long position, long count, BufferedSink sink) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, Math.max(count, 1)));
+        long remaining = count;
+        while (remaining > 0) {
+            buffer.clear();
+            if (remaining < buffer.capacity()) buffer.limit((int) remaining);
+            int read = channel.read(buffer, position);
+            if (read == -1) throw new IOException("unexpected end of file, " + remaining + " bytes missing");
+            sink.write(buffer.array(), 0, read);
+            position += read;
+            remaining -= read;
+        }
+    }
+
+    /**
+     * 是否为本类创建的请求体, 这类请求体写入时才读取数据, 进度统计的也是真正写出的字节, 不应被整体读入内存
+     */
+    static boolean isStreaming(@NonNull RequestBody body) {
+        return body instanceof ProgressRequestBody
+                || body instanceof FileRegionRequestBody
+                || body instanceof ChannelRequestBody
+                || body instanceof InputStreamRequestBody;
+    }
+
+    private static class FileRegionRequestBody extends RequestBody {
+        private final MediaType type;
+        private final File file;
+        private final long position;
+        private final long count;
+
+        FileRegionRequestBody(MediaType type, File file, long position, long count) {
+            this.type = type;
+            this.file = file;
+            this.position = position;
+            this.count = count;
+        }
+
+        @Nullable
+        @Override
+        public MediaType contentType() {
+            return type;
+        }
+
+        @Override
+        public long contentLength() {
+            return count;
+        }
+
+        @Override
+        public void writeTo(@NonNull BufferedSink sink) throws IOException {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                writeChannel(raf.getChannel(), position, count, sink);
+            }
+        }
+    }
+
+    private static class ChannelRequestBody extends RequestBody {
+        private final MediaType type;
+        private final FileChannel channel;
+        private final long position;
+        private final long count;
+
+        ChannelRequestBody(MediaType type, FileChannel channel, long position, long count) {
+            this.type = type;
+            this.channel = channel;
+            this.position = position;
+            this.count = count;
+        }
+
+        @Nullable
+        @Override
+        public MediaType contentType() {
+            return type;
+        }
+
+        @Override
+        public long contentLength() {
+            return count;
+        }
+
+        @Override
+        public void writeTo(@NonNull BufferedSink sink) throws IOException {
+            writeChannel(channel, position, count, sink);
+        }
+    }
+
+    private static class InputStreamRequestBody extends RequestBody {
+        private final MediaType type;
+        private final InputStream in;
+        private final long contentLength;
+
+        InputStreamRequestBody(MediaType type, InputStream in, long contentLength) {
+            this.type = type;
+            this.in = in;
+            this.contentLength = contentLength;
+        }
+
+        @Nullable
+        @Override
+        public MediaType contentType() {
+            return type;
+        }
+
+        @Override
+        public long contentLength() {
+            return contentLength;
+        }
+
+        @Override
+        public boolean isOneShot() {
+            return true;
+        }
+
+        @Override
+        public void writeTo(@NonNull BufferedSink sink) throws IOException {
+            try (Source source = Okio.source(in)) {
+                sink.writeAll(source);
+            }
+        }
+    }
+
+    /**
+     * 上传进度, 统计的是写入 socket 的字节, 而不是响应
+     */
+    private static class ProgressRequestBody extends RequestBody {
+        private final RequestBody delegate;
+        private final GOkHttpUtils.UploadProgressListener listener;
+        private final long minIntervalNanos;
+
+        ProgressRequestBody(RequestBody delegate, GOkHttpUtils.UploadProgressListener listener, long minIntervalMillis) {
+            this.delegate = delegate;
+            this.listener = listener;
+            this.minIntervalNanos = minIntervalMillis * 1_000_000L;
+        }
+
+        @Nullable
+        @Override
+        public MediaType contentType() {
+            return delegate.contentType();
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            return delegate.contentLength();
+        }
+
+        @Override
+        public boolean isOneShot() {
+            return delegate.isOneShot();
+        }
+
+        @Override
+        public boolean isDuplex() {
+            return delegate.isDuplex();
+        }
+
+        @Override
+        public void writeTo(@NonNull BufferedSink sink) throws IOException {
+            final long total = contentLength();
+            CountingSink countingSink = new CountingSink(sink, total);
+            BufferedSink bufferedSink = Okio.buffer(countingSink);
+            delegate.writeTo(bufferedSink);
+            bufferedSink.flush();
+            listener.onProgress(countingSink.written, total, true);
+        }
+
+        private class CountingSink extends ForwardingSink {
+            private final long total;
+            private long written;
+            private long lastReportNanos;
+
+            CountingSink(Sink delegate, long total) {
+                super(delegate);
+                this.total = total;
+            }
+
+            @Override
+            public void write(@NonNull Buffer source, long byteCount) throws IOException {
+                super.write(source, byteCount);
+                written += byteCount;
+                long now = System.nanoTime();
+                if (now - lastReportNanos >= minIntervalNanos) {
+                    lastReportNanos = now;
+                    listener.onProgress(written, total, false);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.freegang.androidutils.net;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+
+import okhttp3.ResponseBody;
+
+/**
+ * 响应体解码器, 在 OkHttp 的工作线程上直接从字节流解码为目标类型
+ * <p>
+ * 内置实现见 GResponseDecoders; 响应体由调用方关闭, 解码器只负责读取
+ *
+ * @param <T> 目标类型
+ */
+public interface GResponseDecoder<T> {
+    T decode(@NonNull ResponseBody body) throws IOException;
+}
@@ -0,0 +1,103 @@
+package com.freegang.androidutils.net;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.freegang.androidutils.json.GJSONReader;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import okhttp3.ResponseBody;
+
+/**
+ * 内置的响应体解码器
+ */
+public class GResponseDecoders {
+    /**
+     * 原始字节
+     */
+    public static final GResponseDecoder<byte[]> BYTES = ResponseBody::bytes;
+
+    /**
+     * 字符串, 按 Content-Type 中的 charset 解码, 默认 UTF-8
+     */
+    public static final GResponseDecoder<String> STRING = ResponseBody::string;
+
+    /**
+     * JSON 对象, 边读边构建, 不生成整个响应体的字符串
+     */
+    public static final GResponseDecoder<JSONObject> JSON_OBJECT = body -> {
+        try (GJSONReader reader = new GJSONReader(body.charStream())) {
+            return readDocument(reader, JSONObject.class);
+        }
+    };
+
+    /**
+     * JSON 数组
+     */
+    public static final GResponseDecoder<JSONArray> JSON_ARRAY = body -> {
+        try (GJSONReader reader = new GJSONReader(body.charStream())) {
+            return readDocument(reader, JSONArray.class);
+        }
+    };
+
+    /**
+     * 图片, 解码失败时抛出 IOException
+     */
+    public static final GResponseDecoder<Bitmap> BITMAP = bitmap(null);
+
+    private GResponseDecoders() {
+        ///
+    }
+
+    /**
+     * 流式 JSON 解析, 由调用方通过 GJSONReader 逐个读取 token
+     */
+    public interface JsonHandler<T> {
+        T read(@NonNull GJSONReader reader) throws IOException;
+    }
+
+    @NonNull
+    public static <T> GResponseDecoder<T> json(@NonNull JsonHandler<T> handler) {
+        return body -> {
+            try (GJSONReader reader = new GJSONReader(body.charStream())) {
+                return handler.read(reader);
+            }
+        };
+    }
+
+    /**
+     * 图片, 可通过 Options 指定 inSampleSize、inPreferredConfig 等
+     *
+     * @param options BitmapFactory.Options
+     */
+    @NonNull
+    public static GResponseDecoder<Bitmap> bitmap(@Nullable BitmapFactory.Options options) {
+        return body -> {
+            try (InputStream in = body.byteStream()) {
+                Bitmap bitmap = BitmapFactory.decodeStream(in, null, options);
+                if (bitmap == null && (options == null || !options.inJustDecodeBounds)) {
+                    throw new IOException("unable to decode bitmap");
+                }
+                return bitmap;
+            }
+        };
+    }
+
+    ////
+
+    private static <T> T readDocument(GJSONReader reader, Class<T> type) throws IOException {
+        Object value = reader.readValue();
+        if (!type.isInstance(value) || reader.peek() != GJSONReader.Token.END_DOCUMENT) {
+            throw new GJSONReader.SyntaxException("expected a single " + type.getSimpleName() + " at " + reader.getPath());
+        }
+        return type.cast(value);
+    }
+}
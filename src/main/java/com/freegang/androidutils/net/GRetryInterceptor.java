@@ -0,0 +1,156 @@
+package com.freegang.androidutils.net;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * 指数退避重试拦截器, 通过 GOkHttpUtils.Builder.retry 启用
+ * <p>
+ * 只重试幂等请求 (GET/HEAD/PUT/DELETE/OPTIONS/TRACE), 其他方法需要请求头 Idempotency-Key 或 tag(Idempotent.class) 显式声明;
+ * 等待时长为 min(maxDelay, baseDelay * 2^n) 上的 full jitter, 响应头 Retry-After 优先
+ */
+public class GRetryInterceptor implements Interceptor {
+    /**
+     * 标记某个非幂等请求可以安全重试, Request.Builder.tag(Idempotent.class, Idempotent.INSTANCE)
+     */
+    public static final class Idempotent {
+        public static final Idempotent INSTANCE = new Idempotent();
+
+        private Idempotent() {
+        }
+    }
+
+    private final int maxRetries;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final Random random = new Random();
+
+    private final AtomicLong retryCount = new AtomicLong();
+    private final AtomicLong exhaustedCount = new AtomicLong();
+
+    /**
+     * 默认最多重试 3 次, 初始等待 200ms, 最长 10s
+     */
+    public GRetryInterceptor() {
+        this(3, 200, 10_000, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param maxRetries 最大重试次数, 不含第一次请求
+     * @param baseDelay  初始等待时长
+     * @param maxDelay   最大等待时长
+     * @param unit       时间单位
+     */
+    public GRetryInterceptor(int maxRetries, long baseDelay, long maxDelay, TimeUnit unit) {
+        if (maxRetries < 0) throw new IllegalArgumentException("maxRetries < 0");
+        this.maxRetries = maxRetries;
+        this.baseDelayMillis = unit.toMillis(baseDelay);
+        this.maxDelayMillis = unit.toMillis(maxDelay);
+    }
+
+    /**
+     * 发生重试的总次数
+     */
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    /**
+     * 用尽重试次数仍失败的请求数
+     */
+    public long getExhaustedCount() {
+        return exhaustedCount.get();
+    }
+
+    @NonNull
+    @Override
+    public Response intercept(@NonNull Chain chain) throws IOException {
+        Request request = chain.request();
+        //only-if-cached 的 504 来自本地缓存, 重试没有意义
+        if (!isIdempotent(request) || request.cacheControl().onlyIfCached()) return chain.proceed(request);
+
+        for (int attempt = 0; ; attempt++) {
+            Response response = null;
+            IOException failure = null;
+            try {
+                response = chain.proceed(request);
+            } catch (GCircuitBreaker.OpenException e) {
+                //熔断中, 重试没有意义
+                throw e;
+            } catch (IOException e) {
+                if (chain.call().isCanceled()) throw e;
+                failure = e;
+            }
+
+            if (response != null && !isRetryable(response.code())) return response;
+            if (attempt >= maxRetries) {
+                exhaustedCount.incrementAndGet();
+                if (response != null) return response;
+                throw failure;
+            }
+
+            long delay = delayMillis(attempt, response);
+            if (response != null) response.close();
+            retryCount.incrementAndGet();
+            sleep(delay);
+        }
+    }
+
+    private static boolean isIdempotent(Request request) {
+        switch (request.method()) {
+            case "GET":
+            case "HEAD":
+            case "PUT":
+            case "DELETE":
+            case "OPTIONS":
+            case "TRACE":
+                return true;
+            default:
+                return request.header("Idempotency-Key") != null || request.tag(Idempotent.class) != null;
+        }
+    }
+
+    /**
+     * 408 超时, 429 限流, 以及网关类的 5xx
+     */
+    private static boolean isRetryable(int code) {
+        return code == 408 || code == 429 || code == 500 || code == 502 || code == 503 || code == 504;
+    }
+
+    private long delayMillis(int attempt, Response response) {
+        if (response != null) {
+            String retryAfter = response.header("Retry-After");
+            if (retryAfter != null) {
+                try {
+                    return Math.min(maxDelayMillis, TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim())));
+                } catch (NumberFormatException ignored) {
+                    //HTTP-date 格式, 按退避处理
+                }
+            }
+        }
+        long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt, 30));
+        if (ceiling <= 0) return 0;
+        synchronized (random) {
+            return (long) (random.nextDouble() * ceiling);
+        }
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        if (millis <= 0) return;
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("retry wait interrupted");
+        }
+    }
+}
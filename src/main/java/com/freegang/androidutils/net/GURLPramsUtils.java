@@ -1,10 +1,38 @@
 package com.freegang.androidutils.net;
 
-import java.net.URLEncoder;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
+/**
+ * URL 参数拼接与解析
+ * <p>
+ * 编码按 RFC 3986: 只有 unreserved 字符(字母数字与 -._~)原样保留, 其余按 UTF-8 逐字节转为 %XX, 空格为 %20;
+ * 解码同时兼容表单格式的 '+'
+ */
 public class GURLPramsUtils {
-	
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    /**
+     * RFC 3986 unreserved
+     */
+    static final boolean[] UNRESERVED = new boolean[128];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) UNRESERVED[c] = true;
+        for (char c = 'A'; c <= 'Z'; c++) UNRESERVED[c] = true;
+        for (char c = '0'; c <= '9'; c++) UNRESERVED[c] = true;
+        UNRESERVED['-'] = true;
+        UNRESERVED['.'] = true;
+        UNRESERVED['_'] = true;
+        UNRESERVED['~'] = true;
+    }
+
     private GURLPramsUtils() {
         ///
     }
@@ -21,45 +49,645 @@ public class GURLPramsUtils {
     }
 
     /**
-     * URL拼接, 通常用于GET请求
+     * URL拼接, 通常用于GET请求; baseUrl 已带参数时追加在后面, 带有 #fragment 时插入到 # 之前
      *
      * @param baseUrl      url
-     * @param map          参数列表
+     * @param map          参数列表, 为空时原样返回 baseUrl
      * @param needEncoding 是否需要URL编码
      * @return
      */
     public static String urlSplicing(String baseUrl, Map<String, String> map, boolean needEncoding) {
-        if (baseUrl.lastIndexOf("?") == -1) baseUrl += "?";
-        return baseUrl + (needEncoding ? encoding(map) : original(map));
+        if (map == null || map.isEmpty()) return baseUrl;
+        return new QueryBuilder(baseUrl, map.size()).addAll(map, needEncoding).build();
     }
 
     /**
-     * Url参数编码, 通常用于GET请求
+     * Url参数编码, 键与值都会编码, 通常用于GET请求
      *
      * @param map 参数列表
-     * @return
+     * @return 不含 '?' 的参数串, map 为空时返回 ""
      */
     public static String encoding(Map<String, String> map) {
-        StringBuilder builder = new StringBuilder();
-        for (Map.Entry<String, String> entry : map.entrySet()) {
-            builder.append(entry.getKey()).append("=").append(URLEncoder.encode(entry.getValue())).append("&");
-        }
-        builder.deleteCharAt(builder.length() - 1);
-        return builder.toString();
+        if (map == null || map.isEmpty()) return "";
+        return new QueryBuilder(null, map.size()).addAll(map, true).build();
     }
 
     /**
      * 将Map转换为URL参数类型, 需要注意的是该参数作为原始参数, 并未 encoding
      *
      * @param map 参数列表
-     * @return
+     * @return map 为空时返回 ""
      */
     public static String original(Map<String, String> map) {
-        StringBuilder builder = new StringBuilder();
-        for (Map.Entry<String, String> entry : map.entrySet()) {
-            builder.append(entry.getKey()).append("=").append(entry.getValue()).append("&");
+        if (map == null || map.isEmpty()) return "";
+        return new QueryBuilder(null, map.size()).addAll(map, false).build();
+    }
+
+    /**
+     * 编码单个键或值
+     */
+    @NonNull
+    public static String encode(@NonNull String s) {
+        StringBuilder builder = new StringBuilder(s.length() + 16);
+        appendEncoded(builder, s, UNRESERVED);
+        return builder.toString();
+    }
+
+    /**
+     * 解码单个键或值, '+' 视为空格, 不合法的 %XX 原样保留
+     */
+    @NonNull
+    public static String decode(@NonNull String s) {
+        return decode(s, 0, s.length());
+    }
+
+    /**
+     * 解析 URL 或参数串中的参数, 保持出现顺序, 同名参数按顺序放入同一个列表
+     *
+     * @param urlOrQuery 完整 URL 或 a=1&b=2 形式的参数串
+     * @return 参数表, 没有参数时为空
+     */
+    @NonNull
+    public static Map<String, List<String>> parseQuery(@Nullable String urlOrQuery) {
+        Map<String, List<String>> result = new LinkedHashMap<>();
+        if (urlOrQuery == null) return result;
+        int end = urlOrQuery.indexOf('#');
+        if (end < 0) end = urlOrQuery.length();
+        int start = urlOrQuery.indexOf('?');
+        if (start >= 0 && start < end) {
+            start++;
+        } else if (hasScheme(urlOrQuery)) {
+            //完整 URL 但没有参数
+            return result;
+        } else {
+            start = 0;
+        }
+
+        int pos = start;
+        while (pos < end) {
+            int amp = urlOrQuery.indexOf('&', pos);
+            if (amp < 0 || amp > end) amp = end;
+            if (amp > pos) {
+                int eq = urlOrQuery.indexOf('=', pos);
+                String key;
+                String value;
+                if (eq < 0 || eq > amp) {
+                    key = decode(urlOrQuery, pos, amp);
+                    value = "";
+                } else {
+                    key = decode(urlOrQuery, pos, eq);
+                    value = decode(urlOrQuery, eq + 1, amp);
+                }
+                List<String> values = result.get(key);
+                if (values == null) {
+                    values = new ArrayList<>(1);
+                    result.put(key, values);
+                }
+                values.add(value);
+            }
+            pos = amp + 1;
+        }
+        return result;
+    }
+
+    /**
+     * 以 scheme:// 开头, 如 redirect=https://x.com 这样 "://" 出现在参数值中的不算
+     */
+    private static boolean hasScheme(String s) {
+        int colon = s.indexOf("://");
+        if (colon <= 0) return false;
+        //scheme = ALPHA *( ALPHA / DIGIT / "+" / "-" / "." )
+        for (int i = 0; i < colon; i++) {
+            char c = s.charAt(i);
+            boolean alpha = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+            if (!alpha && (i == 0 || ((c < '0' || c > '9') && c != '+' && c != '-' && c != '.'))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * 解析后取某个参数的第一个值
+     */
+    @Nullable
+    public static String getQueryParameter(@Nullable String urlOrQuery, @NonNull String name) {
+        List<String> values = parseQuery(urlOrQuery).get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    //----------- 规范化 -----------//
+
+    /**
+     * 规范化 URL, 用作缓存与请求合并的键:
+     * scheme/host 小写, 去掉默认端口与 #fragment, 统一百分号编码(unreserved 字符解码, 其余大写 %XX),
+     * 参数按键稳定排序(同名参数保持原有顺序, 其顺序可能有意义), 没有 '=' 的参数原样保留, 空路径补为 "/"
+     *
+     * @param url 完整 URL
+     * @return 规范化后的 URL
+     */
+    @NonNull
+    public static String canonicalize(@NonNull String url) {
+        return canonicalize(url, false);
+    }
+
+    /**
+     * @param url           完整 URL
+     * @param stripTracking 是否去掉 utm_* 、gclid 等跟踪参数
+     */
+    @NonNull
+    public static String canonicalize(@NonNull String url, boolean stripTracking) {
+        StringBuilder builder = new StringBuilder(url.length() + 8);
+        appendCanonical(builder, url, stripTracking);
+        return builder.toString();
+    }
+
+    /**
+     * 规范化 URL 的 64 位 FNV-1a 哈希, 与 canonicalize 的结果逐字符一致, 但不生成任何中间字符串
+     */
+    public static long canonicalHash(@NonNull String url) {
+        return canonicalHash(url, false);
+    }
+
+    public static long canonicalHash(@NonNull String url, boolean stripTracking) {
+        Fnv64 hash = new Fnv64();
+        new Canonicalizer(url, stripTracking).writeTo(hash);
+        return hash.value;
+    }
+
+    /**
+     * 把规范化的 URL 直接追加到 builder
+     */
+    static void appendCanonical(StringBuilder builder, String url, boolean stripTracking) {
+        new Canonicalizer(url, stripTracking).writeTo(builder::append);
+    }
+
+    ////
+
+    /**
+     * 按 UTF-8 单遍编码, safe 中为 true 的 ASCII 字符原样保留
+     */
+    static void appendEncoded(StringBuilder builder, CharSequence s, boolean[] safe) {
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                if (safe[c]) {
+                    builder.append(c);
+                } else {
+                    appendEscaped(builder, c);
+                }
+            } else if (c < 0x800) {
+                appendEscaped(builder, 0xC0 | (c >> 6));
+                appendEscaped(builder, 0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                appendEscaped(builder, 0xF0 | (codePoint >> 18));
+                appendEscaped(builder, 0x80 | ((codePoint >> 12) & 0x3F));
+                appendEscaped(builder, 0x80 | ((codePoint >> 6) & 0x3F));
+                appendEscaped(builder, 0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                //孤立的代理项, 与 String.getBytes(UTF_8) 一致编码为 '?'
+                appendEscaped(builder, '?');
+            } else {
+                appendEscaped(builder, 0xE0 | (c >> 12));
+                appendEscaped(builder, 0x80 | ((c >> 6) & 0x3F));
+                appendEscaped(builder, 0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private static void appendEscaped(StringBuilder builder, int b) {
+        builder.append('%').append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+    }
+
+    static int hexValue(char c) {
+        if (c >= '0' && c <= '9') return c - '0';
+        if (c >= 'A' && c <= 'F') return c - 'A' + 10;
+        if (c >= 'a' && c <= 'f') return c - 'a' + 10;
+        return -1;
+    }
+
+    static String decode(String s, int start, int end) {
+        //没有需要解码的字符时直接截取
+        int i = start;
+        while (i < end) {
+            char c = s.charAt(i);
+            if (c == '%' || c == '+') break;
+            i++;
+        }
+        if (i == end) return s.substring(start, end);
+
+        StringBuilder builder = new StringBuilder(end - start);
+        builder.append(s, start, i);
+        byte[] bytes = null;
+        while (i < end) {
+            char c = s.charAt(i);
+            if (c == '+') {
+                builder.append(' ');
+                i++;
+            } else if (isEscape(s, i, end)) {
+                //连续的 %XX 作为一段 UTF-8 字节解码
+                int count = 0;
+                if (bytes == null) bytes = new byte[(end - i) / 3];
+                while (i < end && isEscape(s, i, end)) {
+                    bytes[count++] = (byte) ((hexValue(s.charAt(i + 1)) << 4) | hexValue(s.charAt(i + 2)));
+                    i += 3;
+                }
+                builder.append(new String(bytes, 0, count, StandardCharsets.UTF_8));
+            } else {
+                builder.append(c);
+                i++;
+            }
         }
-        builder.deleteCharAt(builder.length() - 1);
         return builder.toString();
     }
+
+    private static boolean isEscape(String s, int i, int end) {
+        return s.charAt(i) == '%' && i + 2 < end && hexValue(s.charAt(i + 1)) >= 0 && hexValue(s.charAt(i + 2)) >= 0;
+    }
+
+    ////
+
+    /**
+     * 可重复使用的参数拼接器, 内部的 StringBuilder 在 reset 后复用
+     * <pre>
+     * QueryBuilder builder = new QueryBuilder(baseUrl, 4);
+     * String url = builder.add("page", "1").add("q", keyword).build();
+     * </pre>
+     */
+    public static final class QueryBuilder {
+        private final StringBuilder builder;
+        private String fragment;
+        private boolean needSeparator;
+
+        public QueryBuilder() {
+            this(null, 8);
+        }
+
+        /**
+         * @param baseUrl      url, 传 null 只生成参数串
+         * @param expectedSize 预计的参数个数, 用于预分配容量
+         */
+        public QueryBuilder(@Nullable String baseUrl, int expectedSize) {
+            builder = new StringBuilder((baseUrl == null ? 0 : baseUrl.length()) + Math.max(1, expectedSize) * 24);
+            reset(baseUrl);
+        }
+
+        /**
+         * 清空已添加的参数, 换一个 baseUrl 继续使用
+         */
+        public QueryBuilder reset(@Nullable String baseUrl) {
+            builder.setLength(0);
+            fragment = null;
+            needSeparator = false;
+            if (baseUrl == null) return this;
+
+            int hash = baseUrl.indexOf('#');
+            int end = hash < 0 ? baseUrl.length() : hash;
+            if (hash >= 0) fragment = baseUrl.substring(hash);
+            builder.append(baseUrl, 0, end);
+            int question = baseUrl.indexOf('?');
+            if (question < 0 || question >= end) {
+                builder.append('?');
+            } else {
+                char last = builder.charAt(builder.length() - 1);
+                needSeparator = last != '?' && last != '&';
+            }
+            return this;
+        }
+
+        public QueryBuilder add(@NonNull String key, @Nullable String value) {
+            return add(key, value, true);
+        }
+
+        /**
+         * @param encode 是否编码, false 时原样拼接
+         */
+        public QueryBuilder add(@NonNull String key, @Nullable String value, boolean encode) {
+            if (needSeparator) builder.append('&');
+            needSeparator = true;
+            if (encode) {
+                appendEncoded(builder, key, UNRESERVED);
+                builder.append('=');
+                if (value != null) appendEncoded(builder, value, UNRESERVED);
+            } else {
+                builder.append(key).append('=');
+                if (value != null) builder.append(value);
+            }
+            return this;
+        }
+
+        public QueryBuilder addAll(@Nullable Map<String, String> map) {
+            return addAll(map, true);
+        }
+
+        public QueryBuilder addAll(@Nullable Map<String, String> map, boolean encode) {
+            if (map == null) return this;
+            for (Map.Entry<String, String> entry : map.entrySet()) {
+                add(entry.getKey(), entry.getValue(), encode);
+            }
+            return this;
+        }
+
+        @NonNull
+        public String build() {
+            int length = builder.length();
+            //没有参数时去掉末尾多余的 '?'
+            if (!needSeparator && length > 0 && builder.charAt(length - 1) == '?') length--;
+            if (fragment == null) return builder.substring(0, length);
+            return new StringBuilder(length + fragment.length()).append(builder, 0, length).append(fragment).toString();
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return build();
+        }
+    }
+
+    ////
+
+    private static final String[] TRACKING_PARAMS = {
+            "gclid", "dclid", "fbclid", "msclkid", "yclid", "twclid", "igshid", "mc_cid", "mc_eid", "_ga", "_gl",
+    };
+    /**
+     * 路径中原样保留的字符: unreserved + sub-delims + ':' '@' '/'
+     */
+    private static final boolean[] PATH_SAFE = new boolean[128];
+    /**
+     * 参数键值中原样保留的字符: 同上, 但不含分隔用的 '&' '='
+     */
+    private static final boolean[] QUERY_SAFE = new boolean[128];
+
+    static {
+        for (int c = 0; c < 128; c++) {
+            PATH_SAFE[c] = UNRESERVED[c] || "!$&'()*+,;=:@/".indexOf(c) >= 0;
+            QUERY_SAFE[c] = UNRESERVED[c] || "!$'()*+,;:@/?".indexOf(c) >= 0;
+        }
+    }
+
+    private interface CharSink {
+        void append(char c);
+    }
+
+    private static final class Fnv64 implements CharSink {
+        long value = 0xcbf29ce484222325L;
+
+        @Override
+        public void append(char c) {
+            //规范化结果只含 ASCII
+            value ^= c;
+            value *= 0x100000001b3L;
+        }
+    }
+
+    /**
+     * 按规范化规则逐字符读取 [pos, end) 范围, 用于输出与比较, 不产生中间字符串
+     */
+    private static final class Cursor {
+        private final char[] pending = new char[12];
+        private String s;
+        private boolean[] safe;
+        private int pos;
+        private int end;
+        private int pendingPos;
+        private int pendingLen;
+
+        Cursor reset(String s, int start, int end, boolean[] safe) {
+            this.s = s;
+            this.pos = start;
+            this.end = end;
+            this.safe = safe;
+            this.pendingPos = 0;
+            this.pendingLen = 0;
+            return this;
+        }
+
+        /**
+         * @return 下一个字符, 结束时为 -1
+         */
+        int next() {
+            if (pendingPos < pendingLen) return pending[pendingPos++];
+            if (pos >= end) return -1;
+            char c = s.charAt(pos);
+            if (c == '%') {
+                int hi = pos + 2 < end ? hexValue(s.charAt(pos + 1)) : -1;
+                int lo = hi >= 0 ? hexValue(s.charAt(pos + 2)) : -1;
+                if (lo < 0) {
+                    //不完整的转义, '%' 本身需要编码
+                    pos++;
+                    return escape('%');
+                }
+                pos += 3;
+                int value = (hi << 4) | lo;
+                if (value < 0x80 && UNRESERVED[value]) return value;
+                return escape(value);
+            }
+            pos++;
+            if (c < 0x80) {
+                return safe[c] ? c : escape(c);
+            }
+            pendingLen = 0;
+            pendingPos = 0;
+            if (c < 0x800) {
+                push(0xC0 | (c >> 6));
+                push(0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && pos < end && Character.isLowSurrogate(s.charAt(pos))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(pos++));
+                push(0xF0 | (codePoint >> 18));
+                push(0x80 | ((codePoint >> 12) & 0x3F));
+                push(0x80 | ((codePoint >> 6) & 0x3F));
+                push(0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                push('?');
+            } else {
+                push(0xE0 | (c >> 12));
+                push(0x80 | ((c >> 6) & 0x3F));
+                push(0x80 | (c & 0x3F));
+            }
+            return pending[pendingPos++];
+        }
+
+        private int escape(int b) {
+            pendingPos = 0;
+            pendingLen = 0;
+            push(b);
+            return pending[pendingPos++];
+        }
+
+        private void push(int b) {
+            pending[pendingLen++] = '%';
+            pending[pendingLen++] = HEX[(b >> 4) & 0xF];
+            pending[pendingLen++] = HEX[b & 0xF];
+        }
+
+        void writeTo(CharSink sink) {
+            int c;
+            while ((c = next()) >= 0) sink.append((char) c);
+        }
+    }
+
+    /**
+     * 解析出 URL 各部分的范围, 再按规范化规则输出
+     */
+    private static final class Canonicalizer {
+        private final String url;
+        private final Cursor left = new Cursor();
+        private final Cursor right = new Cursor();
+        private int schemeEnd = -1;
+        private int authorityStart;
+        private int hostStart;
+        private int hostEnd;
+        private int portStart = -1;
+        private int pathStart;
+        private int pathEnd;
+        private boolean defaultPort;
+        //每个参数 4 个下标: keyStart, keyEnd, valueStart, valueEnd
+        private int[] params = new int[0];
+        private int paramCount;
+
+        Canonicalizer(String url, boolean stripTracking) {
+            this.url = url;
+            int end = url.indexOf('#');
+            if (end < 0) end = url.length();
+            int scheme = url.indexOf("://");
+            int question = url.indexOf('?');
+            if (question > end) question = -1;
+            if (scheme > 0 && (question < 0 || scheme < question)) {
+                schemeEnd = scheme;
+                authorityStart = scheme + 3;
+                int authorityEnd = authorityStart;
+                while (authorityEnd < end && "/?".indexOf(url.charAt(authorityEnd)) < 0) authorityEnd++;
+                int at = url.lastIndexOf('@', authorityEnd - 1);
+                hostStart = at >= authorityStart ? at + 1 : authorityStart;
+                hostEnd = authorityEnd;
+                int bracket = url.lastIndexOf(']', authorityEnd - 1);
+                int colon = url.lastIndexOf(':', authorityEnd - 1);
+                if (colon >= hostStart && colon > bracket) {
+                    hostEnd = colon;
+                    portStart = colon + 1;
+                    defaultPort = portStart == authorityEnd || isDefaultPort(authorityEnd);
+                }
+                pathStart = authorityEnd;
+            }
+            pathEnd = question >= 0 ? question : end;
+            if (question >= 0) parseQuery(question + 1, end, stripTracking);
+            sortParams();
+        }
+
+        private boolean isDefaultPort(int portEnd) {
+            int port = 0;
+            for (int i = portStart; i < portEnd; i++) {
+                char c = url.charAt(i);
+                if (c < '0' || c > '9' || port > 65535) return false;
+                port = port * 10 + (c - '0');
+            }
+            if (schemeIs("http") || schemeIs("ws")) return port == 80;
+            if (schemeIs("https") || schemeIs("wss")) return port == 443;
+            return false;
+        }
+
+        private boolean schemeIs(String scheme) {
+            return schemeEnd == scheme.length() && url.regionMatches(true, 0, scheme, 0, schemeEnd);
+        }
+
+        private void parseQuery(int start, int end, boolean stripTracking) {
+            int pos = start;
+            while (pos < end) {
+                int amp = url.indexOf('&', pos);
+                if (amp < 0 || amp > end) amp = end;
+                if (amp > pos) {
+                    int eq = url.indexOf('=', pos);
+                    if (eq < 0 || eq > amp) eq = amp;
+                    if (!stripTracking || !isTracking(pos, eq)) {
+                        if (params.length < (paramCount + 1) * 4) {
+                            params = Arrays.copyOf(params, Math.max(16, params.length * 2));
+                        }
+                        int index = paramCount++ * 4;
+                        params[index] = pos;
+                        params[index + 1] = eq;
+                        params[index + 2] = Math.min(eq + 1, amp);
+                        params[index + 3] = amp;
+                    }
+                }
+                pos = amp + 1;
+            }
+        }
+
+        private boolean isTracking(int keyStart, int keyEnd) {
+            int length = keyEnd - keyStart;
+            if (length > 4 && url.regionMatches(true, keyStart, "utm_", 0, 4)) return true;
+            for (String name : TRACKING_PARAMS) {
+                if (name.length() == length && url.regionMatches(true, keyStart, name, 0, length)) return true;
+            }
+            return false;
+        }
+
+        /**
+         * 参数通常不多, 用插入排序; 只比较键, 同名参数保持原有顺序, 如 sort=name&sort=date 与 sort=date&sort=name 含义不同
+         */
+        private void sortParams() {
+            for (int i = 1; i < paramCount; i++) {
+                int j = i;
+                while (j > 0 && compareParams(j - 1, j) > 0) {
+                    swapParams(j - 1, j);
+                    j--;
+                }
+            }
+        }
+
+        private int compareParams(int a, int b) {
+            return compare(params[a * 4], params[a * 4 + 1], params[b * 4], params[b * 4 + 1]);
+        }
+
+        private int compare(int aStart, int aEnd, int bStart, int bEnd) {
+            left.reset(url, aStart, aEnd, QUERY_SAFE);
+            right.reset(url, bStart, bEnd, QUERY_SAFE);
+            while (true) {
+                int a = left.next();
+                int b = right.next();
+                if (a != b || a < 0) return a - b;
+            }
+        }
+
+        private void swapParams(int a, int b) {
+            for (int k = 0; k < 4; k++) {
+                int tmp = params[a * 4 + k];
+                params[a * 4 + k] = params[b * 4 + k];
+                params[b * 4 + k] = tmp;
+            }
+        }
+
+        void writeTo(CharSink sink) {
+            if (schemeEnd > 0) {
+                appendLower(sink, 0, schemeEnd);
+                sink.append(':');
+                sink.append('/');
+                sink.append('/');
+                //userinfo 原样保留
+                for (int i = authorityStart; i < hostStart; i++) sink.append(url.charAt(i));
+                appendLower(sink, hostStart, hostEnd);
+                if (portStart >= 0 && !defaultPort) {
+                    sink.append(':');
+                    for (int i = portStart; i < pathStart; i++) sink.append(url.charAt(i));
+                }
+                if (pathStart == pathEnd) sink.append('/');
+            }
+            left.reset(url, pathStart, pathEnd, PATH_SAFE).writeTo(sink);
+            for (int i = 0; i < paramCount; i++) {
+                sink.append(i == 0 ? '?' : '&');
+                left.reset(url, params[i * 4], params[i * 4 + 1], QUERY_SAFE).writeTo(sink);
+                //keyEnd == end 表示没有 '=', ?flag 与 ?flag= 不视为相同
+                if (params[i * 4 + 1] < params[i * 4 + 3]) {
+                    sink.append('=');
+                    left.reset(url, params[i * 4 + 2], params[i * 4 + 3], QUERY_SAFE).writeTo(sink);
+                }
+            }
+        }
+
+        private void appendLower(CharSink sink, int start, int end) {
+            for (int i = start; i < end; i++) {
+                char c = url.charAt(i);
+                sink.append(c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c);
+            }
+        }
+    }
 }
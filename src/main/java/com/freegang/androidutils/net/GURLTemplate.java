@@ -0,0 +1,232 @@
+package com.freegang.androidutils.net;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 预编译的 URL 模板, 如 https://api.example.com/users/{id}/items?page={page}&q={q}
+ * <p>
+ * 模板只解析一次, 拆分为字面量与占位符; 展开时按占位符所在位置编码: 路径中的值会编码 '/' '?' '#',
+ * 参数中的值只保留 unreserved 字符; {+name} 表示原样插入, 不做编码. 字面量部分视为已编码, 原样输出.
+ * 路径中的值不能是 "." 或 "..", OkHttp 会把它们(包括 %2E 形式)当作相对路径解析;
+ * 主机与端口中只允许 {+name}, 这部分不能按路径编码
+ * <pre>
+ * private static final GURLTemplate ITEMS = GURLTemplate.compile("/users/{id}/items?page={page}");
+ * String url = ITEMS.expand(userId, page);
+ * </pre>
+ * 实例不可变, 可在多线程中共享
+ */
+public final class GURLTemplate {
+    private static final int PATH = 0;
+    private static final int QUERY = 1;
+    private static final int RAW = 2;
+
+    /**
+     * 路径段中原样保留的字符: unreserved + sub-delims + ':' '@'
+     */
+    private static final boolean[] PATH_SEGMENT_SAFE = new boolean[128];
+
+    static {
+        for (int c = 0; c < 128; c++) {
+            PATH_SEGMENT_SAFE[c] = GURLPramsUtils.UNRESERVED[c] || "!$&'()*+,;=:@".indexOf(c) >= 0;
+        }
+    }
+
+    private static final ThreadLocal<StringBuilder> BUILDER = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(256);
+        }
+    };
+
+    private final String template;
+    //literals[i] 之后紧跟第 i 个占位符, 最后一个字面量之后没有占位符
+    private final String[] literals;
+    private final int[] placeholders;
+    private final int[] kinds;
+    private final String[] names;
+    private final int estimatedLength;
+
+    private GURLTemplate(String template, String[] literals, int[] placeholders, int[] kinds, String[] names, int literalLength) {
+        this.template = template;
+        this.literals = literals;
+        this.placeholders = placeholders;
+        this.kinds = kinds;
+        this.names = names;
+        this.estimatedLength = literalLength + placeholders.length * 16;
+    }
+
+    /**
+     * 编译模板
+     *
+     * @param template 模板, 占位符为 {name} 或 {+name}, 同名占位符可以出现多次
+     * @throws IllegalArgumentException 括号不匹配、占位符名为空或主机与端口中有需要编码的占位符
+     */
+    @NonNull
+    public static GURLTemplate compile(@NonNull String template) {
+        List<String> literals = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        List<int[]> placeholders = new ArrayList<>();
+        int literalLength = 0;
+        int context = PATH;
+        int literalStart = 0;
+        //scheme:// 之后到第一个 '/' '?' '#' 之前是 authority
+        int authorityStart = authorityStart(template);
+        int authorityEnd = authorityStart;
+        if (authorityStart >= 0) {
+            while (authorityEnd < template.length() && "/?#".indexOf(template.charAt(authorityEnd)) < 0) authorityEnd++;
+        }
+        for (int i = 0; i < template.length(); i++) {
+            char c = template.charAt(i);
+            if (c == '?' || c == '#') {
+                context = QUERY;
+            } else if (c == '}') {
+                throw new IllegalArgumentException("unmatched '}' at " + i + ": " + template);
+            } else if (c == '{') {
+                int close = template.indexOf('}', i + 1);
+                if (close < 0) throw new IllegalArgumentException("unclosed '{' at " + i + ": " + template);
+                boolean raw = i + 1 < close && template.charAt(i + 1) == '+';
+                String name = template.substring(raw ? i + 2 : i + 1, close);
+                if (name.isEmpty() || name.indexOf('{') >= 0) {
+                    throw new IllegalArgumentException("bad placeholder at " + i + ": " + template);
+                }
+                if (!raw && i >= authorityStart && i < authorityEnd) {
+                    throw new IllegalArgumentException("placeholder in host or port, use {+" + name + "}: " + template);
+                }
+                String literal = template.substring(literalStart, i);
+                literals.add(literal);
+                literalLength += literal.length();
+                int index = names.indexOf(name);
+                if (index < 0) {
+                    index = names.size();
+                    names.add(name);
+                }
+                placeholders.add(new int[]{index, raw ? RAW : context});
+                i = close;
+                literalStart = close + 1;
+            }
+        }
+        String last = template.substring(literalStart);
+        literals.add(last);
+        literalLength += last.length();
+
+        int[] indexes = new int[placeholders.size()];
+        int[] kinds = new int[placeholders.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = placeholders.get(i)[0];
+            kinds[i] = placeholders.get(i)[1];
+        }
+        return new GURLTemplate(template, literals.toArray(new String[0]), indexes, kinds, names.toArray(new String[0]), literalLength);
+    }
+
+    /**
+     * 模板以 scheme:// 开头时返回 authority 的起始位置, 否则返回 -1
+     */
+    private static int authorityStart(String template) {
+        int separator = template.indexOf("://");
+        if (separator <= 0) return -1;
+        for (int i = 0; i < separator; i++) {
+            char c = template.charAt(i);
+            boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                    || (i > 0 && ((c >= '0' && c <= '9') || c == '+' || c == '-' || c == '.'));
+            if (!valid) return -1;
+        }
+        return separator + 3;
+    }
+
+    /**
+     * 占位符名称, 按首次出现的顺序, 也是 expand(Object...) 的参数顺序
+     */
+    @NonNull
+    public String[] getNames() {
+        return names.clone();
+    }
+
+    /**
+     * 按占位符首次出现的顺序展开
+     *
+     * @param values 与 getNames 一一对应, null 视为空字符串
+     * @throws IllegalArgumentException 路径中的值为 "." 或 ".."
+     */
+    @NonNull
+    public String expand(@NonNull Object... values) {
+        StringBuilder builder = BUILDER.get();
+        builder.setLength(0);
+        builder.ensureCapacity(estimatedLength);
+        expandTo(builder, values);
+        return builder.toString();
+    }
+
+    /**
+     * 按名称展开
+     *
+     * @throws IllegalArgumentException 缺少某个占位符的值, 或路径中的值为 "." 或 ".."
+     */
+    @NonNull
+    public String expand(@NonNull Map<String, ?> values) {
+        StringBuilder builder = BUILDER.get();
+        builder.setLength(0);
+        builder.ensureCapacity(estimatedLength);
+        expandTo(builder, values);
+        return builder.toString();
+    }
+
+    /**
+     * 展开并追加到调用方提供的 builder, 可配合 GURLPramsUtils.QueryBuilder 继续追加参数
+     */
+    public void expandTo(@NonNull StringBuilder builder, @NonNull Object... values) {
+        if (values.length != names.length) {
+            throw new IllegalArgumentException("expected " + names.length + " values but was " + values.length + ": " + template);
+        }
+        for (int i = 0; i < placeholders.length; i++) {
+            builder.append(literals[i]);
+            append(builder, values[placeholders[i]], kinds[i], names[placeholders[i]]);
+        }
+        builder.append(literals[placeholders.length]);
+    }
+
+    public void expandTo(@NonNull StringBuilder builder, @NonNull Map<String, ?> values) {
+        for (int i = 0; i < placeholders.length; i++) {
+            String name = names[placeholders[i]];
+            Object value = values.get(name);
+            if (value == null && !values.containsKey(name)) {
+                throw new IllegalArgumentException("missing value for {" + name + "}: " + template);
+            }
+            builder.append(literals[i]);
+            append(builder, value, kinds[i], name);
+        }
+        builder.append(literals[placeholders.length]);
+    }
+
+    private static void append(StringBuilder builder, Object value, int kind, String name) {
+        if (value == null) return;
+        //整数只含 unreserved 字符, 直接追加, 不生成字符串
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            builder.append(((Number) value).longValue());
+            return;
+        }
+        CharSequence s = value instanceof CharSequence ? (CharSequence) value : String.valueOf(value);
+        if (kind == RAW) {
+            builder.append(s);
+        } else {
+            if (kind == PATH && isDotSegment(s)) {
+                throw new IllegalArgumentException("'" + s + "' is not allowed in path placeholder {" + name + "}");
+            }
+            GURLPramsUtils.appendEncoded(builder, s, kind == PATH ? PATH_SEGMENT_SAFE : GURLPramsUtils.UNRESERVED);
+        }
+    }
+
+    private static boolean isDotSegment(CharSequence s) {
+        int length = s.length();
+        return (length == 1 || length == 2) && s.charAt(0) == '.' && s.charAt(length - 1) == '.';
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return template;
+    }
+}
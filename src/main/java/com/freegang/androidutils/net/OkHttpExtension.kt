@@ -0,0 +1,78 @@
+package com.freegang.androidutils.net
+
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.suspendCancellableCoroutine
+import okhttp3.Call
+import okhttp3.Callback
+import okhttp3.Request
+import okhttp3.Response
+import java.io.IOException
+import kotlin.coroutines.resume
+import kotlin.coroutines.resumeWithException
+
+/**
+ * GOkHttpUtils Extension
+ *
+ * 需要 kotlinx-coroutines 支持; 请求与回调接口一样经过 GHttpScheduler 调度,
+ * 协程被取消时会同时取消排队中的请求或底层 Call, 调用方负责关闭返回的 RespResult
+ */
+
+/**
+ * 返回时只收到了响应头, 读取 RespResult 的响应体是阻塞的网络 IO, 不要在主线程中进行; 只需要字符串时使用 getStringAwait
+ */
+@OptIn(ExperimentalCoroutinesApi::class)
+suspend fun GOkHttpUtils.await(request: Request): GOkHttpUtils.RespResult {
+    return suspendCancellableCoroutine { continuation ->
+        val handle = dispatch(request, object : Callback {
+            override fun onFailure(call: Call, e: IOException) {
+                continuation.resumeWithException(e)
+            }
+
+            override fun onResponse(call: Call, response: Response) {
+                val result = GOkHttpUtils.RespResult(response)
+                //已被取消, 没有人会关闭它
+                continuation.resume(result) { result.close() }
+            }
+        })
+        continuation.invokeOnCancellation { handle.cancel() }
+    }
+}
+
+suspend fun GOkHttpUtils.getDataAwait(url: String): GOkHttpUtils.RespResult {
+    return await(Request.Builder().url(url).build())
+}
+
+suspend fun GOkHttpUtils.postJsonAwait(url: String, json: String): GOkHttpUtils.RespResult {
+    return await(Request.Builder().url(url).post(buildJsonBody(json)).build())
+}
+
+/**
+ * 读取响应体为字符串并关闭响应, 响应体在 OkHttp 的线程中读取, 可以在主线程中调用
+ */
+suspend fun GOkHttpUtils.getStringAwait(url: String): String {
+    return awaitBody(Request.Builder().url(url).build()) { GOkHttpUtils.RespResult(it).string() }
+}
+
+/**
+ * 在 OkHttp 的回调线程中读取并关闭响应, 只把读取结果交给协程
+ */
+private suspend fun <T> GOkHttpUtils.awaitBody(request: Request, read: (Response) -> T): T {
+    return suspendCancellableCoroutine { continuation ->
+        val handle = dispatch(request, object : Callback {
+            override fun onFailure(call: Call, e: IOException) {
+                continuation.resumeWithException(e)
+            }
+
+            override fun onResponse(call: Call, response: Response) {
+                val result = try {
+                    response.use(read)
+                } catch (e: Exception) {
+                    continuation.resumeWithException(e)
+                    return
+                }
+                continuation.resume(result)
+            }
+        })
+        continuation.invokeOnCancellation { handle.cancel() }
+    }
+}
@@ -0,0 +1,152 @@
+package com.freegang.androidutils.json;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class GJSONPathTest {
+    private static final String STORE = "{\"data\": {\"items\": ["
+            + "{\"name\": \"a\", \"price\": 5, \"stock\": 0, \"tag\": null},"
+            + "{\"name\": \"b\", \"price\": 12.5, \"stock\": 3, \"tag\": \"new\"},"
+            + "{\"name\": \"c\", \"price\": 20, \"stock\": 1}"
+            + "], \"a.b\": true, \"total\": 3}}";
+
+    /**
+     * 用 GJSONReader 构建树, 与 Android 的 org.json 一样小数为 Double
+     */
+    private static JSONObject store() throws IOException {
+        return (JSONObject) new GJSONReader(new StringReader(STORE)).readValue();
+    }
+
+    private static List<Object> find(String path) throws IOException {
+        return GJSONPath.compile(path).find(store());
+    }
+
+    private static List<Object> findStreaming(String path) throws IOException {
+        return GJSONPath.compile(path).find(new GJSONReader(new StringReader(STORE)));
+    }
+
+    //----------- 编译 -----------//
+
+    @Test
+    public void compile_rejectsUnsupportedSyntax() {
+        String[] paths = {"$..price", "$[", "$[abc]", "$.a]", "$.items[0:2]", "$.items[?(@.a ~ 1)]", "$.items[?(@.*)]"};
+        for (String path : paths) {
+            try {
+                GJSONPath.compile(path);
+                fail(path);
+            } catch (IllegalArgumentException expected) {
+                //ok
+            }
+        }
+    }
+
+    @Test
+    public void isDefinite_onlyForNamesAndIndices() {
+        assertTrue(GJSONPath.compile("$.data.items[0].name").isDefinite());
+        assertTrue(GJSONPath.compile("data['a.b']").isDefinite());
+        assertFalse(GJSONPath.compile("$.data.items[*].name").isDefinite());
+        assertFalse(GJSONPath.compile("$.data.items[?(@.stock)]").isDefinite());
+        assertEquals("$.data.items[*]", GJSONPath.compile("$.data.items[*]").toString());
+    }
+
+    //----------- 在 JSONObject 上求值 -----------//
+
+    @Test
+    public void find_namesAndIndices() throws IOException {
+        assertEquals(Collections.singletonList("a"), find("$.data.items[0].name"));
+        assertEquals(Collections.singletonList("c"), find("data.items[-1].name"));
+        assertEquals(Collections.singletonList(Boolean.TRUE), find("$.data['a.b']"));
+        assertEquals(Collections.singletonList(3), find("$[\"data\"].total"));
+    }
+
+    @Test
+    public void find_missingOrMismatchedPathIsEmpty() throws IOException {
+        assertTrue(find("$.data.missing").isEmpty());
+        assertTrue(find("$.data.items[3]").isEmpty());
+        assertTrue(find("$.data.items[-4]").isEmpty());
+        assertTrue(find("$.data.total[0]").isEmpty());
+        assertTrue(find("$.data.items.name").isEmpty());
+        assertNull(GJSONPath.compile("$.a").findFirst((Object) null));
+    }
+
+    @Test
+    public void find_wildcardKeepsDocumentOrder() throws IOException {
+        assertEquals(Arrays.<Object>asList("a", "b", "c"), find("$.data.items[*].name"));
+        assertEquals(Arrays.<Object>asList(5, 12.5, 20), find("$.data.items.*.price"));
+        //JSON null 也是匹配的值
+        assertSame(JSONObject.NULL, GJSONPath.compile("$.data.items[*].tag").findFirst(store()));
+    }
+
+    @Test
+    public void find_filters() throws IOException {
+        assertEquals(Arrays.<Object>asList("b", "c"), find("$.data.items[?(@.stock > 0)].name"));
+        assertEquals(Arrays.<Object>asList("a", "b"), find("$.data.items[?(@.price <= 12.5)].name"));
+        assertEquals(Collections.singletonList("b"), find("$.data.items[?(@.name == 'b')].name"));
+        assertEquals(Arrays.<Object>asList("a", "c"), find("$.data.items[?(@.name != 'b')].name"));
+        //只写成员表示存在且不为 null
+        assertEquals(Collections.singletonList("b"), find("$.data.items[?(@.tag)].name"));
+        assertEquals(Collections.singletonList("a"), find("$.data.items[?(@.tag == null)].name"));
+        //类型不同时只有 != 成立
+        assertTrue(find("$.data.items[?(@.name > 1)]").isEmpty());
+    }
+
+    //----------- 在 GJSONReader 上求值 -----------//
+
+    @Test
+    public void findStreaming_matchesTreeEvaluation() throws IOException {
+        String[] paths = {
+                "$.data.items[0].name",
+                "$.data.items[-1].price",
+                "$.data.items[*].name",
+                "$.data.items[?(@.stock > 0)].price",
+                "$.data.items[?(@.tag)]",
+                "$.data['a.b']",
+                "$.data.missing",
+                "$.data.total[0]",
+        };
+        for (String path : paths) {
+            assertEquals(path, String.valueOf(find(path)), String.valueOf(findStreaming(path)));
+        }
+    }
+
+    @Test
+    public void findStreaming_leavesReaderAfterValue() throws IOException {
+        GJSONReader reader = new GJSONReader(new StringReader("[{\"a\": 1}, {\"a\": 2}]"));
+        GJSONPath path = GJSONPath.compile("$.a");
+        reader.beginArray();
+        assertEquals(Collections.singletonList(1), path.find(reader));
+        assertEquals(Collections.singletonList(2), path.find(reader));
+        reader.endArray();
+    }
+
+    @Test
+    public void findFirstStreaming_stopsReadingAtFirstMatch() throws IOException {
+        //第一个匹配之后的内容不完整, 也不会被读取
+        GJSONReader reader = new GJSONReader(new StringReader("{\"items\": [{\"id\": 1}, {\"id\": 2}], \"rest\": [1, 2,"));
+        assertEquals(1, GJSONPath.compile("$.items[*].id").findFirst(reader));
+    }
+
+    @Test
+    public void findStreaming_duplicateNamesTakeFirst() throws IOException {
+        GJSONReader reader = new GJSONReader(new StringReader("{\"a\": 1, \"a\": 2}"));
+        assertEquals(Collections.singletonList(1), GJSONPath.compile("$.a").find(reader));
+    }
+
+    @Test
+    public void findStreaming_returnsOrgJsonValues() throws IOException {
+        Object item = GJSONPath.compile("$.data.items[1]").findFirst(new GJSONReader(new StringReader(STORE)));
+        assertTrue(item instanceof JSONObject);
+        assertEquals("new", ((JSONObject) item).opt("tag"));
+        Object items = GJSONPath.compile("$.data.items").findFirst(new GJSONReader(new StringReader(STORE)));
+        assertEquals(3, ((JSONArray) items).length());
+    }
+}
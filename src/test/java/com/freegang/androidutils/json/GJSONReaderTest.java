@@ -0,0 +1,275 @@
+package com.freegang.androidutils.json;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+public class GJSONReaderTest {
+
+    private static GJSONReader reader(String json) {
+        //缓冲区取最小值, 让 token 跨缓冲区
+        return new GJSONReader(new StringReader(json), 16);
+    }
+
+    //----------- 结构 -----------//
+
+    @Test
+    public void readsNestedDocumentAndTracksPath() throws IOException {
+        GJSONReader reader = reader("{\"data\": {\"items\": [1, {\"price\": 9.5}]}, \"ok\": true, \"none\": null}");
+        reader.beginObject();
+        assertEquals("data", reader.nextName());
+        reader.beginObject();
+        assertEquals("items", reader.nextName());
+        reader.beginArray();
+        assertEquals(1, reader.nextInt());
+        reader.beginObject();
+        assertEquals("price", reader.nextName());
+        assertEquals("$.data.items[1].price", reader.getPath());
+        assertEquals(9.5, reader.nextDouble(), 0);
+        assertEquals(4, reader.getDepth());
+        reader.endObject();
+        assertFalse(reader.hasNext());
+        reader.endArray();
+        reader.endObject();
+        assertEquals("ok", reader.nextName());
+        assertTrue(reader.nextBoolean());
+        assertEquals("none", reader.nextName());
+        assertEquals(GJSONReader.Token.NULL, reader.peek());
+        reader.nextNull();
+        reader.endObject();
+        assertEquals(GJSONReader.Token.END_DOCUMENT, reader.peek());
+    }
+
+    @Test
+    public void skipValueSkipsWholeContainers() throws IOException {
+        GJSONReader reader = reader("[{\"a\": [1, \"x\\\"]\", {\"b\": {}}]}, \"tail\"]");
+        reader.beginArray();
+        reader.skipValue();
+        assertEquals("$[1]", reader.getPath());
+        assertEquals("tail", reader.nextString());
+        reader.endArray();
+    }
+
+    @Test
+    public void readValueBuildsOrgJson() throws IOException {
+        Object value = reader("{\"n\": 1, \"big\": 12345678901, \"d\": 1.5, \"s\": \"x\", \"a\": [true, null]}").readValue();
+        JSONObject object = (JSONObject) value;
+        assertEquals(1, object.opt("n"));
+        assertEquals(12345678901L, object.opt("big"));
+        assertEquals(1.5, object.opt("d"));
+        assertEquals("x", object.opt("s"));
+        JSONArray array = object.optJSONArray("a");
+        assertEquals(Boolean.TRUE, array.opt(0));
+        assertEquals(JSONObject.NULL, array.opt(1));
+    }
+
+    //----------- 字符串 -----------//
+
+    @Test
+    public void decodesEscapesAcrossBuffers() throws IOException {
+        GJSONReader reader = reader("[\"a\\n\\t\\\"\\\\\\/\\u4f60\\u597D b\", \"0123456789abcdef0123456789\"]");
+        reader.beginArray();
+        assertEquals("a\n\t\"\\/你好 b", reader.nextString());
+        assertEquals("0123456789abcdef0123456789", reader.nextString());
+        reader.endArray();
+    }
+
+    @Test
+    public void rejectsUnescapedControlCharacters() throws IOException {
+        assertSyntaxError("[\"a\tb\"]", false);
+        assertSyntaxError("[\"a\nb\"]", true);
+        assertSyntaxError("{\"a\u0001\": 1}", false);
+    }
+
+    //----------- 数字 -----------//
+
+    @Test
+    public void acceptsRfc8259Numbers() throws IOException {
+        GJSONReader reader = reader("[0, -0, 0.5, 10, 1e10, -1.5E-3, 2E+2]");
+        reader.beginArray();
+        assertEquals(0, reader.nextLong());
+        assertEquals(0, reader.nextLong());
+        assertEquals(0.5, reader.nextDouble(), 0);
+        assertEquals(10, reader.nextLong());
+        assertEquals(10000000000L, reader.nextLong());
+        assertEquals(-0.0015, reader.nextDouble(), 0);
+        assertEquals(200, reader.nextInt());
+        reader.endArray();
+    }
+
+    @Test
+    public void rejectsMalformedNumbers() throws IOException {
+        String[] numbers = {"01", "-01", "00", "1.", ".5", "-", "1e", "1e+", "+1", "1.2.3", "1-2"};
+        for (String number : numbers) {
+            GJSONReader reader = reader("[" + number + "]");
+            reader.beginArray();
+            try {
+                reader.peek();
+                fail(number);
+            } catch (GJSONReader.SyntaxException expected) {
+                //ok
+            }
+        }
+    }
+
+    @Test
+    public void nextLongHandlesBoundsAndOverflow() throws IOException {
+        GJSONReader reader = reader("[9223372036854775807, -9223372036854775808, 9223372036854775808, 1.5]");
+        reader.beginArray();
+        assertEquals(Long.MAX_VALUE, reader.nextLong());
+        assertEquals(Long.MIN_VALUE, reader.nextLong());
+        try {
+            reader.nextLong();
+            fail();
+        } catch (NumberFormatException expected) {
+            assertEquals("9223372036854775808", reader.nextString());
+        }
+        try {
+            reader.nextLong();
+            fail();
+        } catch (NumberFormatException expected) {
+            assertEquals(1.5, reader.nextDouble(), 0);
+        }
+        reader.endArray();
+    }
+
+    @Test
+    public void nextIntOverflowKeepsValue() throws IOException {
+        GJSONReader reader = reader("[3000000000, 5, \"-2147483649\"]");
+        reader.beginArray();
+        try {
+            reader.nextInt();
+            fail();
+        } catch (NumberFormatException expected) {
+            assertEquals(3000000000L, reader.nextLong());
+        }
+        assertEquals(5, reader.nextInt());
+        try {
+            reader.nextInt();
+            fail();
+        } catch (NumberFormatException expected) {
+            assertEquals("-2147483649", reader.nextString());
+        }
+        reader.endArray();
+    }
+
+    @Test
+    public void nextLongParsesDecimalsExactly() throws IOException {
+        GJSONReader reader = reader("[9007199254740993.0, 1.5e1, 120e-1, -0.0, 9223372036854775807.00, \"2E3\"]");
+        reader.beginArray();
+        assertEquals(9007199254740993L, reader.nextLong());
+        assertEquals(15, reader.nextLong());
+        assertEquals(12, reader.nextLong());
+        assertEquals(0, reader.nextLong());
+        assertEquals(Long.MAX_VALUE, reader.nextLong());
+        assertEquals(2000, reader.nextLong());
+        reader.endArray();
+    }
+
+    @Test
+    public void nextLongRejectsNonIntegersAndJavaSyntax() throws IOException {
+        String[] values = {"1.5", "1e400", "1e-400", "1e999999999", "9223372036854775808.0",
+                "\"1d\"", "\"0x10\"", "\"007\"", "\"+1\"", "\" 1\"", "\"NaN\""};
+        for (String value : values) {
+            GJSONReader reader = reader("[" + value + "]");
+            reader.beginArray();
+            try {
+                reader.nextLong();
+                fail(value);
+            } catch (NumberFormatException expected) {
+                //值没有被消费
+                reader.skipValue();
+                reader.endArray();
+            }
+        }
+        String[] doubles = {"\"1d\"", "\"Infinity\"", "\".5\""};
+        for (String value : doubles) {
+            GJSONReader reader = reader("[" + value + "]");
+            reader.beginArray();
+            try {
+                reader.nextDouble();
+                fail(value);
+            } catch (NumberFormatException expected) {
+                reader.skipValue();
+            }
+        }
+    }
+
+    @Test
+    public void numericStringsCanBeReadAsNumbers() throws IOException {
+        GJSONReader reader = reader("[\"42\", \"2.5\", \"7\"]");
+        reader.beginArray();
+        assertEquals(42, reader.nextLong());
+        assertEquals(2.5, reader.nextDouble(), 0);
+        assertEquals(7, reader.nextInt());
+        reader.endArray();
+    }
+
+    @Test
+    public void failedNumberReadKeepsStringValue() throws IOException {
+        GJSONReader reader = reader("[\"abc\", \"x1\", 3]");
+        reader.beginArray();
+        try {
+            reader.nextLong();
+            fail();
+        } catch (NumberFormatException expected) {
+            assertEquals(GJSONReader.Token.STRING, reader.peek());
+            assertEquals("abc", reader.nextString());
+        }
+        try {
+            reader.nextDouble();
+            fail();
+        } catch (NumberFormatException expected) {
+            reader.skipValue();
+        }
+        assertEquals("$[2]", reader.getPath());
+        assertEquals(3, reader.nextInt());
+        reader.endArray();
+    }
+
+    //----------- 错误 -----------//
+
+    @Test
+    public void rejectsMalformedStructure() throws IOException {
+        String[] documents = {"[1 2]", "{\"a\" 1}", "{'a': 1}", "[1,]", "[tru]", "{\"a\": 1"};
+        for (String document : documents) {
+            try {
+                reader(document).readValue();
+                fail(document);
+            } catch (GJSONReader.SyntaxException expected) {
+                //ok
+            } catch (EOFException expected) {
+                //不完整的文档
+            }
+        }
+        //顶层只能有一个值
+        GJSONReader reader = reader("{\"a\": 1} x");
+        reader.readValue();
+        try {
+            reader.peek();
+            fail();
+        } catch (GJSONReader.SyntaxException expected) {
+            //ok
+        }
+    }
+
+    private static void assertSyntaxError(String json, boolean skip) throws IOException {
+        GJSONReader reader = reader(json);
+        try {
+            if (skip) {
+                reader.skipValue();
+            } else {
+                reader.readValue();
+            }
+            fail(json);
+        } catch (GJSONReader.SyntaxException expected) {
+            //ok
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.freegang.androidutils.net;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import okhttp3.MediaType;
+import okhttp3.MultipartBody;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSource;
+import okio.Okio;
+
+import static org.junit.Assert.*;
+
+public class GCompressionInterceptorTest {
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    private static final MediaType OCTET_STREAM = MediaType.get("application/octet-stream");
+
+    private final AtomicReference<Request> sent = new AtomicReference<>();
+    private final GCompressionInterceptor compression = new GCompressionInterceptor(1024, 8 * 1024);
+    //不经过网络, 记录压缩之后的请求
+    private final OkHttpClient client = new OkHttpClient.Builder()
+            .addInterceptor(compression)
+            .addInterceptor(chain -> {
+                sent.set(chain.request());
+                return new Response.Builder()
+                        .request(chain.request())
+                        .protocol(Protocol.HTTP_1_1)
+                        .code(200)
+                        .message("OK")
+                        .body(ResponseBody.create(null, ""))
+                        .build();
+            })
+            .build();
+
+    private static String text(int length) {
+        char[] chars = new char[length];
+        Arrays.fill(chars, 'a');
+        return new String(chars);
+    }
+
+    private Request send(Request request) throws IOException {
+        client.newCall(request).execute().close();
+        return sent.get();
+    }
+
+    private Request post(RequestBody body) throws IOException {
+        return send(new Request.Builder().url("http://h/").post(body).build());
+    }
+
+    @Test
+    public void compressesTextBodiesWithinLimits() throws IOException {
+        String json = "{\"v\": \"" + text(2000) + "\"}";
+        Request request = post(RequestBody.create(JSON, json));
+        assertEquals("gzip", request.header("Content-Encoding"));
+        Buffer compressed = new Buffer();
+        //noinspection ConstantConditions
+        request.body().writeTo(compressed);
+        long compressedSize = compressed.size();
+        assertEquals(compressedSize, request.body().contentLength());
+        assertEquals(json, Okio.buffer(new GzipSource(compressed)).readUtf8());
+        assertEquals(json.length(), compression.getRequestOriginalBytes());
+        assertEquals(compressedSize, compression.getRequestCompressedBytes());
+
+        GFormBody form = new GFormBody.Builder().add("v", text(2000)).build();
+        assertEquals("gzip", post(form).header("Content-Encoding"));
+    }
+
+    @Test
+    public void skipsSmallLargeAndUnknownLengthBodies() throws IOException {
+        assertNull(post(RequestBody.create(JSON, text(100))).header("Content-Encoding"));
+        assertNull(post(RequestBody.create(JSON, text(8 * 1024 + 1))).header("Content-Encoding"));
+        RequestBody chunked = new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return JSON;
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                sink.writeUtf8(text(2000));
+            }
+        };
+        assertNull(post(chunked).header("Content-Encoding"));
+        assertEquals(0, compression.getRequestOriginalBytes());
+    }
+
+    @Test
+    public void skipsBinaryAndMultipartBodies() throws IOException {
+        assertNull(post(RequestBody.create(OCTET_STREAM, new byte[2000])).header("Content-Encoding"));
+        assertNull(post(RequestBody.create(MediaType.get("image/png"), new byte[2000])).header("Content-Encoding"));
+        assertNull(post(RequestBody.create(null, new byte[2000])).header("Content-Encoding"));
+        MultipartBody multipart = new MultipartBody.Builder()
+                .setType(MultipartBody.FORM)
+                .addFormDataPart("v", text(2000))
+                .build();
+        assertNull(post(multipart).header("Content-Encoding"));
+    }
+
+    @Test
+    public void skipsStreamingAndRangedBodies() throws IOException {
+        File file = File.createTempFile("compression", ".json");
+        try {
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                out.write(text(4000).getBytes("UTF-8"));
+            }
+            //文件分片: 流式读取, Content-Range 为未压缩的偏移
+            RequestBody region = GRequestBodyUtils.create(JSON, file, 0, 2000);
+            assertNull(post(region).header("Content-Encoding"));
+            Request chunk = send(new Request.Builder().url("http://h/").put(RequestBody.create(JSON, text(2000)))
+                    .header("Content-Range", "bytes 0-1999/4000").build());
+            assertNull(chunk.header("Content-Encoding"));
+
+            //进度包装的请求体: 进度必须对应真正写出的字节
+            final long[] progress = new long[1];
+            RequestBody progressBody = GRequestBodyUtils.progress(RequestBody.create(JSON, text(2000)),
+                    (bytesWritten, total, done) -> progress[0] = bytesWritten, 0);
+            Request request = post(progressBody);
+            assertNull(request.header("Content-Encoding"));
+            assertEquals("请求体没有被提前读取", 0, progress[0]);
+            assertEquals(0, compression.getRequestOriginalBytes());
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    @Test
+    public void keepsCallerContentEncoding() throws IOException {
+        Request request = send(new Request.Builder().url("http://h/").post(RequestBody.create(JSON, text(2000)))
+                .header("Content-Encoding", "identity").build());
+        assertEquals("identity", request.header("Content-Encoding"));
+    }
+}
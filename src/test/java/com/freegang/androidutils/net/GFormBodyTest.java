@@ -0,0 +1,91 @@
+package com.freegang.androidutils.net;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import okio.Buffer;
+
+import static org.junit.Assert.*;
+
+public class GFormBodyTest {
+    private static final String[] VALUES = {
+            "",
+            "plain",
+            " !\"#$%&'()*+,-./:;<=>?@[\\]^_`{|}~",
+            "\t\r\n\u0000\u007f",
+            "é ß ü",
+            "你好, 世界",
+            "😀 emoji 𝄞",
+            "\ud83d",
+            "a\ude00b",
+            "\ud83dx",
+            "ࠀ￿",
+    };
+
+    private static String urlEncoded(Map<String, String> params) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, String> entry : params.entrySet()) {
+            if (builder.length() > 0) builder.append('&');
+            builder.append(URLEncoder.encode(entry.getKey(), "UTF-8"))
+                    .append('=')
+                    .append(URLEncoder.encode(entry.getValue(), "UTF-8"));
+        }
+        return builder.toString();
+    }
+
+    private static String written(GFormBody body) throws IOException {
+        Buffer buffer = new Buffer();
+        body.writeTo(buffer);
+        assertEquals("contentLength", buffer.size(), body.contentLength());
+        return buffer.readUtf8();
+    }
+
+    @Test
+    public void writeTo_isByteIdenticalToUrlEncoder() throws IOException {
+        for (String value : VALUES) {
+            Map<String, String> params = new LinkedHashMap<>();
+            params.put("k " + value, value);
+            params.put("second", value + value);
+            GFormBody body = new GFormBody.Builder().addAll(params).build();
+            assertEquals(value, urlEncoded(params), written(body));
+        }
+    }
+
+    @Test
+    public void writeTo_allCharsInBmp() throws IOException {
+        StringBuilder all = new StringBuilder();
+        for (char c = 0; c < Character.MIN_SURROGATE; c++) {
+            all.append(c);
+        }
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("all", all.toString());
+        assertEquals(urlEncoded(params), written(new GFormBody.Builder().addAll(params).build()));
+    }
+
+    @Test
+    public void emptyBody() throws IOException {
+        GFormBody body = new GFormBody.Builder().build();
+        assertEquals(0, body.size());
+        assertEquals("", written(body));
+        assertEquals("application/x-www-form-urlencoded", body.contentType().toString());
+    }
+
+    @Test
+    public void builder_isReusable() throws IOException {
+        GFormBody.Builder builder = new GFormBody.Builder(1);
+        GFormBody first = builder.add("a", "1").add("b", null).add("c", "x y").build();
+        assertEquals(3, first.size());
+        assertEquals("b", first.name(1));
+        assertEquals("", first.value(1));
+        assertEquals("a=1&b=&c=x+y", written(first));
+
+        GFormBody second = builder.clear().add("d", "4").build();
+        assertEquals("d=4", written(second));
+        //已经 build 的请求体不受 clear 影响
+        assertEquals("a=1&b=&c=x+y", written(first));
+    }
+}
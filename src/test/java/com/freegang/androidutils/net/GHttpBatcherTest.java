@@ -0,0 +1,196 @@
+package com.freegang.androidutils.net;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+
+import static org.junit.Assert.*;
+
+public class GHttpBatcherTest {
+    //不经过网络, 记录请求并返回 responseBody
+    private final List<Request> requests = new CopyOnWriteArrayList<>();
+    private final List<String> requestBodies = new CopyOnWriteArrayList<>();
+    private volatile String responseBody = "ok";
+    private final GOkHttpUtils okHttpUtils = new GOkHttpUtils.Builder()
+            .addInterceptor(chain -> {
+                Request request = chain.request();
+                requests.add(request);
+                Buffer buffer = new Buffer();
+                //noinspection ConstantConditions
+                request.body().writeTo(buffer);
+                requestBodies.add(buffer.readUtf8());
+                return new Response.Builder()
+                        .request(request)
+                        .protocol(Protocol.HTTP_1_1)
+                        .code(200)
+                        .message("OK")
+                        .body(ResponseBody.create(null, responseBody))
+                        .build();
+            })
+            .build();
+
+    private GHttpBatcher batcher;
+
+    @After
+    public void tearDown() {
+        if (batcher != null) batcher.shutdown();
+    }
+
+    private static final class Results implements GOkHttpUtils.RespCallBody {
+        final BlockingQueue<String> bodies = new ArrayBlockingQueue<>(64);
+
+        @Override
+        public void onResponseBody(int statusCode, String body) {
+            bodies.add(statusCode + ":" + body);
+        }
+
+        String next() throws InterruptedException {
+            return bodies.poll(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private static Map<String, String> params(String key, String value) {
+        return Collections.singletonMap(key, value);
+    }
+
+    @Test
+    public void sizeLimitFlushesImmediately() throws Exception {
+        batcher = new GHttpBatcher.Builder(okHttpUtils).window(3, 1, TimeUnit.HOURS).build();
+        Results results = new Results();
+        for (int i = 0; i < 3; i++) {
+            batcher.add("http://h/p" + i, params("i", String.valueOf(i)), results);
+        }
+        for (int i = 0; i < 3; i++) {
+            assertEquals("200:ok", results.next());
+        }
+        assertEquals(3, requests.size());
+    }
+
+    @Test
+    public void windowFlushesAfterDelay() throws Exception {
+        batcher = new GHttpBatcher.Builder(okHttpUtils).window(50, 200, TimeUnit.MILLISECONDS).build();
+        Results results = new Results();
+        long start = System.nanoTime();
+        batcher.add("http://h/a", params("k", "v"), results);
+        batcher.add("http://h/b", params("k", "v"), results);
+        assertEquals("200:ok", results.next());
+        assertEquals("200:ok", results.next());
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+        assertEquals(2, requests.size());
+    }
+
+    @Test
+    public void fullBatchIsNotDispatchedOnCallerThread() throws Exception {
+        final Thread caller = Thread.currentThread();
+        final CountDownLatch encoded = new CountDownLatch(1);
+        final Thread[] encoderThread = new Thread[1];
+        batcher = new GHttpBatcher.Builder(okHttpUtils)
+                .combined("http://h/batch")
+                .window(1, 1, TimeUnit.HOURS)
+                .encoder(items -> {
+                    encoderThread[0] = Thread.currentThread();
+                    encoded.countDown();
+                    return GHttpBatcher.JSON_ENCODER.encode(items);
+                })
+                .build();
+        responseBody = "[1]";
+        batcher.add("http://h/a", params("k", "v"), new Results());
+        assertTrue(encoded.await(5, TimeUnit.SECONDS));
+        assertNotSame(caller, encoderThread[0]);
+    }
+
+    @Test
+    public void combinedEncodesOneRequestAndSplitsResponse() throws Exception {
+        batcher = new GHttpBatcher.Builder(okHttpUtils)
+                .combined("http://h/batch")
+                .window(2, 1, TimeUnit.HOURS)
+                .build();
+        responseBody = "[{\"id\": 1}, \"second\"]";
+        Results first = new Results();
+        Results second = new Results();
+        batcher.add("http://h/a", params("k", "1"), first);
+        batcher.add("http://h/b", params("k", "2"), second);
+        assertEquals("200:{\"id\":1}", first.next());
+        assertEquals("200:second", second.next());
+
+        assertEquals(1, requests.size());
+        assertEquals("http://h/batch", requests.get(0).url().toString());
+        JSONArray sent = new JSONArray(requestBodies.get(0));
+        assertEquals(2, sent.length());
+        JSONObject item = sent.getJSONObject(1);
+        assertEquals("http://h/b", item.getString("url"));
+        assertEquals("2", item.getJSONObject("params").getString("k"));
+    }
+
+    @Test
+    public void batchErrorsFanOutToEveryCallback() throws Exception {
+        //响应条数不对
+        batcher = new GHttpBatcher.Builder(okHttpUtils)
+                .combined("http://h/batch")
+                .window(2, 1, TimeUnit.HOURS)
+                .build();
+        responseBody = "[1]";
+        Results results = new Results();
+        batcher.add("http://h/a", null, results);
+        batcher.add("http://h/b", null, results);
+        assertTrue(results.next().startsWith("-1:"));
+        assertTrue(results.next().startsWith("-1:"));
+
+        //响应无法解析
+        responseBody = "<html>";
+        batcher.add("http://h/a", null, results);
+        batcher.add("http://h/b", null, results);
+        assertTrue(results.next().startsWith("-1:"));
+        assertTrue(results.next().startsWith("-1:"));
+        batcher.shutdown();
+
+        //编码失败时不发出请求
+        requests.clear();
+        batcher = new GHttpBatcher.Builder(okHttpUtils)
+                .combined("http://h/batch")
+                .window(2, 1, TimeUnit.HOURS)
+                .encoder(items -> {
+                    throw new IOException("encode failed");
+                })
+                .build();
+        batcher.add("http://h/a", null, results);
+        batcher.add("http://h/b", null, results);
+        assertEquals("-1:encode failed", results.next());
+        assertEquals("-1:encode failed", results.next());
+        assertTrue(requests.isEmpty());
+    }
+
+    @Test
+    public void shutdownFlushesAndRejectsLaterItems() throws Exception {
+        batcher = new GHttpBatcher.Builder(okHttpUtils).window(50, 1, TimeUnit.HOURS).build();
+        Results results = new Results();
+        batcher.add("http://h/a", params("k", "v"), results);
+        batcher.shutdown();
+        assertEquals("200:ok", results.next());
+        try {
+            batcher.add("http://h/b", params("k", "v"), results);
+            fail();
+        } catch (IllegalStateException expected) {
+            //ok
+        }
+        batcher.flush();
+        assertEquals(1, requests.size());
+    }
+}
@@ -0,0 +1,103 @@
+package com.freegang.androidutils.net;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import static org.junit.Assert.*;
+
+public class GHttpSchedulerTest {
+    private final CountDownLatch release = new CountDownLatch(1);
+    //不经过网络, 在 release 之前阻塞
+    private final OkHttpClient client = new OkHttpClient.Builder()
+            .addInterceptor(chain -> {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return new Response.Builder()
+                        .request(chain.request())
+                        .protocol(Protocol.HTTP_1_1)
+                        .code(200)
+                        .message("OK")
+                        .body(ResponseBody.create(null, "ok"))
+                        .build();
+            })
+            .build();
+
+    private static Request request(String path) {
+        return new Request.Builder().url("http://h/" + path).build();
+    }
+
+    private static final class Result implements Callback {
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+        volatile Call call;
+
+        @Override
+        public void onFailure(Call call, IOException e) {
+            this.call = call;
+            future.complete(e);
+        }
+
+        @Override
+        public void onResponse(Call call, Response response) {
+            this.call = call;
+            response.close();
+            future.complete(response.code());
+        }
+
+        Object get() throws InterruptedException, ExecutionException, TimeoutException {
+            return future.get(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void cancelQueuedRequestFailsWithoutDispatching() throws Exception {
+        GHttpScheduler scheduler = new GHttpScheduler(1, 0);
+        Result running = new Result();
+        Result queued = new Result();
+        scheduler.enqueue(client, request("a"), running);
+        GHttpScheduler.Cancelable handle = scheduler.enqueue(client, request("b"), queued);
+        assertEquals(1, scheduler.getQueueDepth(GHttpScheduler.Priority.NORMAL));
+
+        handle.cancel();
+        Object failure = queued.get();
+        assertTrue(failure instanceof IOException);
+        assertTrue(queued.call.isCanceled());
+        assertEquals(0, scheduler.getQueueDepth(GHttpScheduler.Priority.NORMAL));
+
+        release.countDown();
+        assertEquals(200, running.get());
+    }
+
+    @Test
+    public void cancelRunningRequestCancelsCall() throws Exception {
+        GHttpScheduler scheduler = new GHttpScheduler(1, 0);
+        Result running = new Result();
+        Result next = new Result();
+        GHttpScheduler.Cancelable handle = scheduler.enqueue(client, request("a"), running);
+        scheduler.enqueue(client, request("b"), next);
+
+        handle.cancel();
+        release.countDown();
+        assertTrue(running.get() instanceof IOException);
+        assertTrue(running.call.isCanceled());
+        //释放的额度交给排队中的请求
+        assertEquals(200, next.get());
+        handle.cancel();
+    }
+}
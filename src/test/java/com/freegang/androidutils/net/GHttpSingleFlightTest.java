@@ -0,0 +1,181 @@
+package com.freegang.androidutils.net;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+
+import static org.junit.Assert.*;
+
+public class GHttpSingleFlightTest {
+    private static final Request REQUEST = new Request.Builder().url("http://h/a?x=1").build();
+
+    private final OkHttpClient client = new OkHttpClient();
+    //记录交给 OkHttp 的请求, 由测试手动完成
+    private final List<Request> dispatched = new ArrayList<>();
+    private final List<Callback> callbacks = new ArrayList<>();
+    private final GHttpSingleFlight.Dispatcher dispatcher = (request, callback) -> {
+        dispatched.add(request);
+        callbacks.add(callback);
+    };
+
+    private static class Recorder implements Callback {
+        Response response;
+        String body;
+        IOException failure;
+
+        @Override
+        public void onFailure(Call call, IOException e) {
+            failure = e;
+        }
+
+        @Override
+        public void onResponse(Call call, Response response) throws IOException {
+            this.response = response;
+            //noinspection ConstantConditions
+            body = response.body().string();
+        }
+    }
+
+    private static Response response(String body, long contentLength) {
+        return new Response.Builder()
+                .request(REQUEST)
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .message("OK")
+                .body(ResponseBody.create(MediaType.get("text/plain"), contentLength,
+                        new Buffer().writeUtf8(body)))
+                .build();
+    }
+
+    @Test
+    public void singleWaiterGetsOriginalResponse() throws IOException {
+        GHttpSingleFlight singleFlight = new GHttpSingleFlight();
+        Recorder recorder = new Recorder();
+        singleFlight.enqueue(REQUEST, recorder, dispatcher);
+        Response response = response("body", 4);
+        callbacks.get(0).onResponse(client.newCall(REQUEST), response);
+        assertSame(response, recorder.response);
+        assertEquals("body", recorder.body);
+    }
+
+    @Test
+    public void waitersShareSmallBodies() throws IOException {
+        GHttpSingleFlight singleFlight = new GHttpSingleFlight();
+        Recorder first = new Recorder();
+        Recorder second = new Recorder();
+        singleFlight.enqueue(REQUEST, first, dispatcher);
+        singleFlight.enqueue(new Request.Builder().url("http://h/a?x=%31").build(), second, dispatcher);
+        assertEquals(1, dispatched.size());
+        callbacks.get(0).onResponse(client.newCall(REQUEST), response("body", -1));
+        assertEquals("body", first.body);
+        assertEquals("body", second.body);
+        assertNotSame(first.response, second.response);
+        assertEquals(1, singleFlight.getCallCount());
+        assertEquals(1, singleFlight.getSharedCount());
+    }
+
+    @Test
+    public void largeBodiesAreNotShared() throws IOException {
+        for (long contentLength : new long[]{8, -1}) {
+            dispatched.clear();
+            callbacks.clear();
+            GHttpSingleFlight singleFlight = new GHttpSingleFlight(4);
+            Recorder first = new Recorder();
+            Recorder second = new Recorder();
+            Request secondRequest = REQUEST.newBuilder().tag("second").build();
+            singleFlight.enqueue(REQUEST, first, dispatcher);
+            singleFlight.enqueue(secondRequest, second, dispatcher);
+            Response response = response("12345678", contentLength);
+            callbacks.get(0).onResponse(client.newCall(REQUEST), response);
+            //发起者拿到原始响应, 另一个等待者单独发起
+            assertSame(response, first.response);
+            assertEquals("12345678", first.body);
+            assertNull(second.response);
+            assertEquals(2, dispatched.size());
+            assertSame(secondRequest, dispatched.get(1));
+            assertSame(second, callbacks.get(1));
+            assertEquals(2, singleFlight.getCallCount());
+            assertEquals(0, singleFlight.getSharedCount());
+        }
+    }
+
+    @Test
+    public void canceledCallOnlyFailsItsOwner() throws IOException {
+        GHttpSingleFlight singleFlight = new GHttpSingleFlight();
+        Recorder first = new Recorder();
+        Recorder second = new Recorder();
+        Recorder third = new Recorder();
+        singleFlight.enqueue(REQUEST, first, dispatcher);
+        singleFlight.enqueue(REQUEST.newBuilder().tag("second").build(), second, dispatcher);
+        singleFlight.enqueue(REQUEST.newBuilder().tag("third").build(), third, dispatcher);
+        Call call = client.newCall(REQUEST);
+        call.cancel();
+        callbacks.get(0).onFailure(call, new IOException("Canceled"));
+        assertNotNull(first.failure);
+        assertNull(second.failure);
+        //其余等待者重新合并发起, 第二个请求成为发起者
+        assertEquals(2, dispatched.size());
+        assertEquals("second", dispatched.get(1).tag());
+        callbacks.get(1).onResponse(client.newCall(dispatched.get(1)), response("body", 4));
+        assertEquals("body", second.body);
+        assertEquals("body", third.body);
+        assertEquals(2, singleFlight.getCallCount());
+        assertEquals(1, singleFlight.getSharedCount());
+    }
+
+    @Test
+    public void failuresReachEveryWaiter() {
+        GHttpSingleFlight singleFlight = new GHttpSingleFlight();
+        Recorder first = new Recorder();
+        Recorder second = new Recorder();
+        singleFlight.enqueue(REQUEST, first, dispatcher);
+        singleFlight.enqueue(REQUEST, second, dispatcher);
+        IOException e = new IOException("reset");
+        callbacks.get(0).onFailure(client.newCall(REQUEST), e);
+        assertSame(e, first.failure);
+        assertSame(e, second.failure);
+    }
+
+    @Test
+    public void callbackExceptionIsRethrownAfterAllWaiters() throws IOException {
+        GHttpSingleFlight singleFlight = new GHttpSingleFlight();
+        final IOException broken = new IOException("broken");
+        Callback failing = new Recorder() {
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                throw broken;
+            }
+        };
+        Recorder second = new Recorder();
+        singleFlight.enqueue(REQUEST, failing, dispatcher);
+        singleFlight.enqueue(REQUEST, second, dispatcher);
+        try {
+            callbacks.get(0).onResponse(client.newCall(REQUEST), response("body", 4));
+            fail();
+        } catch (IOException e) {
+            assertSame(broken, e);
+        }
+        assertEquals("body", second.body);
+    }
+
+    @Test
+    public void exclusiveRequestsAreNotEligible() {
+        GHttpSingleFlight singleFlight = new GHttpSingleFlight();
+        assertTrue(singleFlight.isEligible(REQUEST));
+        assertFalse(singleFlight.isEligible(REQUEST.newBuilder()
+                .tag(GHttpSingleFlight.Mode.class, GHttpSingleFlight.Mode.EXCLUSIVE).build()));
+        assertFalse(singleFlight.isEligible(REQUEST.newBuilder().header("Range", "bytes=0-").build()));
+    }
+}
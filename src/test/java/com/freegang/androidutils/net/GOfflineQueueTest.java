@@ -0,0 +1,112 @@
+package com.freegang.androidutils.net;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Headers;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import static org.junit.Assert.*;
+
+public class GOfflineQueueTest {
+    //不经过网络, 按 codes 依次返回, -1 为网络错误, 用完后返回 200
+    private final List<Request> requests = new CopyOnWriteArrayList<>();
+    private final List<Integer> codes = new CopyOnWriteArrayList<>();
+    private final GOkHttpUtils okHttpUtils = new GOkHttpUtils.Builder()
+            .addInterceptor(chain -> {
+                Request request = chain.request();
+                requests.add(request);
+                int code = codes.isEmpty() ? 200 : codes.remove(0);
+                if (code == -1) throw new IOException("offline");
+                return new Response.Builder()
+                        .request(request)
+                        .protocol(Protocol.HTTP_1_1)
+                        .code(code)
+                        .message("")
+                        .body(ResponseBody.create(null, ""))
+                        .build();
+            })
+            .build();
+
+    private final File logFile = new File(System.getProperty("java.io.tmpdir"), "GOfflineQueueTest-" + System.nanoTime() + ".log");
+    private GOfflineQueue queue;
+
+    @After
+    public void tearDown() throws IOException {
+        if (queue != null) queue.close();
+        //noinspection ResultOfMethodCallIgnored
+        logFile.delete();
+    }
+
+    private static final class SentLatch implements GOfflineQueue.Listener {
+        final CountDownLatch latch;
+
+        SentLatch(int count) {
+            latch = new CountDownLatch(count);
+        }
+
+        @Override
+        public void onSent(String idempotencyKey, int statusCode) {
+            latch.countDown();
+        }
+
+        @Override
+        public void onDropped(String idempotencyKey, int statusCode) {
+        }
+
+        boolean await() throws InterruptedException {
+            return latch.await(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void longStringsSurviveReload() throws Exception {
+        //超过 writeUTF 的 64KB 限制
+        char[] chars = new char[70 * 1024];
+        Arrays.fill(chars, 'a');
+        String value = new String(chars);
+        String url = "http://h/p?q=" + value;
+
+        codes.addAll(Arrays.asList(-1, -1, -1, -1));
+        queue = new GOfflineQueue(okHttpUtils, logFile, 1, false);
+        assertNotNull(queue.enqueue(url, "POST", Headers.of("X-Long", value), okHttpUtils.buildJsonBody("{}"), "key"));
+        queue.close();
+
+        codes.clear();
+        requests.clear();
+        SentLatch sent = new SentLatch(1);
+        queue = new GOfflineQueue(okHttpUtils, logFile, 1, false);
+        assertEquals(1, queue.size());
+        queue.setListener(sent);
+        queue.flush();
+        assertTrue(sent.await());
+        Request request = requests.get(0);
+        assertEquals(url, request.url().toString());
+        assertEquals(value, request.header("X-Long"));
+        assertEquals("key", request.header("Idempotency-Key"));
+    }
+
+    @Test
+    public void failedBatchIsRetriedWithoutFlush() throws Exception {
+        codes.addAll(Arrays.asList(503, -1));
+        SentLatch sent = new SentLatch(1);
+        queue = new GOfflineQueue(okHttpUtils, logFile, 1, false);
+        queue.setListener(sent);
+        queue.postJson("http://h/p", "{}", null);
+        //503 与网络错误之后各退避一次
+        assertTrue(sent.await());
+        assertEquals(3, requests.size());
+        assertEquals(0, queue.size());
+    }
+}
@@ -0,0 +1,57 @@
+package com.freegang.androidutils.net;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okio.Buffer;
+
+import static org.junit.Assert.*;
+
+public class GOkHttpUtilsTest {
+
+    @Test
+    public void fileCallStream_writesOnlySuccessfulBodies() throws IOException {
+        File file = File.createTempFile("GOkHttpUtilsTest", ".bin");
+        try {
+            Files.write(file.toPath(), "previous".getBytes(StandardCharsets.UTF_8));
+            final Object[] result = new Object[2];
+            GOkHttpUtils.FileCallStream stream = new GOkHttpUtils.FileCallStream(file, (statusCode, body) -> {
+                result[0] = statusCode;
+                result[1] = body;
+            });
+
+            //错误页不覆盖文件
+            stream.onResponseStream(404, new Buffer().writeUtf8("not found"));
+            assertEquals(404, result[0]);
+            assertNull(result[1]);
+            assertEquals("previous", new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+
+            stream.onResponseStream(200, new Buffer().writeUtf8("content"));
+            assertEquals(200, result[0]);
+            assertEquals(file.getAbsolutePath(), result[1]);
+            assertEquals("content", new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    @Test
+    public void respResult_contentLengthUnknownWithoutBody() {
+        Response response = new Response.Builder()
+                .request(new Request.Builder().url("http://h/").build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(204)
+                .message("No Content")
+                .build();
+        //没有响应体的 Response 不能 close
+        assertEquals(-1, new GOkHttpUtils.RespResult(response).contentLength());
+    }
+}
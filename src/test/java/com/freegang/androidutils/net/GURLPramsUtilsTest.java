@@ -0,0 +1,143 @@
+package com.freegang.androidutils.net;
+
+import org.junit.Test;
+
+import java.net.URLDecoder;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class GURLPramsUtilsTest {
+
+    //----------- 编码与拼接 -----------//
+
+    @Test
+    public void encode_usesRfc3986() throws Exception {
+        assertEquals("a%20b%2Bc%26d%3De-_.~", GURLPramsUtils.encode("a b+c&d=e-_.~"));
+        assertEquals("%E4%BD%A0%F0%9F%98%80", GURLPramsUtils.encode("你😀"));
+        String s = "key with spaces/和中文?&=+%";
+        assertEquals(s, URLDecoder.decode(GURLPramsUtils.encode(s), "UTF-8"));
+    }
+
+    @Test
+    public void decode_acceptsPlusAndKeepsBadEscapes() {
+        assertEquals("a b c", GURLPramsUtils.decode("a+b%20c"));
+        assertEquals("你好", GURLPramsUtils.decode("%E4%BD%A0%e5%a5%bd"));
+        assertEquals("100%", GURLPramsUtils.decode("100%"));
+        assertEquals("%zz%4", GURLPramsUtils.decode("%zz%4"));
+    }
+
+    @Test
+    public void urlSplicing_handlesExistingQueryAndFragment() {
+        Map<String, String> map = new LinkedHashMap<>();
+        map.put("q", "a b");
+        map.put("page", "2");
+        assertEquals("http://h/s?q=a%20b&page=2", GURLPramsUtils.urlSplicing("http://h/s", map));
+        assertEquals("http://h/s?x=1&q=a%20b&page=2#top", GURLPramsUtils.urlSplicing("http://h/s?x=1#top", map));
+        assertEquals("http://h/s?q=a b&page=2", GURLPramsUtils.urlSplicing("http://h/s?", map, false));
+        assertEquals("http://h/s", GURLPramsUtils.urlSplicing("http://h/s", Collections.<String, String>emptyMap()));
+        assertEquals("", GURLPramsUtils.encoding(null));
+    }
+
+    @Test
+    public void queryBuilder_isReusable() {
+        GURLPramsUtils.QueryBuilder builder = new GURLPramsUtils.QueryBuilder("http://a/x", 2);
+        assertEquals("http://a/x?k=v", builder.add("k", "v").build());
+        assertEquals("http://b/y", builder.reset("http://b/y").build());
+        assertEquals("http://b/y?k=&n=1", builder.add("k", null).add("n", "1").build());
+        assertEquals("k=v", new GURLPramsUtils.QueryBuilder().add("k", "v").build());
+    }
+
+    //----------- 解析 -----------//
+
+    @Test
+    public void parseQuery_parsesUrlsAndRawQueries() {
+        Map<String, List<String>> query = GURLPramsUtils.parseQuery("http://h/p?a=1&b=x%20y&a=2&flag#frag");
+        assertEquals(Arrays.asList("a", "b", "flag"), Arrays.asList(query.keySet().toArray()));
+        assertEquals(Arrays.asList("1", "2"), query.get("a"));
+        assertEquals(Collections.singletonList("x y"), query.get("b"));
+        assertEquals(Collections.singletonList(""), query.get("flag"));
+
+        assertEquals(Collections.singletonList("1"), GURLPramsUtils.parseQuery("a=1&&b=").get("a"));
+        assertTrue(GURLPramsUtils.parseQuery("http://h/p#a=1").isEmpty());
+        assertTrue(GURLPramsUtils.parseQuery(null).isEmpty());
+    }
+
+    @Test
+    public void parseQuery_rawQueryContainingUrlValue() {
+        Map<String, List<String>> query = GURLPramsUtils.parseQuery("redirect=https://x.com/p&a=1");
+        assertEquals(Collections.singletonList("https://x.com/p"), query.get("redirect"));
+        assertEquals(Collections.singletonList("1"), query.get("a"));
+        assertEquals("https://x.com/p?y=2", GURLPramsUtils.getQueryParameter("next=https%3A%2F%2Fx.com%2Fp%3Fy%3D2", "next"));
+        assertNull(GURLPramsUtils.getQueryParameter("a=1", "b"));
+    }
+
+    //----------- canonicalize -----------//
+
+    @Test
+    public void canonicalize_normalizesSchemeHostPortAndFragment() {
+        assertEquals("https://example.com/", GURLPramsUtils.canonicalize("HTTPS://Example.COM:443#top"));
+        assertEquals("http://example.com:8080/a", GURLPramsUtils.canonicalize("http://example.com:8080/a"));
+    }
+
+    @Test
+    public void canonicalize_normalizesPercentEncoding() {
+        //unreserved 字符解码, 其余统一为大写 %XX
+        assertEquals("http://h/abc?q=%E4%BD%A0", GURLPramsUtils.canonicalize("http://h/%61b%63?q=你"));
+        assertEquals("http://h/?q=%2F%3F", GURLPramsUtils.canonicalize("http://h/?q=%2f%3f"));
+    }
+
+    @Test
+    public void canonicalize_sortsByKeyOnly() {
+        assertEquals("http://h/?a=1&b=2", GURLPramsUtils.canonicalize("http://h/?b=2&a=1"));
+    }
+
+    @Test
+    public void canonicalize_keepsOrderOfRepeatedKeys() {
+        assertEquals("http://h/?a=2&a=1", GURLPramsUtils.canonicalize("http://h/?a=2&a=1"));
+        assertEquals("http://h/?a=2&a=1&b=0", GURLPramsUtils.canonicalize("http://h/?b=0&a=2&a=1"));
+        assertNotEquals(GURLPramsUtils.canonicalize("http://h/?sort=name&sort=date"),
+                GURLPramsUtils.canonicalize("http://h/?sort=date&sort=name"));
+    }
+
+    @Test
+    public void canonicalize_keepsValuelessParameters() {
+        assertEquals("http://h/?flag", GURLPramsUtils.canonicalize("http://h/?flag"));
+        assertEquals("http://h/?flag=", GURLPramsUtils.canonicalize("http://h/?flag="));
+    }
+
+    @Test
+    public void canonicalize_stripsTrackingParameters() {
+        assertEquals("http://h/p?id=1", GURLPramsUtils.canonicalize("http://h/p?utm_source=x&id=1&gclid=abc", true));
+        assertEquals("http://h/p?id=1&utm_source=x", GURLPramsUtils.canonicalize("http://h/p?utm_source=x&id=1", false));
+    }
+
+    @Test
+    public void canonicalHash_matchesCanonicalString() {
+        String[] urls = {
+                "HTTPS://Example.COM:443/a/%62?z=1&y=2&y=1#f",
+                "http://h/?flag&a=",
+                "http://h/路径?q=😀",
+                "http://h",
+        };
+        for (String url : urls) {
+            assertEquals(url, fnv(GURLPramsUtils.canonicalize(url)), GURLPramsUtils.canonicalHash(url));
+            assertEquals(url, fnv(GURLPramsUtils.canonicalize(url, true)), GURLPramsUtils.canonicalHash(url, true));
+        }
+        assertEquals(GURLPramsUtils.canonicalHash("http://h/?b=2&a=1"), GURLPramsUtils.canonicalHash("http://H:80/?a=1&b=2"));
+        assertNotEquals(GURLPramsUtils.canonicalHash("http://h/?a=1&a=2"), GURLPramsUtils.canonicalHash("http://h/?a=2&a=1"));
+    }
+
+    private static long fnv(String s) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            hash ^= s.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,129 @@
+package com.freegang.androidutils.net;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class GURLTemplateTest {
+
+    //----------- 编译 -----------//
+
+    @Test
+    public void compile_collectsNamesInOrder() {
+        GURLTemplate template = GURLTemplate.compile("/users/{id}/items/{item}?page={page}&id={id}");
+        assertArrayEquals(new String[]{"id", "item", "page"}, template.getNames());
+        assertEquals("/users/{id}/items/{item}?page={page}&id={id}", template.toString());
+        assertEquals("/users/7/items/x?page=2&id=7", template.expand(7, "x", 2));
+    }
+
+    @Test
+    public void compile_rejectsBadPlaceholders() {
+        String[] templates = {"/a/{id", "/a/id}", "/a/{}", "/a/{+}", "/a/{x{y}"};
+        for (String template : templates) {
+            try {
+                GURLTemplate.compile(template);
+                fail(template);
+            } catch (IllegalArgumentException expected) {
+                //ok
+            }
+        }
+    }
+
+    @Test
+    public void compile_rejectsEncodedPlaceholdersInAuthority() {
+        String[] templates = {"https://{host}/a", "https://api.{env}.example.com", "http://h:{port}/a", "https://{user}@h/"};
+        for (String template : templates) {
+            try {
+                GURLTemplate.compile(template);
+                fail(template);
+            } catch (IllegalArgumentException expected) {
+                //ok
+            }
+        }
+        assertEquals("https://api.test.example.com:8443/a/b",
+                GURLTemplate.compile("https://{+host}/a/{p}").expand("api.test.example.com:8443", "b"));
+        //scheme 之后第一个 '/' 之后都是路径
+        assertEquals("https://h/x/a%2Fb", GURLTemplate.compile("https://h/x/{p}").expand("a/b"));
+        assertEquals("{+base} 之后不是 authority", "http://h/v1/users/1",
+                GURLTemplate.compile("{+base}/users/{id}").expand("http://h/v1", 1));
+        assertEquals("/go?to=https%3A%2F%2Fx", GURLTemplate.compile("/go?to={url}").expand("https://x"));
+    }
+
+    //----------- 展开 -----------//
+
+    @Test
+    public void expand_encodesByContext() {
+        GURLTemplate template = GURLTemplate.compile("/s/{path}?q={q}#{frag}");
+        //路径中保留 sub-delims 与 ':' '@', 参数中只保留 unreserved
+        assertEquals("/s/a%20b%2Fc%3F%23:@!$&'()*+,;=?q=a%20b%2Fc%3F%23%3A%40%21%24%26%27%28%29%2A%2B%2C%3B%3D#x%20y",
+                template.expand("a b/c?#:@!$&'()*+,;=", "a b/c?#:@!$&'()*+,;=", "x y"));
+        assertEquals("/s/%E4%BD%A0?q=%F0%9F%98%80#", template.expand("你", "😀", null));
+    }
+
+    @Test
+    public void expand_rawPlaceholderIsInsertedVerbatim() {
+        GURLTemplate template = GURLTemplate.compile("{+base}/files/{+rest}");
+        assertEquals("http://h/files/a/b%20c?x=1", template.expand("http://h", "a/b%20c?x=1"));
+    }
+
+    @Test
+    public void expand_rejectsDotSegmentsInPath() {
+        GURLTemplate template = GURLTemplate.compile("/users/{id}/items");
+        String[] values = {".", ".."};
+        for (String value : values) {
+            try {
+                template.expand(value);
+                fail(value);
+            } catch (IllegalArgumentException expected) {
+                //ok
+            }
+        }
+        //只有整个值为 . 或 .. 时才是相对路径
+        assertEquals("/users/...a/items", template.expand("...a"));
+        assertEquals("/users/..%2F/items", template.expand("../"));
+        assertEquals("/users/.../items", template.expand("..."));
+        //参数中的 . 与 .. 没有特殊含义
+        assertEquals("/a?p=..", GURLTemplate.compile("/a?p={p}").expand(".."));
+    }
+
+    @Test
+    public void expand_byName() {
+        GURLTemplate template = GURLTemplate.compile("/users/{id}?tab={tab}");
+        Map<String, Object> values = new HashMap<>();
+        values.put("id", 42L);
+        values.put("tab", null);
+        assertEquals("/users/42?tab=", template.expand(values));
+        try {
+            template.expand(Collections.<String, Object>singletonMap("id", 1));
+            fail();
+        } catch (IllegalArgumentException expected) {
+            //ok
+        }
+    }
+
+    @Test
+    public void expand_checksArgumentCount() {
+        try {
+            GURLTemplate.compile("/a/{x}/{y}").expand("1");
+            fail();
+        } catch (IllegalArgumentException expected) {
+            //ok
+        }
+    }
+
+    @Test
+    public void expandTo_appendsAndCombinesWithQueryBuilder() {
+        StringBuilder builder = new StringBuilder("https://h");
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("id", 3);
+        GURLTemplate.compile("/users/{id}").expandTo(builder, values);
+        assertEquals("https://h/users/3", builder.toString());
+        assertEquals("https://h/users/3?q=a%20b",
+                new GURLPramsUtils.QueryBuilder(builder.toString(), 1).add("q", "a b").build());
+    }
+}